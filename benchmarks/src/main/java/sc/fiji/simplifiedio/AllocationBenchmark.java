@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import loci.formats.FormatException;
+import net.imagej.ImgPlus;
+
+/**
+ * Measures the garbage produced by opening and saving the same kind of file
+ * over and over, as an ingest service does. Run it with the
+ * {@link BenchmarkRunner}, "gc.alloc.rate.norm" is the number of bytes
+ * allocated per operation, which includes the decoded image itself.
+ * <p>
+ * The LZW compressed TIFF can't be memory mapped, so each open falls back
+ * from the memory mapped backend to the next one. The OME-TIFF is decoded
+ * plane by plane by Bio-Formats.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class AllocationBenchmark {
+
+	@Param( { "tif-uint16-1024", "lzw-uint16-1024", "ome.tif-uint16-1024" } )
+	private String image;
+
+	private String path;
+
+	private ImgPlus< ? > img;
+
+	private File target;
+
+	@Setup
+	public void setup() throws IOException, FormatException {
+		if ( image.startsWith( "lzw-" ) ) {
+			img = SyntheticImages.createImage( image );
+			final File file = File.createTempFile( image + "-", ".tif" );
+			file.deleteOnExit();
+			path = file.getAbsolutePath();
+			SimplifiedIO.saveImage( img, path, compressed() );
+		}
+		else {
+			path = SyntheticImages.createFile( image );
+			img = SyntheticImages.createImage( image );
+		}
+		target = File.createTempFile( "allocation-benchmark-", ".tif" );
+	}
+
+	@TearDown
+	public void tearDown() {
+		target.delete();
+	}
+
+	private static SaveOptions compressed() {
+		return SaveOptions.options().tileSize( 256 ).compression( SaveOptions.Compression.LZW );
+	}
+
+	@Benchmark
+	public Object openImage() {
+		return SimplifiedIO.openImage( path );
+	}
+
+	@Benchmark
+	public void saveCompressed() {
+		SimplifiedIO.saveImage( img, target.getAbsolutePath(), compressed() );
+	}
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Measures the branches of {@link SimplifiedIO#convert}. Views are iterated
+ * once, to include the cost of the per pixel conversion. The primitive fast
+ * path of {@code convert( image, type, ConversionMode.MATERIALIZE )} is
+ * compared with copying the generic converter view.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 4, time = 500, timeUnit = TimeUnit.MILLISECONDS )
+@Measurement( iterations = 8, time = 500, timeUnit = TimeUnit.MILLISECONDS )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class ConvertBenchmark {
+
+	private static final long[] DIMENSIONS = { 2048, 2048, 4 };
+
+	@Param( { "uint8->float32", "uint16->float32", "uint16->float64", "float32->float64" } )
+	private String conversion;
+
+	private ImgPlus< ? > source;
+
+	private NativeType< ? > target;
+
+	private ImgPlus< UnsignedByteType > gray;
+
+	private ImgPlus< ARGBType > argb;
+
+	@Setup
+	public void setup() {
+		final String[] types = conversion.split( "->" );
+		source = new ImgPlus<>( randomImage( types[ 0 ] ) );
+		target = types[ 1 ].equals( "float32" ) ? new FloatType() : new DoubleType();
+		gray = new ImgPlus<>( RandomImgs.seed( 2 ).nextImage( new UnsignedByteType(), DIMENSIONS ) );
+		final Img< ARGBType > argbImg = ArrayImgs.argbs( DIMENSIONS );
+		final Random random = new Random( 3 );
+		for ( final ARGBType pixel : argbImg )
+			pixel.set( random.nextInt() );
+		argb = new ImgPlus<>( argbImg );
+	}
+
+	@Benchmark
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public double realView() {
+		return sum( SimplifiedIO.convert( ( ImgPlus ) source, ( NativeType ) target, ConversionMode.VIEW ) );
+	}
+
+	@Benchmark
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public Object realMaterializePrimitive() {
+		return PrimitiveConverter.convert( source, ( NativeType ) target );
+	}
+
+	@Benchmark
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public Object realMaterializeGeneric() {
+		return Materializer.materialize( SimplifiedIO.convert( ( ImgPlus ) source, ( NativeType ) target ) );
+	}
+
+	@Benchmark
+	public long unsignedByteToARGB() {
+		long sum = 0;
+		for ( final ARGBType pixel : SimplifiedIO.convert( gray, new ARGBType() ) )
+			sum += pixel.get();
+		return sum;
+	}
+
+	@Benchmark
+	public double argbToFloat() {
+		return sum( SimplifiedIO.convert( argb, new FloatType() ) );
+	}
+
+	private static double sum( final ImgPlus< ? extends RealType< ? > > image ) {
+		double sum = 0;
+		for ( final RealType< ? > pixel : image )
+			sum += pixel.getRealDouble();
+		return sum;
+	}
+
+	private static Img< ? > randomImage( final String type ) {
+		switch ( type ) {
+		case "uint8":
+			return RandomImgs.seed( 1 ).nextImage( new UnsignedByteType(), DIMENSIONS );
+		case "uint16":
+			return RandomImgs.seed( 1 ).nextImage( new UnsignedShortType(), DIMENSIONS );
+		default:
+			return RandomImgs.seed( 1 ).nextImage( new FloatType(), DIMENSIONS );
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import loci.formats.FormatException;
+
+/**
+ * Measures opening synthetic images with each backend and with
+ * {@link SimplifiedIO#openImage(String)}. A backend that can't read a format
+ * makes the respective benchmark fail, JMH continues with the others.
+ */
+@State( Scope.Benchmark )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+public class OpenBenchmark {
+
+	@Param( { "tif-uint8-256", "tif-uint16-1024", "tif-float32-2048", "png-uint8-1024", "png-uint16-1024",
+			"ome.tif-uint8-256", "ome.tif-uint16-1024", "ome.tif-float32-2048" } )
+	private String image;
+
+	private String path;
+
+	@Setup
+	public void setup() throws IOException, FormatException {
+		path = SyntheticImages.createFile( image );
+	}
+
+	@Benchmark
+	public Object openImage() {
+		return SimplifiedIO.openImage( path );
+	}
+
+	@Benchmark
+	public Object openImageWithIJ1() {
+		return SimplifiedIO.openImageWithIJ1( path );
+	}
+
+	@Benchmark
+	public Object openImageWithSCIFIO() {
+		return SimplifiedIO.openImageWithSCIFIO( path );
+	}
+
+	@Benchmark
+	public Object openImageWithBioFormats() {
+		return SimplifiedIO.openImageWithBioFormats( path );
+	}
+}
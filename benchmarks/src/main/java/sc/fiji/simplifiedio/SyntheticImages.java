@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.ImageWriter;
+import loci.formats.MetadataTools;
+import loci.formats.meta.IMetadata;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Generates random test images of a given format, size and pixel type in a
+ * temporary directory, so that no test images need to be downloaded.
+ * <p>
+ * Images are described by strings like "tif-uint16-1024", that is file
+ * extension, pixel type and width (and height) in pixels. TIFF and OME-TIFF
+ * images have 8 planes, PNG images are 2D.
+ */
+final class SyntheticImages {
+
+	static final int PLANES = 8;
+
+	private SyntheticImages() {
+		// prevent instantiation of utility class
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static ImgPlus< ? > createImage( final String description ) {
+		final String[] parts = description.split( "-" );
+		final int size = Integer.parseInt( parts[ 2 ] );
+		final boolean png = parts[ 0 ].equals( "png" );
+		final long[] dims = png ? new long[] { size, size } : new long[] { size, size, PLANES };
+		final AxisType[] axes = png ? new AxisType[] { Axes.X, Axes.Y } : new AxisType[] { Axes.X, Axes.Y, Axes.Z };
+		final Img< ? > img = RandomImgs.seed( 42 ).nextImage( ( NativeType ) type( parts[ 1 ] ), dims );
+		return new ImgPlus( img, description, axes );
+	}
+
+	/** Writes the described image into a temporary file and returns its path. */
+	static String createFile( final String description ) throws IOException, FormatException {
+		final String extension = description.substring( 0, description.indexOf( '-' ) );
+		final File file = File.createTempFile( description + "-", "." + extension );
+		file.deleteOnExit();
+		final ImgPlus< ? > image = createImage( description );
+		if ( extension.equals( "ome.tif" ) )
+			writeOmeTiff( image, file );
+		else
+			SimplifiedIO.saveImage( image, file.getAbsolutePath() );
+		return file.getAbsolutePath();
+	}
+
+	private static NativeType< ? > type( final String pixelType ) {
+		switch ( pixelType ) {
+		case "uint8":
+			return new UnsignedByteType();
+		case "uint16":
+			return new UnsignedShortType();
+		case "float32":
+			return new FloatType();
+		default:
+			throw new IllegalArgumentException( "Unknown pixel type: " + pixelType );
+		}
+	}
+
+	/** Writes the image plane by plane with the Bio-Formats OME-TIFF writer. */
+	private static void writeOmeTiff( final ImgPlus< ? > image, final File file ) throws IOException, FormatException {
+		Files.deleteIfExists( file.toPath() );
+		final Object type = image.firstElement();
+		final int pixelType = type instanceof UnsignedByteType ? FormatTools.UINT8 : type instanceof UnsignedShortType ? FormatTools.UINT16 : FormatTools.FLOAT;
+		final int bytesPerPixel = FormatTools.getBytesPerPixel( pixelType );
+		final int sizeX = ( int ) image.dimension( 0 );
+		final int sizeY = ( int ) image.dimension( 1 );
+		final int planes = ( int ) ( Intervals.numElements( image ) / sizeX / sizeY );
+		final IMetadata metadata = MetadataTools.createOMEXMLMetadata();
+		MetadataTools.populateMetadata( metadata, 0, file.getName(), false, "XYZCT",
+				FormatTools.getPixelTypeString( pixelType ), sizeX, sizeY, planes, 1, 1, 1 );
+		try (ImageWriter writer = new ImageWriter()) {
+			writer.setMetadataRetrieve( metadata );
+			writer.setId( file.getAbsolutePath() );
+			final ByteBuffer plane = ByteBuffer.allocate( sizeX * sizeY * bytesPerPixel );
+			int no = 0;
+			for ( final Object pixel : image ) {
+				if ( pixelType == FormatTools.UINT8 )
+					plane.put( ( byte ) ( ( UnsignedByteType ) pixel ).get() );
+				else if ( pixelType == FormatTools.UINT16 )
+					plane.putShort( ( short ) ( ( UnsignedShortType ) pixel ).get() );
+				else
+					plane.putFloat( ( ( FloatType ) pixel ).get() );
+				if ( !plane.hasRemaining() ) {
+					writer.saveBytes( no++, plane.array() );
+					plane.clear();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Runs the blocking methods of {@link SimplifiedIO} as
+ * {@link CompletableFuture}s. A task that is cancelled before it starts is
+ * not run, a running task can poll the {@link BooleanSupplier} it is given
+ * to stop early.
+ */
+final class AsyncTasks {
+
+	private static volatile Executor executor;
+
+	private AsyncTasks() {
+		// prevent instantiation of utility class
+	}
+
+	static Executor executor() {
+		if ( executor == null ) {
+			synchronized ( AsyncTasks.class ) {
+				if ( executor == null )
+					executor = createDefaultExecutor();
+			}
+		}
+		return executor;
+	}
+
+	static void setExecutor( final Executor executor ) {
+		AsyncTasks.executor = executor;
+	}
+
+	/**
+	 * Uses a virtual thread per task if the JDK supports it, JDK 21 or newer.
+	 * Otherwise a cached pool of daemon threads, the tasks block on I/O so
+	 * they shouldn't run on the common fork join pool.
+	 */
+	private static Executor createDefaultExecutor() {
+		try {
+			final Method method = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+			return ( ExecutorService ) method.invoke( null );
+		}
+		catch ( final ReflectiveOperationException | RuntimeException e ) {
+			return Executors.newCachedThreadPool( runnable -> {
+				final Thread thread = new Thread( runnable, "simplified-io-async" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		}
+	}
+
+	/**
+	 * Runs the task on the executor. The task gets a supplier that tells if
+	 * the returned future was cancelled.
+	 */
+	static < T > CompletableFuture< T > supply( final Executor executor, final Function< BooleanSupplier, T > task ) {
+		final CompletableFuture< T > future = new CompletableFuture<>();
+		try {
+			executor.execute( () -> {
+				if ( future.isDone() )
+					return;
+				try {
+					future.complete( task.apply( future::isCancelled ) );
+				}
+				catch ( final Throwable t ) {
+					future.completeExceptionally( t );
+				}
+			} );
+		}
+		catch ( final RejectedExecutionException e ) {
+			future.completeExceptionally( e );
+		}
+		return future;
+	}
+}
@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import net.imagej.ImgPlus;
+import net.imglib2.type.NativeType;
+
+/**
+ * The libraries {@link SimplifiedIO#openImage(String)} can use to read an
+ * image file.
+ */
+public enum Backend {
+
+	IJ1( "ImageJ1" ) {
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path ) {
+			return SimplifiedIO.openImageWithIJ1( path );
+		}
+
+		@Override
+		ImageInfo probe( final String path ) {
+			return ImageProbe.ij1( path );
+		}
+	},
+
+	SCIFIO( "SCIFIO" ) {
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path ) {
+			return SimplifiedIO.openImageWithSCIFIO( path );
+		}
+
+		@Override
+		ImageInfo probe( final String path ) {
+			return ImageProbe.scifio( path );
+		}
+	},
+
+	BIOFORMATS( "BioFormats" ) {
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path ) {
+			return SimplifiedIO.openImageWithBioFormats( path );
+		}
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path, final NativeType type ) {
+			return SimplifiedIO.openImageWithBioFormats( path, type );
+		}
+
+		@Override
+		ImageInfo probe( final String path ) {
+			return ImageProbe.bioFormats( path );
+		}
+	},
+
+	/**
+	 * Memory maps uncompressed TIFF and ENVI raw files, pixels are not copied.
+	 */
+	MAPPED( "Memory mapped" ) {
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path ) {
+			return MappedImages.open( path );
+		}
+
+		@Override
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
+		ImgPlus open( final String path, final NativeType type ) {
+			// NB: The pixels stay in the file, a view doesn't copy them to the heap.
+			return SimplifiedIO.convert( open( path ), type );
+		}
+
+		@Override
+		ImageInfo probe( final String path ) {
+			return ImageProbe.mapped( path );
+		}
+	},
+
+	/**
+	 * Opens chunked Zarr directories lazily, chunks are decoded on first
+	 * access.
+	 */
+	ZARR( "Zarr" ) {
+
+		@Override
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus open( final String path ) {
+			return ZarrImages.open( path );
+		}
+
+		@Override
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
+		ImgPlus open( final String path, final NativeType type ) {
+			// NB: Chunks are decoded lazily, a view keeps them lazy.
+			return SimplifiedIO.convert( open( path ), type );
+		}
+
+		@Override
+		ImageInfo probe( final String path ) {
+			return ZarrImages.probe( path );
+		}
+	};
+
+	private final String displayName;
+
+	Backend( final String displayName ) {
+		this.displayName = displayName;
+	}
+
+	public String getDisplayName() {
+		return displayName;
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	abstract ImgPlus open( String path );
+
+	/**
+	 * Opens the file and converts it to the given pixel type. By default the
+	 * decoded image is converted into a new image, so that the result has no
+	 * converter overhead.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	ImgPlus open( final String path, final NativeType type ) {
+		return SimplifiedIO.convert( open( path ), type, ConversionMode.MATERIALIZE );
+	}
+
+	/** Reads the header of the file, without decoding pixels. */
+	abstract ImageInfo probe( String path );
+}
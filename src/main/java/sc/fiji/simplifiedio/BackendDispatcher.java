@@ -0,0 +1,427 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+import net.imagej.ImgPlus;
+
+/**
+ * Decides in which order the {@link Backend}s are tried to open a file.
+ * <p>
+ * The initial order is derived from the {@link FileSignature}: file types
+ * only Bio-Formats understands are sent to Bio-Formats directly, etc. The
+ * order then adapts at runtime, backends that often fail for a kind of file
+ * are tried later.
+ * <p>
+ * Backends that failed for a kind of file, and never succeeded for it, are
+ * skipped for that kind of file until their failure expires. A failure is only
+ * remembered if another backend opened the file, a file no backend can open
+ * is likely broken and says nothing about its kind. If every backend that
+ * would be tried is remembered, all of them are tried anyway.
+ */
+class BackendDispatcher {
+
+	private static final List< Backend > DEFAULT_ORDER = Arrays.asList( Backend.IJ1, Backend.SCIFIO, Backend.BIOFORMATS );
+
+	private static final List< Backend > SCIFIO_FIRST = Arrays.asList( Backend.SCIFIO, Backend.BIOFORMATS, Backend.IJ1 );
+
+	private static final List< Backend > BIOFORMATS_FIRST = Arrays.asList( Backend.BIOFORMATS, Backend.SCIFIO, Backend.IJ1 );
+
+	private static final Set< String > SCIFIO_EXTENSIONS = new HashSet<>( Arrays.asList(
+			"ics", "ids", "nrrd", "nhdr", "apng", "jp2", "obf", "msr", "eps", "epsi", "ps" ) );
+
+	private static final Set< String > BIOFORMATS_EXTENSIONS = new HashSet<>( Arrays.asList(
+			"ome.tif", "ome.tiff", "ome.btf", "czi", "nd2", "lif", "lof", "lei", "lsm", "ims", "oib", "oif", "vsi",
+			"svs", "ndpi", "scn", "mrxs", "zvi", "dv", "r3d", "stk", "nd", "ome", "sld", "ipl", "ipw", "1sc", "btf", "hdr" ) );
+
+	/** Extensions of ENVI headers and data files, which might be memory mapped. */
+	private static final Set< String > RAW_EXTENSIONS = new HashSet<>( Arrays.asList( "hdr", "raw", "img", "dat", "bin", "bsq" ) );
+
+	static final long DEFAULT_FAILURE_TIME_TO_LIVE = TimeUnit.MINUTES.toNanos( 10 );
+
+	private final Map< String, Map< Backend, Counters > > statistics = new ConcurrentHashMap<>();
+
+	/** Remembered failures, by signature key. */
+	private final Map< String, Map< Backend, Failure > > failures = new ConcurrentHashMap<>();
+
+	private volatile long failureTimeToLive = DEFAULT_FAILURE_TIME_TO_LIVE;
+
+	/** Source of the nanosecond time that failures expire by. */
+	private final LongSupplier clock;
+
+	BackendDispatcher() {
+		this( System::nanoTime );
+	}
+
+	BackendDispatcher( final LongSupplier clock ) {
+		this.clock = clock;
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	ImgPlus open( final String path ) {
+		return open( path, () -> false );
+	}
+
+	/**
+	 * Opens the file, {@code cancelled} is checked before each backend is
+	 * tried.
+	 *
+	 * @throws CancellationException if {@code cancelled} returns true.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	ImgPlus open( final String path, final BooleanSupplier cancelled ) {
+		return open( path, cancelled, Backend::open );
+	}
+
+	/**
+	 * Opens the file with the given function of backend and path, which is
+	 * called for each backend that is tried.
+	 *
+	 * @throws CancellationException if {@code cancelled} returns true.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	ImgPlus open( final String path, final BooleanSupplier cancelled, final BiFunction< Backend, String, ImgPlus > opener ) {
+		return open( path, cancelled, UnaryOperator.identity(), opener );
+	}
+
+	/**
+	 * Opens the file like {@link #open(String, BooleanSupplier, BiFunction)},
+	 * {@code select} chooses and reorders the backends that are tried.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	ImgPlus open( final String path, final BooleanSupplier cancelled, final UnaryOperator< List< Backend > > select,
+			final BiFunction< Backend, String, ImgPlus > opener ) {
+		final FileSignature signature = FileSignature.of( path );
+		final List< Backend > backends = select.apply( order( signature ) );
+		final Map< Backend, Failure > known = skipped( signature, backends );
+		// NB: Only allocated if a backend fails.
+		List< String > messages = null;
+		Map< Backend, String > unremembered = null;
+		final SimplifiedIOListener[] listeners = Listeners.all();
+		final long begin = System.nanoTime();
+		int fallbacks = 0;
+		for ( final Backend backend : backends ) {
+			if ( cancelled.getAsBoolean() )
+				throw new CancellationException( "Opening was cancelled: " + path );
+			final Failure failure = known == null ? null : known.get( backend );
+			if ( failure != null ) {
+				if ( !failure.isExpired() ) {
+					messages = add( messages, backend.getDisplayName() + " Exception (remembered): " + failure.message );
+					continue;
+				}
+				known.remove( backend, failure );
+			}
+			final long start = System.nanoTime();
+			final ImgPlus image;
+			try {
+				image = opener.apply( backend, path );
+			} catch ( UnsupportedConversionException e ) {
+				throw e;
+			} catch ( RequestOutOfRangeException e ) {
+				messages = add( messages, backend.getDisplayName() + " Exception: " + e.getMessage() );
+				continue;
+			} catch ( Exception e ) {
+				final long nanos = System.nanoTime() - start;
+				final Counters counters = counters( signature, backend );
+				counters.failure( nanos );
+				fallbacks++;
+				Listeners.fire( listeners, listener -> listener.backendAttempted( path, backend, false, nanos ) );
+				messages = add( messages, backend.getDisplayName() + " Exception: " + e.getMessage() );
+				if ( counters.successes.sum() == 0 && isFailureRemembered( backend ) ) {
+					if ( unremembered == null )
+						unremembered = new EnumMap<>( Backend.class );
+					unremembered.put( backend, String.valueOf( e.getMessage() ) );
+				}
+				continue;
+			}
+			// NB: Outside of the try, a throwing listener must not make the backend look failed.
+			final long end = System.nanoTime();
+			counters( signature, backend ).success( end - start );
+			if ( unremembered != null )
+				for ( final Map.Entry< Backend, String > failed : unremembered.entrySet() )
+					remember( signature, failed.getKey(), failed.getValue() );
+			image.getProperties().put( SimplifiedIO.BACKEND_PROPERTY, backend );
+			if ( listeners.length > 0 ) {
+				final long bytes = Listeners.size( path );
+				final int attempts = fallbacks;
+				Listeners.fire( listeners, listener -> {
+					listener.backendAttempted( path, backend, true, end - start );
+					listener.opened( path, backend, attempts, end - begin, bytes );
+				} );
+			}
+			return image;
+		}
+
+		final long nanos = System.nanoTime() - begin;
+		Listeners.fire( listeners, listener -> listener.openFailed( path, nanos ) );
+
+		if ( !new File( path ).exists() )
+			throw new SimplifiedIOException( "Image file doesn't exist: " + path );
+
+		throw new SimplifiedIOException( "Couldn't open image file: \"" + path + "\"\n" + "Exceptions:\n" + ( messages == null ? "" : String.join( "\n", messages ) ) );
+	}
+
+	private static List< String > add( final List< String > messages, final String message ) {
+		final List< String > list = messages == null ? new ArrayList<>( 4 ) : messages;
+		list.add( message );
+		return list;
+	}
+
+	/**
+	 * Returns the remembered failures of the kind of file, or null if there
+	 * are none or if every one of the backends would be skipped.
+	 */
+	private Map< Backend, Failure > skipped( final FileSignature signature, final List< Backend > backends ) {
+		final Map< Backend, Failure > known = failures.get( signature.key() );
+		if ( known == null )
+			return null;
+		for ( final Backend backend : backends ) {
+			final Failure failure = known.get( backend );
+			if ( failure == null || failure.isExpired() )
+				return known;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the header of the file with the first backend that can, in the
+	 * same order as {@link #open(String)}. Probing doesn't change the
+	 * statistics, but skips backends with remembered failures.
+	 */
+	ImageInfo probe( final String path ) {
+		final FileSignature signature = FileSignature.of( path );
+		final List< Backend > backends = order( signature );
+		final Map< Backend, Failure > known = skipped( signature, backends );
+		final List< String > messages = new ArrayList<>();
+		for ( final Backend backend : backends ) {
+			final Failure failure = known == null ? null : known.get( backend );
+			if ( failure != null && !failure.isExpired() ) {
+				messages.add( backend.getDisplayName() + " Exception (remembered): " + failure.message );
+				continue;
+			}
+			try {
+				return backend.probe( path );
+			} catch ( Exception e ) {
+				messages.add( backend.getDisplayName() + " Exception: " + e.getMessage() );
+			}
+		}
+
+		if ( !new File( path ).exists() )
+			throw new SimplifiedIOException( "Image file doesn't exist: " + path );
+
+		throw new SimplifiedIOException( "Couldn't read header of image file: \"" + path + "\"\n" + "Exceptions:\n" + String.join( "\n", messages ) );
+	}
+
+	/**
+	 * Whether a failure of the backend says something about other files of
+	 * the same kind. Memory mapping fails for compressed TIFF files, but
+	 * works for uncompressed ones, and is cheap to try. Zarr directories
+	 * differ in their compressors, and their metadata is cheap to read too.
+	 */
+	private static boolean isFailureRemembered( final Backend backend ) {
+		return backend != Backend.MAPPED && backend != Backend.ZARR;
+	}
+
+	private void remember( final FileSignature signature, final Backend backend, final String message ) {
+		final long timeToLive = failureTimeToLive;
+		if ( timeToLive <= 0 )
+			return;
+		failures.computeIfAbsent( signature.key(), k -> new ConcurrentHashMap<>() )
+				.put( backend, new Failure( message, clock.getAsLong() + timeToLive ) );
+	}
+
+	/**
+	 * Sets how long a failure of a backend is remembered, zero disables
+	 * remembering failures.
+	 */
+	void setFailureTimeToLive( final long nanos ) {
+		failureTimeToLive = Math.max( 0, nanos );
+		if ( nanos <= 0 )
+			failures.clear();
+	}
+
+	/**
+	 * Returns the backends that are currently skipped, by signature key, and
+	 * the messages of their failures.
+	 */
+	Map< String, Map< Backend, String > > failures() {
+		final Map< String, Map< Backend, String > > snapshot = new TreeMap<>();
+		failures.forEach( ( key, perBackend ) -> {
+			final Map< Backend, String > messages = new EnumMap<>( Backend.class );
+			perBackend.forEach( ( backend, failure ) -> {
+				if ( !failure.isExpired() )
+					messages.put( backend, failure.message );
+			} );
+			if ( !messages.isEmpty() )
+				snapshot.put( key, Collections.unmodifiableMap( messages ) );
+		} );
+		return Collections.unmodifiableMap( snapshot );
+	}
+
+	void resetFailures() {
+		failures.clear();
+	}
+
+	/**
+	 * Returns the backends in the order they should be tried. Starts from the
+	 * order suggested by the file signature and moves backends with a poor
+	 * success rate for this kind of file to the back.
+	 */
+	List< Backend > order( final FileSignature signature ) {
+		final List< Backend > order = new ArrayList<>( preferredOrder( signature ) );
+		final Map< Backend, Counters > counters = statistics.get( signature.key() );
+		if ( counters != null )
+			order.sort( Comparator.comparingDouble( backend -> -successRate( counters.get( backend ) ) ) );
+		return order;
+	}
+
+	static List< Backend > preferredOrder( final FileSignature signature ) {
+		final List< Backend > order = libraryOrder( signature );
+		if ( signature.extension().equals( "zarr" ) ) {
+			final List< Backend > zarrFirst = new ArrayList<>( order.size() + 1 );
+			zarrFirst.add( Backend.ZARR );
+			zarrFirst.addAll( order );
+			return zarrFirst;
+		}
+		if ( signature.magic() == FileSignature.Magic.TIFF || signature.magic() == FileSignature.Magic.BIGTIFF ||
+				RAW_EXTENSIONS.contains( signature.extension() ) ) {
+			final List< Backend > mappedFirst = new ArrayList<>( order.size() + 1 );
+			mappedFirst.add( Backend.MAPPED );
+			mappedFirst.addAll( order );
+			return mappedFirst;
+		}
+		return order;
+	}
+
+	private static List< Backend > libraryOrder( final FileSignature signature ) {
+		switch ( signature.magic() ) {
+		case CZI:
+		case ND2:
+		case LIF:
+		case HDF5:
+		case OLE2:
+		case BIGTIFF:
+			return BIOFORMATS_FIRST;
+		default:
+			break;
+		}
+		if ( BIOFORMATS_EXTENSIONS.contains( signature.extension() ) )
+			return BIOFORMATS_FIRST;
+		if ( SCIFIO_EXTENSIONS.contains( signature.extension() ) )
+			return SCIFIO_FIRST;
+		return DEFAULT_ORDER;
+	}
+
+	/**
+	 * Laplace smoothed success rate, an untried backend has a success rate of
+	 * 0.5.
+	 */
+	private static double successRate( final Counters counters ) {
+		if ( counters == null )
+			return 0.5;
+		final long successes = counters.successes.sum();
+		final long failures = counters.failures.sum();
+		return ( successes + 1.0 ) / ( successes + failures + 2.0 );
+	}
+
+	private Counters counters( final FileSignature signature, final Backend backend ) {
+		return statistics
+				.computeIfAbsent( signature.key(), k -> Collections.synchronizedMap( new EnumMap<>( Backend.class ) ) )
+				.computeIfAbsent( backend, b -> new Counters() );
+	}
+
+	Map< String, Map< Backend, BackendStatistics > > statistics() {
+		final Map< String, Map< Backend, BackendStatistics > > snapshot = new TreeMap<>();
+		statistics.forEach( ( key, counters ) -> {
+			final Map< Backend, BackendStatistics > perBackend = new EnumMap<>( Backend.class );
+			synchronized ( counters ) {
+				counters.forEach( ( backend, c ) -> perBackend.put( backend, c.snapshot() ) );
+			}
+			snapshot.put( key, Collections.unmodifiableMap( perBackend ) );
+		} );
+		return Collections.unmodifiableMap( snapshot );
+	}
+
+	void resetStatistics() {
+		statistics.clear();
+	}
+
+	private class Failure {
+
+		private final String message;
+
+		private final long expires;
+
+		Failure( final String message, final long expires ) {
+			this.message = message;
+			this.expires = expires;
+		}
+
+		boolean isExpired() {
+			return clock.getAsLong() - expires >= 0;
+		}
+	}
+
+	private static class Counters {
+
+		private final LongAdder successes = new LongAdder();
+
+		private final LongAdder failures = new LongAdder();
+
+		private final LongAdder successNanos = new LongAdder();
+
+		private final LongAdder failureNanos = new LongAdder();
+
+		void success( final long nanos ) {
+			successes.increment();
+			successNanos.add( nanos );
+		}
+
+		void failure( final long nanos ) {
+			failures.increment();
+			failureNanos.add( nanos );
+		}
+
+		BackendStatistics snapshot() {
+			return new BackendStatistics( successes.sum(), failures.sum(), successNanos.sum(), failureNanos.sum() );
+		}
+	}
+}
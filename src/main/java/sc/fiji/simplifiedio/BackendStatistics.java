@@ -0,0 +1,69 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+/**
+ * Snapshot of how often a {@link Backend} succeeded or failed to open files of
+ * a certain kind, and how much time was spent doing so.
+ *
+ * @see SimplifiedIO#getBackendStatistics()
+ */
+public final class BackendStatistics {
+
+	private final long successes;
+
+	private final long failures;
+
+	private final long successNanos;
+
+	private final long failureNanos;
+
+	BackendStatistics( final long successes, final long failures, final long successNanos, final long failureNanos ) {
+		this.successes = successes;
+		this.failures = failures;
+		this.successNanos = successNanos;
+		this.failureNanos = failureNanos;
+	}
+
+	public long getSuccesses() {
+		return successes;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	/** Total time spent in successful attempts to open a file, in nanoseconds. */
+	public long getSuccessNanos() {
+		return successNanos;
+	}
+
+	/** Total time spent in failed attempts to open a file, in nanoseconds. */
+	public long getFailureNanos() {
+		return failureNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "successes=" + successes + " (" + successNanos / 1_000_000 + " ms), failures=" + failures + " (" + failureNanos / 1_000_000 + " ms)";
+	}
+}
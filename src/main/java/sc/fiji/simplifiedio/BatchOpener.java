@@ -0,0 +1,243 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import net.imagej.ImgPlus;
+
+/**
+ * Opens a batch of files in a pipeline: each file is read ahead on the I/O
+ * executor, then opened on the decode executor. The number of files in the
+ * pipeline, including opened images that haven't been consumed yet, is
+ * bounded by {@link BatchOptions#getMaxInFlight()}.
+ */
+class BatchOpener implements Iterator< BatchResult > {
+
+	private static final int PREFETCH_BUFFER_SIZE = 1 << 20;
+
+	private static volatile ExecutorService ioExecutor;
+
+	private static final ThreadLocal< ByteBuffer > PREFETCH_BUFFER =
+			ThreadLocal.withInitial( () -> ByteBuffer.allocateDirect( PREFETCH_BUFFER_SIZE ) );
+
+	private final Iterator< Path > paths;
+
+	private final int size;
+
+	private final BatchOptions options;
+
+	private final Function< String, ImgPlus< ? > > open;
+
+	/** Futures in submission order, used if the results are ordered. */
+	private final Deque< CompletableFuture< BatchResult > > pending = new ArrayDeque<>();
+
+	/** Results in completion order, used if the results are unordered. */
+	private final BlockingQueue< BatchResult > completed = new LinkedBlockingQueue<>();
+
+	private int submitted = 0;
+
+	private int returned = 0;
+
+	private volatile boolean closed = false;
+
+	BatchOpener( final Collection< Path > paths, final BatchOptions options, final Function< String, ImgPlus< ? > > open ) {
+		this.paths = new ArrayList<>( paths ).iterator();
+		this.size = paths.size();
+		this.options = options;
+		this.open = open;
+	}
+
+	/** Daemon threads, so that abandoned batches don't keep the JVM alive. */
+	static ExecutorService defaultIoExecutor() {
+		if ( ioExecutor == null ) {
+			synchronized ( BatchOpener.class ) {
+				if ( ioExecutor == null )
+					ioExecutor = Executors.newCachedThreadPool( runnable -> {
+						final Thread thread = new Thread( runnable, "simplified-io-prefetch" );
+						thread.setDaemon( true );
+						return thread;
+					} );
+			}
+		}
+		return ioExecutor;
+	}
+
+	Stream< BatchResult > stream() {
+		final Spliterator< BatchResult > spliterator = Spliterators.spliterator( this, size,
+				Spliterator.NONNULL | Spliterator.SIZED | ( options.isOrdered() ? Spliterator.ORDERED : 0 ) );
+		return StreamSupport.stream( spliterator, false ).onClose( this::close );
+	}
+
+	@Override
+	public boolean hasNext() {
+		return returned < size && !closed;
+	}
+
+	@Override
+	public BatchResult next() {
+		if ( !hasNext() )
+			throw new NoSuchElementException();
+		fill();
+		final BatchResult result;
+		if ( options.isOrdered() ) {
+			result = pending.poll().join();
+		}
+		else {
+			try {
+				result = completed.take();
+			}
+			catch ( final InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new SimplifiedIOException( e );
+			}
+		}
+		returned++;
+		return result;
+	}
+
+	/** Stops submitting files, files that are already opened are discarded. */
+	void close() {
+		closed = true;
+		final List< CompletableFuture< BatchResult > > futures = new ArrayList<>( pending );
+		pending.clear();
+		completed.clear();
+		for ( final CompletableFuture< BatchResult > future : futures )
+			future.cancel( false );
+	}
+
+	private void fill() {
+		while ( submitted < size && submitted - returned < options.getMaxInFlight() ) {
+			final Path path = paths.next();
+			submitted++;
+			final CompletableFuture< BatchResult > opened = new CompletableFuture<>();
+			read( path ).whenComplete( ( ignore, error ) -> decode( path, opened ) );
+			final CompletableFuture< BatchResult > result =
+					opened.handle( ( image, error ) -> error == null ? image : BatchResult.failure( path, exception( error ) ) );
+			if ( options.isOrdered() )
+				pending.add( result );
+			else
+				result.thenAccept( completed::add );
+		}
+	}
+
+	/** Prefetches the file on the I/O executor, prefetching is skipped if the executor rejects it. */
+	private CompletableFuture< Void > read( final Path path ) {
+		if ( !options.isPrefetch() )
+			return CompletableFuture.completedFuture( null );
+		try {
+			return CompletableFuture.runAsync( () -> prefetch( path ), options.getIoExecutor() );
+		}
+		catch ( final RejectedExecutionException e ) {
+			return CompletableFuture.completedFuture( null );
+		}
+	}
+
+	/**
+	 * Opens the file on the decode executor. The future is completed
+	 * exceptionally if the executor rejects the task, or if opening fails
+	 * with an {@link Error}.
+	 */
+	private void decode( final Path path, final CompletableFuture< BatchResult > opened ) {
+		try {
+			options.getDecodeExecutor().execute( () -> {
+				try {
+					opened.complete( open( path ) );
+				}
+				catch ( final Throwable t ) {
+					opened.completeExceptionally( t );
+					throw t;
+				}
+			} );
+		}
+		catch ( final RuntimeException e ) {
+			opened.completeExceptionally( e );
+		}
+	}
+
+	private static SimplifiedIOException exception( final Throwable error ) {
+		final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if ( cause instanceof SimplifiedIOException )
+			return ( SimplifiedIOException ) cause;
+		if ( cause instanceof Exception )
+			return new SimplifiedIOException( ( Exception ) cause );
+		final SimplifiedIOException exception = new SimplifiedIOException( cause.toString() );
+		exception.initCause( cause );
+		return exception;
+	}
+
+	private BatchResult open( final Path path ) {
+		if ( closed )
+			return BatchResult.failure( path, new SimplifiedIOException( "Batch was closed." ) );
+		try {
+			return BatchResult.success( path, open.apply( path.toString() ) );
+		}
+		catch ( final SimplifiedIOException e ) {
+			return BatchResult.failure( path, e );
+		}
+		catch ( final RuntimeException e ) {
+			return BatchResult.failure( path, new SimplifiedIOException( e ) );
+		}
+	}
+
+	/**
+	 * Reads the file once, so that the backend finds it in the page cache.
+	 * Errors are ignored, the backend reports them when opening the file.
+	 */
+	private void prefetch( final Path path ) {
+		if ( closed )
+			return;
+		final ByteBuffer buffer = PREFETCH_BUFFER.get();
+		try (FileChannel channel = FileChannel.open( path, StandardOpenOption.READ )) {
+			do
+				buffer.clear();
+			while ( !closed && channel.read( buffer ) > 0 );
+		}
+		catch ( final IOException | RuntimeException e ) {
+			// NB: ignore
+		}
+	}
+}
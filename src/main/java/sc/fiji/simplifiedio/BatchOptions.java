@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options for {@link SimplifiedIO#openImages(java.util.Collection, BatchOptions)}.
+ * <p>
+ * Files are read ahead on the I/O executor, which warms the operating
+ * system's page cache, and then opened on the decode executor. At most
+ * {@link #maxInFlight(int) maxInFlight} images are read, decoded or waiting
+ * to be consumed at any time.
+ */
+public class BatchOptions {
+
+	private boolean ordered = true;
+
+	private int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+
+	private boolean prefetch = true;
+
+	private Executor ioExecutor = BatchOpener.defaultIoExecutor();
+
+	private Executor decodeExecutor = ForkJoinPool.commonPool();
+
+	public static BatchOptions options() {
+		return new BatchOptions();
+	}
+
+	/**
+	 * If true, which is the default, the results are returned in the order of
+	 * the paths. Otherwise in the order the images are opened.
+	 */
+	public BatchOptions ordered( final boolean ordered ) {
+		this.ordered = ordered;
+		return this;
+	}
+
+	/** Maximum number of images that are held in memory at once. */
+	public BatchOptions maxInFlight( final int maxInFlight ) {
+		if ( maxInFlight < 1 )
+			throw new IllegalArgumentException( "maxInFlight must be positive: " + maxInFlight );
+		this.maxInFlight = maxInFlight;
+		return this;
+	}
+
+	/** Read the files ahead on the I/O executor, true by default. */
+	public BatchOptions prefetch( final boolean prefetch ) {
+		this.prefetch = prefetch;
+		return this;
+	}
+
+	/** Executor for reading files ahead. Tasks on it block on I/O. */
+	public BatchOptions ioExecutor( final Executor ioExecutor ) {
+		this.ioExecutor = ioExecutor;
+		return this;
+	}
+
+	/**
+	 * Executor for opening and decoding the images, the default is
+	 * {@link ForkJoinPool#commonPool()}.
+	 */
+	public BatchOptions decodeExecutor( final Executor decodeExecutor ) {
+		this.decodeExecutor = decodeExecutor;
+		return this;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public boolean isPrefetch() {
+		return prefetch;
+	}
+
+	public Executor getIoExecutor() {
+		return ioExecutor;
+	}
+
+	public Executor getDecodeExecutor() {
+		return decodeExecutor;
+	}
+}
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.nio.file.Path;
+
+import net.imagej.ImgPlus;
+
+/**
+ * The outcome of opening one file with
+ * {@link SimplifiedIO#openImages(java.util.Collection, BatchOptions)}: either
+ * the image or the exception that occurred.
+ */
+public class BatchResult {
+
+	private final Path path;
+
+	private final ImgPlus< ? > image;
+
+	private final SimplifiedIOException error;
+
+	private BatchResult( final Path path, final ImgPlus< ? > image, final SimplifiedIOException error ) {
+		this.path = path;
+		this.image = image;
+		this.error = error;
+	}
+
+	static BatchResult success( final Path path, final ImgPlus< ? > image ) {
+		return new BatchResult( path, image, null );
+	}
+
+	static BatchResult failure( final Path path, final SimplifiedIOException error ) {
+		return new BatchResult( path, null, error );
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * Returns the image.
+	 *
+	 * @throws SimplifiedIOException if the image couldn't be opened.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public ImgPlus getImage() {
+		if ( error != null )
+			throw error;
+		return image;
+	}
+
+	/** Returns the exception, or null if the image was opened. */
+	public SimplifiedIOException getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return path + ( error == null ? ": ok" : ": " + error.getMessage() );
+	}
+}
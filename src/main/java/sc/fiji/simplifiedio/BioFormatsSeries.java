@@ -0,0 +1,738 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import loci.formats.ChannelSeparator;
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.MetadataTools;
+import loci.formats.meta.IMetadata;
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import ome.units.quantity.Length;
+import ome.units.quantity.Time;
+
+/**
+ * One series of a file opened with a Bio-Formats reader, at one of its
+ * resolution levels. The image is presented with axes X, Y, C, Z, T, where C,
+ * Z and T are omitted if they have size one. Planes, or regions of planes, are
+ * decoded directly into primitive arrays.
+ * <p>
+ * The reader is shared by all users of this series, all access to it is
+ * synchronized on the reader.
+ */
+class BioFormatsSeries {
+
+	/** One reader decodes at least this many bytes when decoding in parallel. */
+	private static final long MIN_BYTES_PER_READER = 8 << 20;
+
+	private final IFormatReader reader;
+
+	private final int series;
+
+	private final int resolution;
+
+	private final String name;
+
+	private final int sizeX, sizeY;
+
+	/** Sizes of the non-spatial axes, in the order C, Z, T. */
+	private final int[] planeSizes;
+
+	private final int pixelType;
+
+	private final boolean littleEndian;
+
+	private final CalibratedAxis[] axes;
+
+	private final long[] dimensions;
+
+	/** For each of the axes in {@link #dimensions}, the index into C, Z, T or -1 for X and Y. */
+	private final int[] planeAxis;
+
+	BioFormatsSeries( final IFormatReader reader, final int series ) {
+		this( reader, series, 0 );
+	}
+
+	BioFormatsSeries( final IFormatReader reader, final int series, final int resolution ) {
+		this.reader = reader;
+		this.series = series;
+		this.resolution = resolution;
+		synchronized ( reader ) {
+			reader.setSeries( series );
+			if ( resolution >= reader.getResolutionCount() )
+				throw new RequestOutOfRangeException( "Resolution level " + resolution + " doesn't exist, the series has " +
+						reader.getResolutionCount() + " levels: " + reader.getCurrentFile() );
+			final int fullSizeX = reader.getSizeX();
+			final int fullSizeY = reader.getSizeY();
+			reader.setResolution( resolution );
+			final IMetadata metadata = reader.getMetadataStore() instanceof IMetadata ? ( IMetadata ) reader.getMetadataStore() : null;
+			this.name = name( new File( reader.getCurrentFile() ).getName(), reader.getSeriesCount(), series, metadata );
+			this.sizeX = reader.getSizeX();
+			this.sizeY = reader.getSizeY();
+			this.planeSizes = new int[] { reader.getSizeC(), reader.getSizeZ(), reader.getSizeT() };
+			this.pixelType = reader.getPixelType();
+			this.littleEndian = reader.isLittleEndian();
+			final List< CalibratedAxis > axes = new ArrayList<>();
+			final List< Long > dimensions = new ArrayList<>();
+			final List< Integer > planeAxis = new ArrayList<>();
+			// NB: The metadata has the pixel size of the full resolution.
+			axes.add( spatialAxis( Axes.X, metadata == null ? null : metadata.getPixelsPhysicalSizeX( series ), ( double ) fullSizeX / sizeX ) );
+			axes.add( spatialAxis( Axes.Y, metadata == null ? null : metadata.getPixelsPhysicalSizeY( series ), ( double ) fullSizeY / sizeY ) );
+			dimensions.add( ( long ) sizeX );
+			dimensions.add( ( long ) sizeY );
+			planeAxis.add( -1 );
+			planeAxis.add( -1 );
+			final AxisType[] planeAxisTypes = { Axes.CHANNEL, Axes.Z, Axes.TIME };
+			for ( int i = 0; i < 3; i++ ) {
+				if ( planeSizes[ i ] <= 1 )
+					continue;
+				if ( planeAxisTypes[ i ] == Axes.Z )
+					axes.add( spatialAxis( Axes.Z, metadata == null ? null : metadata.getPixelsPhysicalSizeZ( series ), 1 ) );
+				else if ( planeAxisTypes[ i ] == Axes.TIME )
+					axes.add( timeAxis( metadata == null ? null : metadata.getPixelsTimeIncrement( series ) ) );
+				else
+					axes.add( new DefaultLinearAxis( Axes.CHANNEL ) );
+				dimensions.add( ( long ) planeSizes[ i ] );
+				planeAxis.add( i );
+			}
+			this.axes = axes.toArray( new CalibratedAxis[ 0 ] );
+			this.dimensions = dimensions.stream().mapToLong( Long::longValue ).toArray();
+			this.planeAxis = planeAxis.stream().mapToInt( Integer::intValue ).toArray();
+		}
+	}
+
+	/** A copy of the series that reads with another reader of the same file. */
+	private BioFormatsSeries( final BioFormatsSeries series, final IFormatReader reader ) {
+		this.reader = reader;
+		this.series = series.series;
+		this.resolution = series.resolution;
+		this.name = series.name;
+		this.sizeX = series.sizeX;
+		this.sizeY = series.sizeY;
+		this.planeSizes = series.planeSizes;
+		this.pixelType = series.pixelType;
+		this.littleEndian = series.littleEndian;
+		this.axes = series.axes;
+		this.dimensions = series.dimensions;
+		this.planeAxis = series.planeAxis;
+	}
+
+	/**
+	 * The file name, followed by the name of the series if the file has
+	 * several, like the Bio-Formats importer names its images.
+	 */
+	private static String name( final String fileName, final int seriesCount, final int series, final IMetadata metadata ) {
+		if ( seriesCount <= 1 )
+			return fileName;
+		final String imageName = metadata == null ? null : metadata.getImageName( series );
+		return fileName + " - " + ( imageName == null || imageName.isEmpty() ? "Series " + series : imageName );
+	}
+
+	/**
+	 * Creates a reader that presents each channel as separate plane, with OME
+	 * metadata attached, so that calibration can be read. Resolution levels
+	 * are not flattened into series, they are selected by
+	 * {@link IFormatReader#setResolution(int)}.
+	 */
+	static IFormatReader createReader() {
+		final IFormatReader reader = new ChannelSeparator( new ImageReader() );
+		reader.setFlattenedResolutions( false );
+		reader.setMetadataStore( MetadataTools.createOMEXMLMetadata() );
+		return reader;
+	}
+
+	static IFormatReader openReader( final String path ) {
+		final IFormatReader reader = createReader();
+		try {
+			reader.setId( path );
+			return reader;
+		} catch ( FormatException | IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	/** Selects the series and resolution level, the caller must hold the lock on the reader. */
+	private void select() {
+		reader.setSeries( series );
+		reader.setResolution( resolution );
+	}
+
+	String name() {
+		return name;
+	}
+
+	long[] dimensions() {
+		return dimensions.clone();
+	}
+
+	CalibratedAxis[] axes() {
+		final CalibratedAxis[] copy = new CalibratedAxis[ axes.length ];
+		for ( int d = 0; d < axes.length; d++ )
+			copy[ d ] = axes[ d ].copy();
+		return copy;
+	}
+
+	int sizeX() {
+		return sizeX;
+	}
+
+	int sizeY() {
+		return sizeY;
+	}
+
+	int pixelType() {
+		return pixelType;
+	}
+
+	int bytesPerPixel() {
+		return FormatTools.getBytesPerPixel( pixelType );
+	}
+
+	/** Number of XY planes. */
+	int numPlanes() {
+		return planeSizes[ 0 ] * planeSizes[ 1 ] * planeSizes[ 2 ];
+	}
+
+	/**
+	 * Returns the Bio-Formats plane index for the given position. Only the
+	 * non-spatial entries of the position, i.e. d &gt;= 2, are used.
+	 */
+	int planeIndex( final long[] position ) {
+		final int[] czt = new int[ 3 ];
+		for ( int d = 2; d < position.length; d++ )
+			czt[ planeAxis[ d ] ] = ( int ) position[ d ];
+		synchronized ( reader ) {
+			select();
+			return reader.getIndex( czt[ 1 ], czt[ 0 ], czt[ 2 ] );
+		}
+	}
+
+	/**
+	 * Returns the Bio-Formats plane index of the plane with the given index in
+	 * a planar image with the axes of this series. (C varies fastest, then Z,
+	 * then T.)
+	 */
+	int planeIndex( final int flatPlaneIndex ) {
+		final int c = flatPlaneIndex % planeSizes[ 0 ];
+		final int z = ( flatPlaneIndex / planeSizes[ 0 ] ) % planeSizes[ 1 ];
+		final int t = flatPlaneIndex / planeSizes[ 0 ] / planeSizes[ 1 ];
+		synchronized ( reader ) {
+			select();
+			return reader.getIndex( z, c, t );
+		}
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	NativeType type() {
+		switch ( pixelType ) {
+		case FormatTools.INT8:
+			return new ByteType();
+		case FormatTools.UINT8:
+		case FormatTools.BIT:
+			return new UnsignedByteType();
+		case FormatTools.INT16:
+			return new ShortType();
+		case FormatTools.UINT16:
+			return new UnsignedShortType();
+		case FormatTools.INT32:
+			return new IntType();
+		case FormatTools.UINT32:
+			return new UnsignedIntType();
+		case FormatTools.FLOAT:
+			return new FloatType();
+		case FormatTools.DOUBLE:
+			return new DoubleType();
+		default:
+			throw new SimplifiedIOException( "Unsupported pixel type: " + FormatTools.getPixelTypeString( pixelType ) );
+		}
+	}
+
+	/** Creates an array access suitable for {@link #type()}. */
+	ArrayDataAccess< ? > createAccess( final int numPixels ) {
+		switch ( bytesPerPixel() ) {
+		case 1:
+			return new ByteArray( numPixels );
+		case 2:
+			return new ShortArray( numPixels );
+		case 4:
+			return pixelType == FormatTools.FLOAT ? new FloatArray( numPixels ) : new IntArray( numPixels );
+		case 8:
+			return new DoubleArray( numPixels );
+		default:
+			throw new SimplifiedIOException( "Unsupported pixel type: " + FormatTools.getPixelTypeString( pixelType ) );
+		}
+	}
+
+	/**
+	 * Reads a region of a plane into the given primitive array, which must be
+	 * of the type returned by {@link #createAccess(int)}.
+	 */
+	void readRegion( final int no, final int x, final int y, final int w, final int h, final Object array ) {
+		readRegion( no, x, y, w, h, array, 0 );
+	}
+
+	/**
+	 * Reads a region of a plane into the given primitive array, starting at
+	 * the given index of the array.
+	 */
+	void readRegion( final int no, final int x, final int y, final int w, final int h, final Object array, final int offset ) {
+		final int numPixels = w * h;
+		// NB: Unless the array is a byte array of the region's size, the pixels are read into a pooled buffer and decoded from there.
+		final boolean pooled = !( array instanceof byte[] ) || offset != 0 || ( ( byte[] ) array ).length != numPixels;
+		final byte[] bytes = pooled ? BufferPool.take( numPixels * bytesPerPixel() ) : ( byte[] ) array;
+		try {
+			synchronized ( reader ) {
+				select();
+				reader.openBytes( no, bytes, x, y, w, h );
+			}
+			decode( bytes, littleEndian, array, offset, numPixels );
+		} catch ( FormatException | IOException e ) {
+			throw new SimplifiedIOException( e );
+		} finally {
+			if ( pooled )
+				BufferPool.give( bytes );
+		}
+	}
+
+	/**
+	 * Reads a region of a plane into the buffer, starting at its position, in
+	 * the byte order of the buffer.
+	 */
+	void readRegion( final int no, final int x, final int y, final int w, final int h, final ByteBuffer target ) {
+		final int size = w * h * bytesPerPixel();
+		final byte[] bytes = BufferPool.take( size );
+		try {
+			synchronized ( reader ) {
+				select();
+				reader.openBytes( no, bytes, x, y, w, h );
+			}
+			final ByteBuffer source = ByteBuffer.wrap( bytes, 0, size ).order( littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+			final ByteBuffer destination = target.duplicate().order( target.order() );
+			switch ( bytesPerPixel() ) {
+			case 1:
+				destination.put( source );
+				break;
+			case 2:
+				destination.asShortBuffer().put( source.asShortBuffer() );
+				break;
+			case 4:
+				destination.asIntBuffer().put( source.asIntBuffer() );
+				break;
+			case 8:
+				destination.asLongBuffer().put( source.asLongBuffer() );
+				break;
+			default:
+				throw new SimplifiedIOException( "Unsupported pixel type: " + FormatTools.getPixelTypeString( pixelType ) );
+			}
+		} catch ( FormatException | IOException e ) {
+			throw new SimplifiedIOException( e );
+		} finally {
+			BufferPool.give( bytes );
+		}
+	}
+
+	/**
+	 * Copies pixel values, stored as bytes in the given byte order, into a
+	 * primitive array, starting at the given index of the array.
+	 */
+	private static void decode( final byte[] bytes, final boolean littleEndian, final Object array, final int offset, final int numPixels ) {
+		if ( array instanceof byte[] ) {
+			if ( bytes != array )
+				System.arraycopy( bytes, 0, array, offset, numPixels );
+			return;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap( bytes ).order( littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN );
+		if ( array instanceof short[] )
+			buffer.asShortBuffer().get( ( short[] ) array, offset, numPixels );
+		else if ( array instanceof int[] )
+			buffer.asIntBuffer().get( ( int[] ) array, offset, numPixels );
+		else if ( array instanceof float[] )
+			buffer.asFloatBuffer().get( ( float[] ) array, offset, numPixels );
+		else if ( array instanceof double[] )
+			buffer.asDoubleBuffer().get( ( double[] ) array, offset, numPixels );
+		else
+			throw new IllegalArgumentException( "Unsupported array type: " + array.getClass() );
+	}
+
+	/**
+	 * Reads the requested region of the requested planes into a
+	 * {@link PlanarImg}. Only the requested planes are read, and only the
+	 * requested region of each plane is decoded. The series of the request
+	 * is ignored. The axes are the same as for the whole series, with the
+	 * origins moved to the first requested pixel.
+	 * <p>
+	 * Each plane is converted to the given type right after decoding it, into
+	 * a planar image of that type. Only one plane of the original type is
+	 * held in memory.
+	 * <p>
+	 * The planes are decoded in parallel if the image is large enough. Each
+	 * task decodes with its own reader of the file, taken from the pool and
+	 * given back afterwards. If there are fewer planes than cores, the planes
+	 * are split into bands of rows. Decoding is sequential if the pool is
+	 * null.
+	 *
+	 * @return the image, or null if the pixels can't be converted plane by
+	 *         plane to the given type. Supported are {@link FloatType},
+	 *         {@link DoubleType} and the type of the series.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	ImgPlus< ? > openPlanar( final ReadRequest request, final NativeType< ? > targetType, final ReaderPool pool, final String path ) {
+		final boolean convert = !targetType.getClass().equals( type().getClass() );
+		if ( convert && ( PrimitiveConverter.SourceKind.of( type() ) == null || !( targetType instanceof FloatType || targetType instanceof DoubleType ) ) )
+			return null;
+		final PlanarImg< ?, ? > img = ( PlanarImg ) new PlanarImgFactory( targetType ).create( dimensions( request ) );
+		final long bytes = Intervals.numElements( img ) * bytesPerPixel();
+		final int readers = pool == null ? 1 : ( int ) Math.max( 1, Math.min( Runtime.getRuntime().availableProcessors(), bytes / MIN_BYTES_PER_READER ) );
+		if ( readers == 1 )
+			readPlanes( request, img );
+		else
+			readPlanesInParallel( request, img, readers, pool, path );
+		return new ImgPlus<>( img, name, axes( request ) );
+	}
+
+	/**
+	 * Reads the whole series into a new image outside of the Java heap. Each
+	 * cell of the image is decoded straight into its buffer, the pixels are
+	 * never held on the heap. Cells are decoded in parallel like
+	 * {@link #openPlanar(ReadRequest, NativeType, ReaderPool, String)} does.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	ImgPlus< ? > openOffHeap( final ReaderPool pool, final String path ) {
+		final OffHeapImg< ? > img = OffHeapImg.create( dimensions(), ( NativeType ) type() );
+		final int cells = img.numCells();
+		final int readers = ( int ) Math.max( 1, Math.min( Math.min( Runtime.getRuntime().availableProcessors(), cells ),
+				img.sizeInBytes() / MIN_BYTES_PER_READER ) );
+		final AtomicInteger next = new AtomicInteger();
+		try {
+			IntStream.range( 0, readers ).parallel().forEach( task -> {
+				// NB: Don't open another reader if the other tasks already took all cells.
+				if ( task > 0 && next.get() >= cells )
+					return;
+				final IFormatReader own = task == 0 ? null : pool.acquireBioFormatsReader( path );
+				try {
+					final BioFormatsSeries decoder = task == 0 ? this : new BioFormatsSeries( this, own );
+					final long[] min = new long[ dimensions.length ];
+					final int[] size = new int[ dimensions.length ];
+					for ( int i = next.getAndIncrement(); i < cells; i = next.getAndIncrement() ) {
+						img.getCellGrid().getCellDimensions( i, min, size );
+						decoder.readRegion( decoder.planeIndex( min ), 0, ( int ) min[ 1 ], size[ 0 ], size[ 1 ], img.buffer( i ) );
+					}
+				}
+				catch ( final RuntimeException e ) {
+					next.set( cells );
+					throw e;
+				}
+				finally {
+					if ( own != null )
+						pool.releaseBioFormatsReader( path, own );
+				}
+			} );
+		}
+		catch ( RuntimeException | Error e ) {
+			img.release();
+			throw e;
+		}
+		return new ImgPlus<>( img, name, axes() );
+	}
+
+	private void readPlanesInParallel( final ReadRequest request, final PlanarImg< ?, ? > target, final int readers,
+			final ReaderPool pool, final String path ) {
+		final int planes = target.numSlices();
+		final int height = ( int ) target.dimension( 1 );
+		final int bands = planes >= readers ? 1 : Math.min( height, ( readers + planes - 1 ) / planes );
+		final int units = planes * bands;
+		final AtomicInteger next = new AtomicInteger();
+		IntStream.range( 0, Math.min( readers, units ) ).parallel().forEach( task -> {
+			// NB: Don't open another reader if the other tasks already took all planes.
+			if ( task > 0 && next.get() >= units )
+				return;
+			final IFormatReader own = task == 0 ? null : pool.acquireBioFormatsReader( path );
+			try {
+				final BioFormatsSeries decoder = task == 0 ? this : new BioFormatsSeries( own, series, resolution );
+				decoder.readPlanes( request, target, bands, next );
+			}
+			catch ( final RuntimeException e ) {
+				next.set( units );
+				throw e;
+			}
+			finally {
+				if ( own != null )
+					pool.releaseBioFormatsReader( path, own );
+			}
+		} );
+	}
+
+	/** Dimensions of the image read for the given request. */
+	long[] dimensions( final ReadRequest request ) {
+		final long[] dims = dimensions.clone();
+		dims[ 0 ] = request.max( ReadRequest.X, sizeX ) - request.min( ReadRequest.X, sizeX ) + 1;
+		dims[ 1 ] = request.max( ReadRequest.Y, sizeY ) - request.min( ReadRequest.Y, sizeY ) + 1;
+		for ( int d = 2; d < dims.length; d++ ) {
+			final int which = ReadRequest.C + planeAxis[ d ];
+			dims[ d ] = request.max( which, dimensions[ d ] ) - request.min( which, dimensions[ d ] ) + 1;
+		}
+		return dims;
+	}
+
+	/**
+	 * Axes of the image read for the given request, with the origins moved to
+	 * the first requested pixel.
+	 */
+	CalibratedAxis[] axes( final ReadRequest request ) {
+		final CalibratedAxis[] axes = axes();
+		ReadRequest.shiftOrigin( axes[ 0 ], request.min( ReadRequest.X, sizeX ) );
+		ReadRequest.shiftOrigin( axes[ 1 ], request.min( ReadRequest.Y, sizeY ) );
+		for ( int d = 2; d < axes.length; d++ )
+			ReadRequest.shiftOrigin( axes[ d ], request.min( ReadRequest.C + planeAxis[ d ], dimensions[ d ] ) );
+		return axes;
+	}
+
+	/**
+	 * Reads the requested region of the requested planes into the target, a
+	 * planar image with as many planes as requested, each of the requested
+	 * size. The planes are converted to {@link FloatType} or
+	 * {@link DoubleType} if that is the type of the target. Axes of size one
+	 * may be missing from the target, which allows to read single slices into
+	 * buffers of lower dimensionality.
+	 */
+	void readPlanes( final ReadRequest request, final PlanarImg< ?, ? > target ) {
+		readPlanes( request, target, 1, new AtomicInteger() );
+	}
+
+	/**
+	 * Reads the planes split into the given number of bands of rows. Bands
+	 * are taken from the shared counter until all are read, so that several
+	 * series, each with its own reader, can read into the same target.
+	 */
+	private void readPlanes( final ReadRequest request, final PlanarImg< ?, ? > target, final int bands, final AtomicInteger next ) {
+		final boolean convert = !Util.getTypeFromInterval( target ).getClass().equals( type().getClass() );
+		final PrimitiveConverter.SourceKind kind = PrimitiveConverter.SourceKind.of( type() );
+		final int x = ( int ) request.min( ReadRequest.X, sizeX );
+		final int y = ( int ) request.min( ReadRequest.Y, sizeY );
+		final int w = ( int ) request.max( ReadRequest.X, sizeX ) - x + 1;
+		final int h = ( int ) request.max( ReadRequest.Y, sizeY ) - y + 1;
+		final int[] first = new int[ 3 ];
+		final int[] count = new int[ 3 ];
+		for ( int i = 0; i < 3; i++ ) {
+			first[ i ] = ( int ) request.min( ReadRequest.C + i, planeSizes[ i ] );
+			count[ i ] = ( int ) request.max( ReadRequest.C + i, planeSizes[ i ] ) - first[ i ] + 1;
+		}
+		final int bandHeight = ( h + bands - 1 ) / bands;
+		final int units = target.numSlices() * bands;
+		final Object decoded = convert ? createAccess( w * h ).getCurrentStorageArray() : null;
+		for ( int unit = next.getAndIncrement(); unit < units; unit = next.getAndIncrement() ) {
+			final int i = unit / bands;
+			final int top = unit % bands * bandHeight;
+			final int rows = Math.min( bandHeight, h - top );
+			if ( rows <= 0 )
+				continue;
+			final int c = first[ 0 ] + i % count[ 0 ];
+			final int z = first[ 1 ] + ( i / count[ 0 ] ) % count[ 1 ];
+			final int t = first[ 2 ] + i / count[ 0 ] / count[ 1 ];
+			final int no;
+			synchronized ( reader ) {
+				select();
+				no = reader.getIndex( z, c, t );
+			}
+			final Object plane = ( ( ArrayDataAccess< ? > ) target.getPlane( i ) ).getCurrentStorageArray();
+			final int from = top * w;
+			if ( !convert )
+				readRegion( no, x, y + top, w, rows, plane, from );
+			else {
+				readRegion( no, x, y + top, w, rows, decoded, from );
+				if ( plane instanceof float[] )
+					PrimitiveConverter.toFloats( kind, decoded, ( float[] ) plane, from, from + rows * w );
+				else
+					PrimitiveConverter.toDoubles( kind, decoded, ( double[] ) plane, from, from + rows * w );
+			}
+		}
+	}
+
+	/**
+	 * Reads all planes of the series into consecutive planes of the target,
+	 * starting at the given plane. The target must have the pixel type and the
+	 * plane size of this series.
+	 */
+	void readPlanes( final PlanarImg< ?, ? > target, final int firstPlane ) {
+		for ( int i = 0; i < numPlanes(); i++ ) {
+			final Object plane = ( ( ArrayDataAccess< ? > ) target.getPlane( firstPlane + i ) ).getCurrentStorageArray();
+			readRegion( planeIndex( i ), 0, 0, sizeX, sizeY, plane );
+		}
+	}
+
+	/**
+	 * Creates an image that decodes its cells on first access. Cells are XY
+	 * tiles of the size preferred by the reader. At most {@code cacheSize} bytes
+	 * of decoded cells are kept in memory.
+	 * <p>
+	 * The image doesn't hold the reader of this series. Each cell is decoded
+	 * with one of the given readers of the file, which stay open between
+	 * cells until {@link #close(net.imglib2.img.Img)} is called or the image
+	 * is unreachable.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	ImgPlus< ? > openLazy( final long cacheSize, final LazyReaders readers ) {
+		final int tileWidth, tileHeight;
+		synchronized ( reader ) {
+			select();
+			tileWidth = Math.min( sizeX, Math.max( 1, reader.getOptimalTileWidth() ) );
+			tileHeight = Math.min( sizeY, Math.max( 1, reader.getOptimalTileHeight() ) );
+		}
+		final int[] cellDimensions = new int[ dimensions.length ];
+		cellDimensions[ 0 ] = tileWidth;
+		cellDimensions[ 1 ] = tileHeight;
+		for ( int d = 2; d < cellDimensions.length; d++ )
+			cellDimensions[ d ] = 1;
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+		final long cellSize = ( long ) tileWidth * tileHeight * bytesPerPixel();
+		// NB: The cache doesn't keep the reader of this series.
+		final CellCache cache = new CellCache( new BioFormatsSeries( this, null ), readers, grid, Math.max( 1, cacheSize / cellSize ) );
+		final TiledImg img = new TiledImg( grid, type(), cache, readers );
+		readers.closeWhenUnreachable( img );
+		return new ImgPlus<>( img, name, axes() );
+	}
+
+	/**
+	 * Closes the file of an image created by {@link #openLazy(long, LazyReaders)},
+	 * does nothing for other images.
+	 */
+	static void close( Img< ? > img ) {
+		while ( img instanceof ImgPlus )
+			img = ( ( ImgPlus< ? > ) img ).getImg();
+		if ( img instanceof TiledImg )
+			( ( TiledImg< ?, ? > ) img ).readers.close();
+	}
+
+	private static CalibratedAxis spatialAxis( final AxisType type, final Length length, final double factor ) {
+		if ( length == null || length.value() == null )
+			return new DefaultLinearAxis( type );
+		return new DefaultLinearAxis( type, length.unit().getSymbol(), length.value().doubleValue() * factor );
+	}
+
+	private static CalibratedAxis timeAxis( final Time time ) {
+		if ( time == null || time.value() == null )
+			return new DefaultLinearAxis( Axes.TIME );
+		return new DefaultLinearAxis( Axes.TIME, time.unit().getSymbol(), time.value().doubleValue() );
+	}
+
+	/** A lazy image that knows the readers it decodes its tiles with. */
+	private static class TiledImg< T extends NativeType< T >, A > extends LazyImg< T, A > {
+
+		private final LazyReaders readers;
+
+		TiledImg( final CellGrid grid, final T type, final Get< Cell< A > > get, final LazyReaders readers ) {
+			super( grid, type, get );
+			this.readers = readers;
+		}
+	}
+
+	/**
+	 * Loads cells on demand, and keeps the most recently used cells in memory.
+	 * Cells can be loaded concurrently, each with its own reader.
+	 */
+	private static class CellCache implements LazyCellImg.Get< Cell< ArrayDataAccess< ? > > > {
+
+		/** The series without reader, copied with a reader for each cell. */
+		private final BioFormatsSeries series;
+
+		private final LazyReaders readers;
+
+		private final CellGrid grid;
+
+		private final LeastRecentlyUsedMap< Long, Cell< ArrayDataAccess< ? > > > cells;
+
+		CellCache( final BioFormatsSeries series, final LazyReaders readers, final CellGrid grid, final long maxCells ) {
+			this.series = series;
+			this.readers = readers;
+			this.grid = grid;
+			this.cells = new LeastRecentlyUsedMap<>( ( int ) Math.min( Integer.MAX_VALUE, maxCells ) );
+		}
+
+		@Override
+		public Cell< ArrayDataAccess< ? > > get( final long index ) {
+			synchronized ( cells ) {
+				final Cell< ArrayDataAccess< ? > > cell = cells.get( index );
+				if ( cell != null )
+					return cell;
+			}
+			final Cell< ArrayDataAccess< ? > > cell = load( index );
+			synchronized ( cells ) {
+				cells.put( index, cell );
+			}
+			return cell;
+		}
+
+		private Cell< ArrayDataAccess< ? > > load( final long index ) {
+			final long[] min = new long[ grid.numDimensions() ];
+			final int[] size = new int[ grid.numDimensions() ];
+			grid.getCellDimensions( index, min, size );
+			final IFormatReader reader = readers.acquire();
+			try {
+				final BioFormatsSeries decoder = new BioFormatsSeries( series, reader );
+				final ArrayDataAccess< ? > access = decoder.createAccess( size[ 0 ] * size[ 1 ] );
+				decoder.readRegion( decoder.planeIndex( min ), ( int ) min[ 0 ], ( int ) min[ 1 ], size[ 0 ], size[ 1 ], access.getCurrentStorageArray() );
+				return new Cell<>( size, min, access );
+			}
+			finally {
+				readers.release( reader );
+			}
+		}
+	}
+}
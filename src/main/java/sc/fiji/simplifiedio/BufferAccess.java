@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.nio.ByteBuffer;
+
+import net.imglib2.img.basictypeaccess.ByteAccess;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.FloatAccess;
+import net.imglib2.img.basictypeaccess.IntAccess;
+import net.imglib2.img.basictypeaccess.ShortAccess;
+
+/**
+ * imglib2 access that reads and writes pixel values in a {@link ByteBuffer},
+ * in the byte order of the buffer. Used for memory mapped files and for
+ * pixel data outside of the Java heap.
+ */
+abstract class BufferAccess {
+
+	private static final ByteBuffer DETACHED = ByteBuffer.allocate( 0 );
+
+	ByteBuffer buffer;
+
+	BufferAccess( final ByteBuffer buffer ) {
+		this.buffer = buffer;
+	}
+
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * Replaces the buffer by an empty one, so that later accesses throw an
+	 * {@link IndexOutOfBoundsException} instead of touching freed memory.
+	 */
+	void detach() {
+		buffer = DETACHED;
+	}
+
+	static final class Bytes extends BufferAccess implements ByteAccess {
+
+		Bytes( final ByteBuffer buffer ) {
+			super( buffer );
+		}
+
+		@Override
+		public byte getValue( final int index ) {
+			return buffer.get( index );
+		}
+
+		@Override
+		public void setValue( final int index, final byte value ) {
+			buffer.put( index, value );
+		}
+	}
+
+	static final class Shorts extends BufferAccess implements ShortAccess {
+
+		Shorts( final ByteBuffer buffer ) {
+			super( buffer );
+		}
+
+		@Override
+		public short getValue( final int index ) {
+			return buffer.getShort( index << 1 );
+		}
+
+		@Override
+		public void setValue( final int index, final short value ) {
+			buffer.putShort( index << 1, value );
+		}
+	}
+
+	static final class Ints extends BufferAccess implements IntAccess {
+
+		Ints( final ByteBuffer buffer ) {
+			super( buffer );
+		}
+
+		@Override
+		public int getValue( final int index ) {
+			return buffer.getInt( index << 2 );
+		}
+
+		@Override
+		public void setValue( final int index, final int value ) {
+			buffer.putInt( index << 2, value );
+		}
+	}
+
+	static final class Floats extends BufferAccess implements FloatAccess {
+
+		Floats( final ByteBuffer buffer ) {
+			super( buffer );
+		}
+
+		@Override
+		public float getValue( final int index ) {
+			return buffer.getFloat( index << 2 );
+		}
+
+		@Override
+		public void setValue( final int index, final float value ) {
+			buffer.putFloat( index << 2, value );
+		}
+	}
+
+	static final class Doubles extends BufferAccess implements DoubleAccess {
+
+		Doubles( final ByteBuffer buffer ) {
+			super( buffer );
+		}
+
+		@Override
+		public double getValue( final int index ) {
+			return buffer.getDouble( index << 3 );
+		}
+
+		@Override
+		public void setValue( final int index, final double value ) {
+			buffer.putDouble( index << 3, value );
+		}
+	}
+}
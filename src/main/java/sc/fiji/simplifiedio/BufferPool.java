@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * Per-thread pool of the byte arrays used as temporary buffers when planes,
+ * tiles and chunks are decoded or encoded. The planes of an image, and the
+ * tiles and chunks of a file, all have the same size, so an array returned
+ * to the pool is reused for the next one instead of allocating a new array
+ * each time.
+ * <p>
+ * Arrays are pooled by their exact length, a few per thread. An array taken
+ * from the pool contains arbitrary values. Pooled arrays are softly
+ * referenced, they are dropped if memory gets low.
+ */
+final class BufferPool {
+
+	private static final int SLOTS = 4;
+
+	/** Larger arrays are not pooled. */
+	private static final int MAX_POOLED_LENGTH = 1 << 28;
+
+	private static final ThreadLocal< Slots > POOL = ThreadLocal.withInitial( Slots::new );
+
+	private BufferPool() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns an array of the given length from the pool of this thread, or a
+	 * new array if there is none. The contents of a pooled array are
+	 * arbitrary.
+	 */
+	static byte[] take( final int length ) {
+		if ( length > MAX_POOLED_LENGTH )
+			return new byte[ length ];
+		final Slots slots = POOL.get();
+		for ( int i = 0; i < SLOTS; i++ ) {
+			final SoftReference< byte[] > reference = slots.arrays[ i ];
+			final byte[] array = reference == null ? null : reference.get();
+			if ( array != null && array.length == length ) {
+				slots.arrays[ i ] = null;
+				return array;
+			}
+		}
+		return new byte[ length ];
+	}
+
+	/**
+	 * Puts an array back into the pool of this thread. The array must not be
+	 * used by the caller anymore. Replaces the least recently pooled array if
+	 * the pool is full.
+	 */
+	static void give( final byte[] array ) {
+		if ( array.length > MAX_POOLED_LENGTH )
+			return;
+		final Slots slots = POOL.get();
+		int slot = -1;
+		for ( int i = 0; i < SLOTS && slot < 0; i++ )
+			if ( slots.arrays[ i ] == null || slots.arrays[ i ].get() == null )
+				slot = i;
+		if ( slot < 0 ) {
+			slot = slots.next;
+			slots.next = ( slots.next + 1 ) % SLOTS;
+		}
+		slots.arrays[ slot ] = new SoftReference<>( array );
+	}
+
+	private static final class Slots {
+
+		@SuppressWarnings( "unchecked" )
+		private final SoftReference< byte[] >[] arrays = new SoftReference[ SLOTS ];
+
+		/** The slot to replace next if all slots are in use. */
+		private int next = 0;
+	}
+}
@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+/**
+ * Controls how {@link SimplifiedIO#convert(net.imagej.ImgPlus, net.imglib2.type.NativeType, ConversionMode)}
+ * returns the converted image.
+ */
+public enum ConversionMode {
+
+	/**
+	 * The converted image is a view, pixel values are converted every time
+	 * they are accessed. This is cheap if each pixel is only read once.
+	 */
+	VIEW,
+
+	/**
+	 * The converted pixel values are computed once, in parallel, and copied
+	 * into a new image. This is faster if pixels are read several times.
+	 */
+	MATERIALIZE,
+
+	/**
+	 * Like {@link #MATERIALIZE}, but the converted image is stored outside of
+	 * the Java heap, it doesn't add to garbage collection pauses. Free its
+	 * memory with {@link SimplifiedIO#release(net.imagej.ImgPlus)}.
+	 */
+	OFF_HEAP
+}
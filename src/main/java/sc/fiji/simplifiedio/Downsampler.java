@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Computes the next lower resolution level of an XY plane, by averaging
+ * blocks of 2x2 pixels. The rows of the result are computed in parallel.
+ * Supports real types and {@link ARGBType}, where each channel is averaged.
+ */
+final class Downsampler {
+
+	/** Number of rows of the result computed by one task. */
+	private static final long ROWS_PER_TASK = 64;
+
+	private Downsampler() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns a new image with half the width and height of the plane, rounded
+	 * up. At odd borders, the last pixel is averaged over the pixels present.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static < T > RandomAccessibleInterval< T > halve( final RandomAccessibleInterval< T > plane ) {
+		final long width = ( plane.dimension( 0 ) + 1 ) / 2;
+		final long height = ( plane.dimension( 1 ) + 1 ) / 2;
+		final NativeType type = ( ( NativeType ) Util.getTypeFromInterval( plane ) ).createVariable();
+		final Img target = Util.getSuitableImgFactory( new FinalDimensions( width, height ), type ).create( width, height );
+		final long tasks = ( height + ROWS_PER_TASK - 1 ) / ROWS_PER_TASK;
+		LongStream.range( 0, tasks ).parallel().forEach( task -> {
+			final long end = Math.min( height, ( task + 1 ) * ROWS_PER_TASK );
+			for ( long y = task * ROWS_PER_TASK; y < end; y++ )
+				halveRow( plane, target, y );
+		} );
+		return target;
+	}
+
+	private static void halveRow( final RandomAccessibleInterval< ? > plane, final RandomAccessibleInterval< ? > target, final long y ) {
+		final long width = plane.dimension( 0 );
+		final long top = plane.min( 1 ) + 2 * y;
+		final boolean twoRows = 2 * y + 1 < plane.dimension( 1 );
+		final Cursor< ? > first = row( plane, plane.min( 0 ), top, width );
+		final Cursor< ? > second = twoRows ? row( plane, plane.min( 0 ), top + 1, width ) : null;
+		final Cursor< ? > out = row( target, 0, y, target.dimension( 0 ) );
+		final double[] sum = new double[ 4 ];
+		for ( long x = 0; x < target.dimension( 0 ); x++ ) {
+			final int columns = 2 * x + 1 < width ? 2 : 1;
+			Arrays.fill( sum, 0 );
+			for ( int i = 0; i < columns; i++ ) {
+				add( first.next(), sum );
+				if ( second != null )
+					add( second.next(), sum );
+			}
+			set( out.next(), sum, second != null ? 2 * columns : columns );
+		}
+	}
+
+	private static Cursor< ? > row( final RandomAccessibleInterval< ? > image, final long x, final long y, final long width ) {
+		return Views.flatIterable( Views.interval( image, new long[] { x, y }, new long[] { x + width - 1, y } ) ).cursor();
+	}
+
+	private static void add( final Object pixel, final double[] sum ) {
+		if ( pixel instanceof ARGBType ) {
+			final int value = ( ( ARGBType ) pixel ).get();
+			sum[ 0 ] += ARGBType.red( value );
+			sum[ 1 ] += ARGBType.green( value );
+			sum[ 2 ] += ARGBType.blue( value );
+			sum[ 3 ] += ARGBType.alpha( value );
+		}
+		else
+			sum[ 0 ] += ( ( RealType< ? > ) pixel ).getRealDouble();
+	}
+
+	private static void set( final Object pixel, final double[] sum, final int count ) {
+		if ( pixel instanceof ARGBType )
+			( ( ARGBType ) pixel ).set( ARGBType.rgba( average( sum[ 0 ], count ), average( sum[ 1 ], count ),
+					average( sum[ 2 ], count ), average( sum[ 3 ], count ) ) );
+		else
+			( ( RealType< ? > ) pixel ).setReal( sum[ 0 ] / count );
+	}
+
+	private static int average( final double sum, final int count ) {
+		return ( int ) Math.round( sum / count );
+	}
+}
@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+
+/**
+ * Reads the header of an ENVI raw file: a text file ending with ".hdr" that
+ * describes the layout of a separate binary data file. Only band sequential
+ * (BSQ) data can be memory mapped, each band becomes a channel.
+ */
+final class EnviRaw {
+
+	private static final String[] DATA_EXTENSIONS = { "", ".raw", ".img", ".dat", ".bin", ".bsq" };
+
+	private EnviRaw() {
+		// prevent instantiation of utility class
+	}
+
+	/** True if the file is an ENVI header, or a data file with a header next to it. */
+	static boolean isEnvi( final Path file ) {
+		return header( file ) != null;
+	}
+
+	static MappedImages.Layout parse( final Path file ) throws IOException {
+		final Path header = header( file );
+		final Path data = header.equals( file ) ? dataFile( header ) : file;
+		if ( data == null )
+			throw new SimplifiedIOException( "No data file found for ENVI header: " + header );
+		final Map< String, String > fields = fields( Files.readAllLines( header, StandardCharsets.ISO_8859_1 ) );
+		final int samples = MappedImages.checkSize( parseLong( fields, "samples", -1 ), "samples", header );
+		final int lines = MappedImages.checkSize( parseLong( fields, "lines", -1 ), "lines", header );
+		final long bands = parseLong( fields, "bands", 1 );
+		final long offset = parseLong( fields, "header offset", 0 );
+		final String interleave = fields.getOrDefault( "interleave", "bsq" ).toLowerCase( Locale.ROOT );
+		if ( bands > 1 && !interleave.equals( "bsq" ) )
+			throw new UnsupportedFileException( "Can't memory map ENVI file with " + interleave + " interleave: " + header );
+		final MappedImages.Kind kind = kind( parseLong( fields, "data type", -1 ), header );
+		final ByteOrder order = parseLong( fields, "byte order", 0 ) == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		final long planeSize = ( long ) samples * lines * kind.bytesPerPixel;
+		final long[] offsets = new long[ ( int ) bands ];
+		for ( int i = 0; i < bands; i++ )
+			offsets[ i ] = offset + i * planeSize;
+		final long[] dimensions = bands > 1 ? new long[] { samples, lines, bands } : new long[] { samples, lines };
+		final CalibratedAxis[] axes = bands > 1
+				? new CalibratedAxis[] { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ), new DefaultLinearAxis( Axes.CHANNEL ) }
+				: new CalibratedAxis[] { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ) };
+		return new MappedImages.Layout( data, data.getFileName().toString(), kind, order, dimensions, axes, offsets );
+	}
+
+	private static MappedImages.Kind kind( final long dataType, final Path header ) {
+		switch ( ( int ) dataType ) {
+		case 1:
+			return MappedImages.Kind.UINT8;
+		case 2:
+			return MappedImages.Kind.INT16;
+		case 3:
+			return MappedImages.Kind.INT32;
+		case 4:
+			return MappedImages.Kind.FLOAT32;
+		case 5:
+			return MappedImages.Kind.FLOAT64;
+		case 12:
+			return MappedImages.Kind.UINT16;
+		case 13:
+			return MappedImages.Kind.UINT32;
+		default:
+			throw new UnsupportedFileException( "Unsupported ENVI data type " + dataType + ": " + header );
+		}
+	}
+
+	/** Returns the ENVI header of the file, or null if there is none. */
+	private static Path header( final Path file ) {
+		final String name = file.getFileName().toString();
+		if ( name.toLowerCase( Locale.ROOT ).endsWith( ".hdr" ) )
+			return isHeader( file ) ? file : null;
+		final int dot = name.lastIndexOf( '.' );
+		for ( final String candidate : new String[] { name + ".hdr", dot > 0 ? name.substring( 0, dot ) + ".hdr" : null } ) {
+			if ( candidate == null )
+				continue;
+			final Path header = file.resolveSibling( candidate );
+			if ( isHeader( header ) )
+				return header;
+		}
+		return null;
+	}
+
+	private static boolean isHeader( final Path file ) {
+		if ( !Files.isRegularFile( file ) )
+			return false;
+		try {
+			final List< String > lines = Files.readAllLines( file, StandardCharsets.ISO_8859_1 );
+			return !lines.isEmpty() && lines.get( 0 ).trim().equals( "ENVI" );
+		} catch ( IOException e ) {
+			return false;
+		}
+	}
+
+	private static Path dataFile( final Path header ) {
+		final String name = header.getFileName().toString();
+		final String base = name.substring( 0, name.length() - 4 );
+		for ( final String extension : DATA_EXTENSIONS ) {
+			final Path data = header.resolveSibling( base + extension );
+			if ( Files.isRegularFile( data ) )
+				return data;
+		}
+		return null;
+	}
+
+	/** Parses "key = value" lines, values in braces may span several lines. */
+	static Map< String, String > fields( final List< String > lines ) {
+		final Map< String, String > fields = new HashMap<>();
+		String key = null;
+		StringBuilder value = null;
+		for ( final String line : lines ) {
+			if ( value != null ) {
+				value.append( ' ' ).append( line.trim() );
+			} else {
+				final int equals = line.indexOf( '=' );
+				if ( equals < 0 )
+					continue;
+				key = line.substring( 0, equals ).trim().toLowerCase( Locale.ROOT );
+				value = new StringBuilder( line.substring( equals + 1 ).trim() );
+			}
+			if ( value.length() == 0 || value.charAt( 0 ) != '{' || value.indexOf( "}" ) >= 0 ) {
+				fields.put( key, value.toString() );
+				value = null;
+			}
+		}
+		return fields;
+	}
+
+	private static long parseLong( final Map< String, String > fields, final String key, final long defaultValue ) {
+		try {
+			final String value = fields.get( key );
+			return value == null ? defaultValue : Long.parseLong( value.trim() );
+		} catch ( NumberFormatException e ) {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.scijava.util.FileUtils;
+
+/**
+ * Identifies the kind of an image file by its extension and the magic bytes
+ * at the start of the file. Only a small header is read, using a memory mapped
+ * buffer.
+ */
+final class FileSignature {
+
+	/** DICOM has its magic number at offset 128, which is the furthest we look. */
+	private static final int HEADER_SIZE = 132;
+
+	enum Magic {
+		TIFF, BIGTIFF, PNG, JPEG, GIF, BMP, ZIP, DICOM, CZI, ND2, LIF, HDF5, OLE2, UNKNOWN
+	}
+
+	private final String extension;
+
+	private final Magic magic;
+
+	FileSignature( final String extension, final Magic magic ) {
+		this.extension = extension;
+		this.magic = magic;
+	}
+
+	static FileSignature of( final String path ) {
+		return new FileSignature( extension( path ), sniff( path ) );
+	}
+
+	String extension() {
+		return extension;
+	}
+
+	Magic magic() {
+		return magic;
+	}
+
+	/**
+	 * Key used to group statistics of files that are expected to behave the
+	 * same, e.g. "czi/CZI" or "tif/TIFF".
+	 */
+	String key() {
+		return extension + "/" + magic;
+	}
+
+	@Override
+	public boolean equals( final Object obj ) {
+		if ( !( obj instanceof FileSignature ) )
+			return false;
+		final FileSignature other = ( FileSignature ) obj;
+		return extension.equals( other.extension ) && magic == other.magic;
+	}
+
+	@Override
+	public int hashCode() {
+		return extension.hashCode() * 31 + magic.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return key();
+	}
+
+	static String extension( final String path ) {
+		final String lower = path.toLowerCase( Locale.ROOT );
+		// NB: OME-TIFF files need to be distinguished from plain TIFF files.
+		for ( final String ext : new String[] { "ome.tif", "ome.tiff", "ome.btf" } )
+			if ( lower.endsWith( "." + ext ) )
+				return ext;
+		return FileUtils.getExtension( lower );
+	}
+
+	private static Magic sniff( final String path ) {
+		try (FileChannel channel = FileChannel.open( Paths.get( path ), StandardOpenOption.READ )) {
+			final long size = channel.size();
+			if ( size == 0 )
+				return Magic.UNKNOWN;
+			final ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, Math.min( size, HEADER_SIZE ) );
+			return sniff( header );
+		} catch ( IOException | RuntimeException e ) {
+			return Magic.UNKNOWN;
+		}
+	}
+
+	static Magic sniff( final ByteBuffer header ) {
+		if ( startsWith( header, 'I', 'I', 42, 0 ) || startsWith( header, 'M', 'M', 0, 42 ) )
+			return Magic.TIFF;
+		if ( startsWith( header, 'I', 'I', 43, 0 ) || startsWith( header, 'M', 'M', 0, 43 ) )
+			return Magic.BIGTIFF;
+		if ( startsWith( header, 0x89, 'P', 'N', 'G' ) )
+			return Magic.PNG;
+		if ( startsWith( header, 0xFF, 0xD8, 0xFF ) )
+			return Magic.JPEG;
+		if ( startsWith( header, 'G', 'I', 'F', '8' ) )
+			return Magic.GIF;
+		if ( startsWith( header, 'B', 'M' ) )
+			return Magic.BMP;
+		if ( startsWith( header, 'P', 'K', 3, 4 ) )
+			return Magic.ZIP;
+		if ( startsWith( header, 'Z', 'I', 'S', 'R', 'A', 'W', 'F', 'I', 'L', 'E' ) )
+			return Magic.CZI;
+		if ( startsWith( header, 0xDA, 0xCE, 0xBE, 0x0A ) || startsWith( header, 0x00, 0x00, 0x00, 0x0C, 0x6A, 0x50, 0x20, 0x20 ) )
+			return Magic.ND2;
+		if ( startsWith( header, 0x70, 0x00, 0x00, 0x00 ) )
+			return Magic.LIF;
+		if ( startsWith( header, 0x89, 'H', 'D', 'F' ) )
+			return Magic.HDF5;
+		if ( startsWith( header, 0xD0, 0xCF, 0x11, 0xE0 ) )
+			return Magic.OLE2;
+		if ( header.limit() >= 132 && header.get( 128 ) == 'D' && header.get( 129 ) == 'I' && header.get( 130 ) == 'C' && header.get( 131 ) == 'M' )
+			return Magic.DICOM;
+		return Magic.UNKNOWN;
+	}
+
+	private static boolean startsWith( final ByteBuffer header, final int... bytes ) {
+		if ( header.limit() < bytes.length )
+			return false;
+		for ( int i = 0; i < bytes.length; i++ )
+			if ( ( header.get( i ) & 0xff ) != bytes[ i ] )
+				return false;
+		return true;
+	}
+}
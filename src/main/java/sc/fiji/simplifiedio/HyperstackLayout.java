@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.view.Views;
+
+/**
+ * Presents an {@link ImgPlus} with axes X, Y and any of C, Z, T, as a
+ * sequence of XY planes in the order used by ImageJ1 and OME-TIFF: channel
+ * varies fastest, then Z, then time.
+ */
+final class HyperstackLayout< T > {
+
+	static final int X = 0, Y = 1, C = 2, Z = 3, T = 4;
+
+	private static final AxisType[] AXIS_TYPES = { Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME };
+
+	private final ImgPlus< T > image;
+
+	/** Index of the X, Y, C, Z and T axis in the image, -1 if missing. */
+	private final int[] axisIndex;
+
+	private HyperstackLayout( final ImgPlus< T > image, final int[] axisIndex ) {
+		this.image = image;
+		this.axisIndex = axisIndex;
+	}
+
+	/**
+	 * Returns the layout of the image, or null if the image has other axes
+	 * than X, Y, C, Z and T, or lacks X or Y.
+	 */
+	static < T > HyperstackLayout< T > of( final ImgPlus< T > image ) {
+		final int[] axisIndex = { -1, -1, -1, -1, -1 };
+		for ( int d = 0; d < image.numDimensions(); d++ ) {
+			final int which = which( image.axis( d ).type() );
+			if ( which < 0 || axisIndex[ which ] >= 0 )
+				return null;
+			axisIndex[ which ] = d;
+		}
+		if ( axisIndex[ X ] < 0 || axisIndex[ Y ] < 0 )
+			return null;
+		return new HyperstackLayout<>( image, axisIndex );
+	}
+
+	private static int which( final AxisType type ) {
+		for ( int i = 0; i < AXIS_TYPES.length; i++ )
+			if ( AXIS_TYPES[ i ].equals( type ) )
+				return i;
+		return -1;
+	}
+
+	ImgPlus< T > image() {
+		return image;
+	}
+
+	/** Size of the X, Y, C, Z or T axis, one if the axis is missing. */
+	long size( final int which ) {
+		return axisIndex[ which ] < 0 ? 1 : image.dimension( axisIndex[ which ] );
+	}
+
+	boolean hasAxis( final int which ) {
+		return axisIndex[ which ] >= 0;
+	}
+
+	/** Pixel size along the X, Y, C, Z or T axis, one if the axis is missing. */
+	double scale( final int which ) {
+		return axisIndex[ which ] < 0 ? 1 : image.averageScale( axisIndex[ which ] );
+	}
+
+	/** Unit of the X, Y, C, Z or T axis, null if unknown. */
+	String unit( final int which ) {
+		return axisIndex[ which ] < 0 ? null : image.axis( axisIndex[ which ] ).unit();
+	}
+
+	long numPlanes() {
+		return size( C ) * size( Z ) * size( T );
+	}
+
+	/**
+	 * Returns the XY plane with the given index, where channel varies fastest,
+	 * then Z, then time. The X axis of the returned plane is dimension zero.
+	 */
+	RandomAccessibleInterval< T > plane( final long index ) {
+		final long[] position = new long[ image.numDimensions() ];
+		long remainder = index;
+		for ( int which = C; which <= T; which++ ) {
+			if ( axisIndex[ which ] >= 0 ) {
+				position[ axisIndex[ which ] ] = image.min( axisIndex[ which ] ) + remainder % size( which );
+				remainder /= size( which );
+			}
+		}
+		RandomAccessibleInterval< T > plane = image;
+		for ( int d = image.numDimensions() - 1; d >= 0; d-- )
+			if ( d != axisIndex[ X ] && d != axisIndex[ Y ] )
+				plane = Views.hyperSlice( plane, d, position[ d ] );
+		if ( axisIndex[ Y ] < axisIndex[ X ] )
+			plane = Views.permute( plane, 0, 1 );
+		return plane;
+	}
+}
@@ -0,0 +1,271 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import net.imagej.ImgPlus;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * Keeps opened images in memory, so that opening the same file again doesn't
+ * decode it again. Enable it with {@link SimplifiedIO#setImageCache(ImageCache)}.
+ * <p>
+ * Images are keyed by canonical path, modification time, file size and
+ * requested pixel type, a modified file is opened again. The least recently
+ * used images are evicted once the total size of the cached images exceeds
+ * the byte budget. With soft references, the garbage collector may also
+ * evict images when memory is low.
+ * <p>
+ * Images that are views of the file, like memory mapped TIFF files and Zarr
+ * arrays, are copied to the Java heap before they are cached, so that the
+ * byte budget counts the memory they actually use.
+ * <p>
+ * Cached images are shared and mutable: all callers that open the same file
+ * get the same image, and changes to its pixels or metadata are seen by all
+ * of them. Copy a cached image before modifying it.
+ */
+public class ImageCache {
+
+	private final long maxBytes;
+
+	private final boolean softReferences;
+
+	private final LinkedHashMap< Key, Entry > entries = new LinkedHashMap<>( 16, 0.75f, true );
+
+	private long bytes = 0;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public ImageCache( final long maxBytes ) {
+		this( maxBytes, false );
+	}
+
+	/**
+	 * @param maxBytes
+	 *            Byte budget for the pixel data of the cached images.
+	 * @param softReferences
+	 *            If true, images are held by soft references and may be
+	 *            collected by the garbage collector before they are evicted.
+	 */
+	public ImageCache( final long maxBytes, final boolean softReferences ) {
+		this.maxBytes = maxBytes;
+		this.softReferences = softReferences;
+	}
+
+	/**
+	 * Returns the cached image for the file and pixel type, or opens it with
+	 * the given loader and caches it. {@code type} is null for images opened
+	 * with their own pixel type.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	ImgPlus get( final String path, final Object type, final Supplier< ImgPlus > loader ) {
+		final Key key = Key.of( path, type );
+		if ( key == null )
+			return loader.get();
+		synchronized ( this ) {
+			final Entry entry = entries.get( key );
+			final ImgPlus image = entry == null ? null : entry.image();
+			if ( image != null ) {
+				hits.increment();
+				return image;
+			}
+			if ( entry != null )
+				remove( key );
+		}
+		misses.increment();
+		final ImgPlus image = onHeap( loader.get() );
+		put( key, image );
+		return image;
+	}
+
+	/** Copies images that are views of a file into the heap. */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static ImgPlus onHeap( final ImgPlus image ) {
+		final Backend backend = SimplifiedIO.getBackend( image );
+		if ( backend != Backend.MAPPED && backend != Backend.ZARR )
+			return image;
+		final ImgPlus copy = Materializer.materialize( image );
+		copy.getProperties().put( SimplifiedIO.BACKEND_PROPERTY, backend );
+		return copy;
+	}
+
+	private synchronized void put( final Key key, final ImgPlus< ? > image ) {
+		final long size = sizeInBytes( image );
+		if ( size > maxBytes )
+			return;
+		if ( entries.containsKey( key ) )
+			remove( key );
+		entries.put( key, new Entry( image, size, softReferences ) );
+		bytes += size;
+		final Iterator< Entry > iterator = entries.values().iterator();
+		while ( bytes > maxBytes && iterator.hasNext() ) {
+			bytes -= iterator.next().size;
+			iterator.remove();
+			evictions.increment();
+		}
+	}
+
+	private void remove( final Key key ) {
+		final Entry entry = entries.remove( key );
+		if ( entry != null )
+			bytes -= entry.size;
+	}
+
+	/** Removes all cached images of the given file. */
+	public synchronized void invalidate( final String path ) {
+		final String canonical = Key.canonicalPath( path );
+		entries.keySet().removeIf( key -> key.path.equals( canonical ) );
+		bytes = entries.values().stream().mapToLong( entry -> entry.size ).sum();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Estimated size of the pixel data of the cached images. */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/** Number of images removed to stay within the byte budget. */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "ImageCache: " + size() + " images, " + getBytes() + " of " + maxBytes + " bytes, hits=" + getHits() +
+				", misses=" + getMisses() + ", evictions=" + getEvictions();
+	}
+
+	/** Estimated size of the pixel data. */
+	static long sizeInBytes( final ImgPlus< ? > image ) {
+		return ( Intervals.numElements( image ) * bitsPerPixel( Util.getTypeFromInterval( image ) ) + 7 ) / 8;
+	}
+
+	static long bitsPerPixel( final Object type ) {
+		if ( type instanceof RealType )
+			return ( ( RealType< ? > ) type ).getBitsPerPixel();
+		if ( type instanceof ARGBType )
+			return 32;
+		return 64;
+	}
+
+	private static final class Entry {
+
+		private final ImgPlus< ? > image;
+
+		private final SoftReference< ImgPlus< ? > > reference;
+
+		private final long size;
+
+		Entry( final ImgPlus< ? > image, final long size, final boolean soft ) {
+			this.image = soft ? null : image;
+			this.reference = soft ? new SoftReference<>( image ) : null;
+			this.size = size;
+		}
+
+		@SuppressWarnings( "rawtypes" )
+		ImgPlus image() {
+			return reference == null ? image : reference.get();
+		}
+	}
+
+	private static final class Key {
+
+		private final String path;
+
+		private final long lastModified;
+
+		private final long length;
+
+		private final String type;
+
+		private Key( final String path, final long lastModified, final long length, final String type ) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.type = type;
+		}
+
+		/** Returns null if the file doesn't exist. */
+		static Key of( final String path, final Object type ) {
+			final File file = new File( path );
+			if ( !file.isFile() )
+				return null;
+			return new Key( canonicalPath( path ), file.lastModified(), file.length(), type == null ? "" : type.getClass().getName() );
+		}
+
+		static String canonicalPath( final String path ) {
+			try {
+				return new File( path ).getCanonicalPath();
+			} catch ( IOException e ) {
+				return new File( path ).getAbsolutePath();
+			}
+		}
+
+		@Override
+		public boolean equals( final Object obj ) {
+			if ( !( obj instanceof Key ) )
+				return false;
+			final Key other = ( Key ) obj;
+			return path.equals( other.path ) && lastModified == other.lastModified && length == other.length && type.equals( other.type );
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash( path, lastModified, length, type );
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.util.Arrays;
+
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.util.Intervals;
+
+/**
+ * Dimensions, pixel type, axes and calibration of an image file, as read from
+ * its header by {@link SimplifiedIO#probe(String)}. The pixel data is not
+ * read. The values describe the first series, as
+ * {@link SimplifiedIO#openImage(String)} would open it, or one series listed
+ * by {@link SimplifiedIO#listSeries(String)}.
+ */
+public final class ImageInfo {
+
+	private final String path;
+
+	private final Backend backend;
+
+	private final int series;
+
+	private final String name;
+
+	private final long[] dimensions;
+
+	private final CalibratedAxis[] axes;
+
+	private final Class< ? > pixelType;
+
+	private final long bitsPerPixel;
+
+	private final int seriesCount;
+
+	private final String compression;
+
+	private final long fileSize;
+
+	ImageInfo( final String path, final Backend backend, final long[] dimensions, final CalibratedAxis[] axes, final Object type,
+			final int seriesCount, final String compression, final long fileSize ) {
+		this( path, backend, 0, new File( path ).getName(), dimensions, axes, type, seriesCount, compression, fileSize );
+	}
+
+	ImageInfo( final String path, final Backend backend, final int series, final String name, final long[] dimensions,
+			final CalibratedAxis[] axes, final Object type, final int seriesCount, final String compression, final long fileSize ) {
+		this.path = path;
+		this.backend = backend;
+		this.series = series;
+		this.name = name;
+		this.dimensions = dimensions.clone();
+		this.axes = copy( axes );
+		this.pixelType = type.getClass();
+		this.bitsPerPixel = ImageCache.bitsPerPixel( type );
+		this.seriesCount = seriesCount;
+		this.compression = compression;
+		this.fileSize = fileSize;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/** The backend that read the header. */
+	public Backend getBackend() {
+		return backend;
+	}
+
+	/** Index of the described series. */
+	public int getSeries() {
+		return series;
+	}
+
+	/** Name of the series, or of the file. */
+	public String getName() {
+		return name;
+	}
+
+	public int numDimensions() {
+		return dimensions.length;
+	}
+
+	public long[] getDimensions() {
+		return dimensions.clone();
+	}
+
+	public long dimension( final int d ) {
+		return dimensions[ d ];
+	}
+
+	public AxisType[] getAxisTypes() {
+		return Arrays.stream( axes ).map( CalibratedAxis::type ).toArray( AxisType[]::new );
+	}
+
+	/** Returns copies of the axes, with unit and calibration. */
+	public CalibratedAxis[] getAxes() {
+		return copy( axes );
+	}
+
+	/**
+	 * The class of the pixel type of the opened image, e.g.
+	 * {@link net.imglib2.type.numeric.integer.UnsignedShortType}.
+	 */
+	public Class< ? > getPixelType() {
+		return pixelType;
+	}
+
+	public int getSeriesCount() {
+		return seriesCount;
+	}
+
+	/** The compression of the pixel data, e.g. "LZW", or null if unknown. */
+	public String getCompression() {
+		return compression;
+	}
+
+	/** Size of the file in bytes. */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/** Size of the decoded pixel data in bytes. */
+	public long getPixelDataSize() {
+		return ( Intervals.numElements( dimensions ) * bitsPerPixel + 7 ) / 8;
+	}
+
+	@Override
+	public String toString() {
+		return path + ( series == 0 ? "" : " series " + series ) + ": " + Arrays.toString( dimensions ) + " " + Arrays.toString( getAxisTypes() ) + " " + pixelType.getSimpleName() +
+				", series=" + seriesCount + ( compression == null ? "" : ", compression=" + compression ) + ", backend=" + backend;
+	}
+
+	private static CalibratedAxis[] copy( final CalibratedAxis[] axes ) {
+		final CalibratedAxis[] copy = new CalibratedAxis[ axes.length ];
+		for ( int d = 0; d < axes.length; d++ )
+			copy[ d ] = axes[ d ].copy();
+		return copy;
+	}
+}
@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+import io.scif.ImageMetadata;
+import io.scif.Metadata;
+import io.scif.Reader;
+import io.scif.util.FormatTools;
+import loci.formats.IFormatReader;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Reads the {@link ImageInfo} of a file from its header, one method per
+ * {@link Backend}. Each method describes the image the same way as the
+ * backend would open it, but doesn't decode any pixels.
+ */
+final class ImageProbe {
+
+	private ImageProbe() {
+		// prevent instantiation of utility class
+	}
+
+	static ImageInfo mapped( final String path ) {
+		try {
+			final MappedImages.Layout layout = MappedImages.layout( path );
+			return new ImageInfo( path, Backend.MAPPED, layout.dimensions, layout.axes, layout.kind.type(), 1, "Uncompressed", fileSize( path ) );
+		} catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	static ImageInfo bioFormats( final String path ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			return bioFormats( path, reader, 0 );
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+	}
+
+	/** Describes one series of a file opened by the given reader. */
+	static ImageInfo bioFormats( final String path, final IFormatReader reader, final int index ) {
+		final BioFormatsSeries series = new BioFormatsSeries( reader, index );
+		Object compression = reader.getMetadataValue( "Compression" );
+		if ( compression == null )
+			compression = reader.getSeriesMetadataValue( "Compression" );
+		return new ImageInfo( path, Backend.BIOFORMATS, index, series.name(), series.dimensions(), series.axes(), series.type(),
+				reader.getSeriesCount(), compression == null ? null : compression.toString(), fileSize( path ) );
+	}
+
+	static ImageInfo scifio( final String path ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final Reader reader = pool.acquireScifioReader( path );
+		try {
+			final Metadata metadata = reader.getMetadata();
+			final ImageMetadata image = metadata.get( 0 );
+			final CalibratedAxis[] axes = image.getAxes().toArray( new CalibratedAxis[ 0 ] );
+			final Object type = scifioType( image.getPixelType() );
+			Object compression = image.getTable().get( "Compression" );
+			if ( compression == null )
+				compression = metadata.getTable().get( "Compression" );
+			return new ImageInfo( path, Backend.SCIFIO, image.getAxesLengths(), axes, type, metadata.getImageCount(),
+					compression == null ? null : compression.toString(), fileSize( path ) );
+		} finally {
+			pool.releaseScifioReader( reader );
+		}
+	}
+
+	/**
+	 * Reads the header of a TIFF file with ImageJ1. Other formats are not
+	 * supported, ImageJ1 has no header only reader for them.
+	 */
+	static ImageInfo ij1( final String path ) {
+		final File file = new File( path );
+		final FileInfo[] infos;
+		try {
+			infos = new TiffDecoder( file.getParent() == null ? "" : file.getParent() + File.separator, file.getName() ).getTiffInfo();
+		} catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+		if ( infos == null || infos.length == 0 )
+			throw new SimplifiedIOException( "ImageJ1 can only read the header of TIFF files: " + path );
+		final FileInfo info = infos[ 0 ];
+		final Object type;
+		long samples = 1;
+		switch ( info.fileType ) {
+		case FileInfo.GRAY8:
+		case FileInfo.COLOR8:
+		case FileInfo.BITMAP:
+			type = new UnsignedByteType();
+			break;
+		case FileInfo.GRAY16_SIGNED:
+		case FileInfo.GRAY16_UNSIGNED:
+			type = new UnsignedShortType();
+			break;
+		case FileInfo.RGB48:
+		case FileInfo.RGB48_PLANAR:
+			type = new UnsignedShortType();
+			samples = 3;
+			break;
+		case FileInfo.GRAY32_INT:
+		case FileInfo.GRAY32_UNSIGNED:
+		case FileInfo.GRAY32_FLOAT:
+		case FileInfo.GRAY64_FLOAT:
+			type = new FloatType();
+			break;
+		case FileInfo.RGB:
+		case FileInfo.BGR:
+		case FileInfo.ARGB:
+		case FileInfo.ABGR:
+		case FileInfo.BARG:
+		case FileInfo.RGB_PLANAR:
+		case FileInfo.CMYK:
+			type = new ARGBType();
+			break;
+		default:
+			throw new SimplifiedIOException( "Unsupported ImageJ1 file type " + info.fileType + ": " + path );
+		}
+		final long images = infos.length > 1 ? infos.length : Math.max( 1, info.nImages );
+		long c = samples, z = images, t = 1;
+		double spacing = info.pixelDepth, interval = info.frameInterval > 0 ? info.frameInterval : 1;
+		final Map< String, String > imageJ = MappedTiff.imageJProperties( info.description );
+		if ( imageJ != null ) {
+			final long channels = MappedTiff.parseLong( imageJ.get( "channels" ), 1 );
+			t = MappedTiff.parseLong( imageJ.get( "frames" ), 1 );
+			z = MappedTiff.parseLong( imageJ.get( "slices" ), images / channels / t );
+			if ( channels * z * t == images ) {
+				c = channels * samples;
+			}
+			else {
+				t = 1;
+				z = images;
+			}
+			spacing = MappedTiff.parseDouble( imageJ.get( "spacing" ), spacing );
+			interval = MappedTiff.parseDouble( imageJ.get( "finterval" ), interval );
+		}
+		String unit = info.unit;
+		if ( "micron".equals( unit ) )
+			unit = "\u00b5m";
+		final List< CalibratedAxis > axes = new ArrayList<>();
+		final List< Long > dimensions = new ArrayList<>();
+		axes.add( axis( Axes.X, unit, info.pixelWidth ) );
+		axes.add( axis( Axes.Y, unit, info.pixelHeight ) );
+		dimensions.add( ( long ) info.width );
+		dimensions.add( ( long ) info.height );
+		if ( c > 1 ) {
+			axes.add( new DefaultLinearAxis( Axes.CHANNEL ) );
+			dimensions.add( c );
+		}
+		if ( z > 1 ) {
+			axes.add( axis( Axes.Z, unit, spacing ) );
+			dimensions.add( z );
+		}
+		if ( t > 1 ) {
+			axes.add( axis( Axes.TIME, "sec", interval ) );
+			dimensions.add( t );
+		}
+		return new ImageInfo( path, Backend.IJ1, dimensions.stream().mapToLong( Long::longValue ).toArray(), axes.toArray( new CalibratedAxis[ 0 ] ),
+				type, 1, compression( info.compression ), fileSize( path ) );
+	}
+
+	private static Object scifioType( final int pixelType ) {
+		switch ( pixelType ) {
+		case FormatTools.INT8:
+			return new ByteType();
+		case FormatTools.UINT8:
+		case FormatTools.BIT:
+			return new UnsignedByteType();
+		case FormatTools.INT16:
+			return new ShortType();
+		case FormatTools.UINT16:
+			return new UnsignedShortType();
+		case FormatTools.INT32:
+			return new IntType();
+		case FormatTools.UINT32:
+			return new UnsignedIntType();
+		case FormatTools.FLOAT:
+			return new FloatType();
+		case FormatTools.DOUBLE:
+			return new DoubleType();
+		default:
+			throw new SimplifiedIOException( "Unsupported pixel type: " + FormatTools.getPixelTypeString( pixelType ) );
+		}
+	}
+
+	private static String compression( final int compression ) {
+		switch ( compression ) {
+		case FileInfo.COMPRESSION_NONE:
+			return "Uncompressed";
+		case FileInfo.LZW:
+		case FileInfo.LZW_WITH_DIFFERENCING:
+			return "LZW";
+		case FileInfo.JPEG:
+			return "JPEG";
+		case FileInfo.PACK_BITS:
+			return "PackBits";
+		case FileInfo.ZIP:
+			return "Deflate";
+		default:
+			return null;
+		}
+	}
+
+	private static CalibratedAxis axis( final AxisType type, final String unit, final double scale ) {
+		final double s = scale > 0 ? scale : 1;
+		return unit == null || unit.isEmpty() || unit.equals( "pixel" ) ? new DefaultLinearAxis( type, s ) : new DefaultLinearAxis( type, unit, s );
+	}
+
+	private static long fileSize( final String path ) {
+		return new File( path ).length();
+	}
+}
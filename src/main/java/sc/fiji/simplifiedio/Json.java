@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the metadata files of Zarr arrays. Objects are
+ * parsed into {@link Map}s, arrays into {@link List}s, integers into
+ * {@link Long}s and other numbers into {@link Double}s.
+ */
+final class Json {
+
+	private final String text;
+
+	private int position;
+
+	private Json( final String text ) {
+		this.text = text;
+	}
+
+	static Object parse( final String text ) {
+		final Json json = new Json( text );
+		final Object value = json.value();
+		json.skipWhitespace();
+		if ( json.position < text.length() )
+			throw json.error( "Unexpected character" );
+		return value;
+	}
+
+	/** Returns the string as JSON string literal, with quotes. */
+	static String quote( final String value ) {
+		final StringBuilder quoted = new StringBuilder( value.length() + 2 ).append( '"' );
+		for ( int i = 0; i < value.length(); i++ ) {
+			final char c = value.charAt( i );
+			if ( c == '"' || c == '\\' )
+				quoted.append( '\\' ).append( c );
+			else if ( c < 0x20 )
+				quoted.append( String.format( "\\u%04x", ( int ) c ) );
+			else
+				quoted.append( c );
+		}
+		return quoted.append( '"' ).toString();
+	}
+
+	private Object value() {
+		skipWhitespace();
+		if ( position >= text.length() )
+			throw error( "Unexpected end" );
+		final char c = text.charAt( position );
+		switch ( c ) {
+		case '{':
+			return object();
+		case '[':
+			return array();
+		case '"':
+			return string();
+		case 't':
+			return literal( "true", Boolean.TRUE );
+		case 'f':
+			return literal( "false", Boolean.FALSE );
+		case 'n':
+			return literal( "null", null );
+		default:
+			return number();
+		}
+	}
+
+	private Map< String, Object > object() {
+		final Map< String, Object > map = new LinkedHashMap<>();
+		position++;
+		skipWhitespace();
+		if ( accept( '}' ) )
+			return map;
+		do {
+			skipWhitespace();
+			if ( !accept( '"' ) )
+				throw error( "Expected string" );
+			final String key = string();
+			skipWhitespace();
+			expect( ':' );
+			map.put( key, value() );
+			skipWhitespace();
+		}
+		while ( next( ',' ) );
+		expect( '}' );
+		return map;
+	}
+
+	private List< Object > array() {
+		final List< Object > list = new ArrayList<>();
+		position++;
+		skipWhitespace();
+		if ( accept( ']' ) )
+			return list;
+		do
+			list.add( value() );
+		while ( next( ',' ) );
+		expect( ']' );
+		return list;
+	}
+
+	private String string() {
+		final StringBuilder value = new StringBuilder();
+		position++;
+		while ( position < text.length() ) {
+			final char c = text.charAt( position++ );
+			if ( c == '"' )
+				return value.toString();
+			if ( c != '\\' ) {
+				value.append( c );
+				continue;
+			}
+			if ( position >= text.length() )
+				break;
+			final char escaped = text.charAt( position++ );
+			switch ( escaped ) {
+			case 'b':
+				value.append( '\b' );
+				break;
+			case 'f':
+				value.append( '\f' );
+				break;
+			case 'n':
+				value.append( '\n' );
+				break;
+			case 'r':
+				value.append( '\r' );
+				break;
+			case 't':
+				value.append( '\t' );
+				break;
+			case 'u':
+				if ( position + 4 > text.length() )
+					throw error( "Invalid escape" );
+				value.append( ( char ) Integer.parseInt( text.substring( position, position + 4 ), 16 ) );
+				position += 4;
+				break;
+			default:
+				value.append( escaped );
+			}
+		}
+		throw error( "Unterminated string" );
+	}
+
+	private Object literal( final String literal, final Object value ) {
+		if ( !text.startsWith( literal, position ) )
+			throw error( "Unexpected character" );
+		position += literal.length();
+		return value;
+	}
+
+	private Number number() {
+		final int start = position;
+		while ( position < text.length() && "+-0123456789.eE".indexOf( text.charAt( position ) ) >= 0 )
+			position++;
+		final String number = text.substring( start, position );
+		try {
+			if ( number.indexOf( '.' ) < 0 && number.indexOf( 'e' ) < 0 && number.indexOf( 'E' ) < 0 )
+				return Long.parseLong( number );
+			return Double.parseDouble( number );
+		} catch ( NumberFormatException e ) {
+			position = start;
+			throw error( "Invalid number" );
+		}
+	}
+
+	private void skipWhitespace() {
+		while ( position < text.length() && Character.isWhitespace( text.charAt( position ) ) )
+			position++;
+	}
+
+	private boolean accept( final char c ) {
+		if ( position < text.length() && text.charAt( position ) == c ) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean next( final char c ) {
+		skipWhitespace();
+		return accept( c );
+	}
+
+	private void expect( final char c ) {
+		skipWhitespace();
+		if ( !accept( c ) )
+			throw error( "Expected '" + c + "'" );
+	}
+
+	private SimplifiedIOException error( final String message ) {
+		return new SimplifiedIOException( message + " at position " + position + " of JSON text" );
+	}
+}
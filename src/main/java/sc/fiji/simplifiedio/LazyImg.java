@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Util;
+
+/**
+ * A {@link LazyCellImg} that supports {@link #factory()} and {@link #copy()},
+ * like the images returned by the backends. The factory creates array or
+ * cell images, depending on the size.
+ */
+class LazyImg< T extends NativeType< T >, A > extends LazyCellImg< T, A > {
+
+	private final T type;
+
+	LazyImg( final CellGrid grid, final T type, final Get< Cell< A > > get ) {
+		super( grid, type, get );
+		this.type = type.createVariable();
+	}
+
+	@Override
+	public ImgFactory< T > factory() {
+		return Util.getSuitableImgFactory( this, type );
+	}
+
+	@Override
+	public Img< T > copy() {
+		final Img< T > copy = factory().create( this );
+		Materializer.copy( this, copy );
+		return copy;
+	}
+}
@@ -0,0 +1,158 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import loci.formats.IFormatReader;
+
+/**
+ * The Bio-Formats readers of a lazy image. The readers keep the file open
+ * between tiles, so that the header of the file is parsed once per reader,
+ * not once per tile. Tiles can be decoded concurrently, each thread takes its
+ * own reader, at most {@code maxIdleReaders} are kept open.
+ * <p>
+ * The readers are closed by {@link #close()}, or once the image they are
+ * registered with by {@link #closeWhenUnreachable(Object)} is garbage
+ * collected. Tiles decoded after closing open the file for each tile.
+ */
+final class LazyReaders implements Closeable {
+
+	private static final ReferenceQueue< Object > unreachable = new ReferenceQueue<>();
+
+	/** Keeps the references reachable until their image is collected. */
+	private static final Set< Reference< ? > > closers = ConcurrentHashMap.newKeySet();
+
+	static {
+		final Thread thread = new Thread( LazyReaders::closeUnreachable, "simplified-io-lazy-readers" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	private final String path;
+
+	private final int maxIdleReaders;
+
+	private final Deque< IFormatReader > idle = new ArrayDeque<>();
+
+	private boolean closed = false;
+
+	LazyReaders( final String path ) {
+		this( path, Runtime.getRuntime().availableProcessors() );
+	}
+
+	LazyReaders( final String path, final int maxIdleReaders ) {
+		this.path = path;
+		this.maxIdleReaders = maxIdleReaders;
+	}
+
+	/**
+	 * Returns a reader with the file opened. It must be given back with
+	 * {@link #release(IFormatReader)}.
+	 */
+	IFormatReader acquire() {
+		synchronized ( this ) {
+			if ( !idle.isEmpty() )
+				return idle.pop();
+		}
+		return BioFormatsSeries.openReader( path );
+	}
+
+	/** Keeps the reader open for the next tile, or closes it. */
+	void release( final IFormatReader reader ) {
+		synchronized ( this ) {
+			if ( !closed && idle.size() < maxIdleReaders ) {
+				idle.push( reader );
+				return;
+			}
+		}
+		closeQuietly( reader );
+	}
+
+	/** Number of readers that are kept open. */
+	synchronized int numOpenReaders() {
+		return idle.size();
+	}
+
+	/**
+	 * Closes the readers once the given image is unreachable, unless they are
+	 * closed before.
+	 */
+	void closeWhenUnreachable( final Object image ) {
+		closers.add( new Closer( image, this ) );
+	}
+
+	@Override
+	public void close() {
+		final List< IFormatReader > readers;
+		synchronized ( this ) {
+			closed = true;
+			readers = new ArrayList<>( idle );
+			idle.clear();
+		}
+		for ( final IFormatReader reader : readers )
+			closeQuietly( reader );
+	}
+
+	private static void closeQuietly( final IFormatReader reader ) {
+		try {
+			reader.close();
+		} catch ( IOException e ) {
+			// NB: Nothing left to do with the reader.
+		}
+	}
+
+	private static void closeUnreachable() {
+		while ( true ) {
+			try {
+				final Closer closer = ( Closer ) unreachable.remove();
+				closers.remove( closer );
+				closer.readers.close();
+			} catch ( InterruptedException e ) {
+				return;
+			} catch ( RuntimeException e ) {
+				// NB: Keep closing the readers of other images.
+			}
+		}
+	}
+
+	/** Refers to a lazy image without keeping it reachable. */
+	private static class Closer extends PhantomReference< Object > {
+
+		private final LazyReaders readers;
+
+		Closer( final Object image, final LazyReaders readers ) {
+			super( image, unreachable );
+			this.readers = readers;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link LinkedHashMap} that removes the least recently used entry once it
+ * holds more than a given number of entries. Not thread safe.
+ */
+class LeastRecentlyUsedMap< K, V > extends LinkedHashMap< K, V > {
+
+	private static final long serialVersionUID = 4870539628516475281L;
+
+	private final int maxSize;
+
+	LeastRecentlyUsedMap( final int maxSize ) {
+		super( 16, 0.75f, true );
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	protected boolean removeEldestEntry( final Map.Entry< K, V > eldest ) {
+		return size() > maxSize;
+	}
+}
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The registered {@link SimplifiedIOListener}s. The array is replaced when
+ * listeners are added or removed, so that notifying them needs no locking,
+ * and callers can skip taking timings if {@link #enabled()} is false.
+ */
+final class Listeners {
+
+	private static final SimplifiedIOListener[] NONE = new SimplifiedIOListener[ 0 ];
+
+	private static volatile SimplifiedIOListener[] listeners = NONE;
+
+	private Listeners() {
+		// prevent instantiation of utility class
+	}
+
+	static boolean enabled() {
+		return listeners.length > 0;
+	}
+
+	static synchronized void add( final SimplifiedIOListener listener ) {
+		final SimplifiedIOListener[] copy = Arrays.copyOf( listeners, listeners.length + 1 );
+		copy[ listeners.length ] = listener;
+		listeners = copy;
+	}
+
+	static synchronized void remove( final SimplifiedIOListener listener ) {
+		final SimplifiedIOListener[] remaining = Arrays.stream( listeners ).filter( l -> l != listener ).toArray( SimplifiedIOListener[]::new );
+		listeners = remaining.length == 0 ? NONE : remaining;
+	}
+
+	static SimplifiedIOListener[] all() {
+		return listeners;
+	}
+
+	/**
+	 * Tells each of the listeners about an event. An exception thrown by a
+	 * listener is ignored, it neither reaches the other listeners nor the
+	 * operation that is reported.
+	 */
+	static void fire( final SimplifiedIOListener[] listeners, final Consumer< SimplifiedIOListener > event ) {
+		for ( final SimplifiedIOListener listener : listeners ) {
+			try {
+				event.accept( listener );
+			} catch ( RuntimeException e ) {
+				// NB: A broken listener must not change the outcome of the operation.
+			}
+		}
+	}
+
+	/** Size of the file, or of all files in the directory, e.g. for Zarr. */
+	static long size( final String path ) {
+		final File file = new File( path );
+		if ( !file.isDirectory() )
+			return file.length();
+		long size = 0;
+		final File[] children = file.listFiles();
+		if ( children != null )
+			for ( final File child : children )
+				size += size( child.getPath() );
+		return size;
+	}
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.Arrays;
+
+/**
+ * LZW encoder as specified for TIFF: codes are written most significant bit
+ * first, start with 9 bits, and grow one code early, like libtiff does.
+ */
+final class LzwEncoder {
+
+	private static final int CLEAR = 256, EOI = 257, FIRST = 258, MAX_CODE = 4095, MIN_BITS = 9;
+
+	private static final int HASH_SIZE = 1 << 13;
+
+	/** Hash table from (prefix code << 8 | byte) to code. */
+	private final int[] keys = new int[ HASH_SIZE ];
+
+	private final short[] codes = new short[ HASH_SIZE ];
+
+	/** Output buffer, kept for the next call, as the tiles of a file have the same size. */
+	private byte[] out;
+
+	private int outLength;
+
+	private long bitBuffer;
+
+	private int bitCount;
+
+	private int bits;
+
+	private int nextCode;
+
+	/** Compresses the given bytes. An encoder must not be used concurrently. */
+	byte[] encode( final byte[] data ) {
+		if ( out == null || out.length < data.length / 2 )
+			out = new byte[ Math.max( 64, data.length / 2 ) ];
+		outLength = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+		reset();
+		put( CLEAR );
+		if ( data.length > 0 ) {
+			int prefix = data[ 0 ] & 0xff;
+			for ( int i = 1; i < data.length; i++ ) {
+				final int c = data[ i ] & 0xff;
+				final int key = prefix << 8 | c;
+				final int slot = find( key );
+				if ( keys[ slot ] == key ) {
+					prefix = codes[ slot ];
+					continue;
+				}
+				put( prefix );
+				prefix = c;
+				keys[ slot ] = key;
+				codes[ slot ] = ( short ) nextCode;
+				addCode();
+			}
+			put( prefix );
+			addCode();
+		}
+		put( EOI );
+		if ( bitCount > 0 )
+			putByte( ( int ) ( bitBuffer << ( 8 - bitCount ) ) );
+		return Arrays.copyOf( out, outLength );
+	}
+
+	/** Counts a new table entry, and grows the code width or clears the table. */
+	private void addCode() {
+		nextCode++;
+		if ( nextCode == MAX_CODE - 1 ) {
+			put( CLEAR );
+			reset();
+		}
+		else if ( nextCode > ( 1 << bits ) - 1 ) {
+			bits++;
+		}
+	}
+
+	private void reset() {
+		Arrays.fill( keys, -1 );
+		nextCode = FIRST;
+		bits = MIN_BITS;
+	}
+
+	private int find( final int key ) {
+		int slot = ( key * 0x9E3779B1 ) >>> ( 32 - 13 );
+		while ( keys[ slot ] != -1 && keys[ slot ] != key )
+			slot = ( slot + 1 ) & ( HASH_SIZE - 1 );
+		return slot;
+	}
+
+	private void put( final int code ) {
+		bitBuffer = bitBuffer << bits | code;
+		bitCount += bits;
+		while ( bitCount >= 8 ) {
+			bitCount -= 8;
+			putByte( ( int ) ( bitBuffer >>> bitCount ) );
+		}
+		bitBuffer &= ( 1L << bitCount ) - 1;
+	}
+
+	private void putByte( final int b ) {
+		if ( outLength == out.length )
+			out = Arrays.copyOf( out, out.length * 2 );
+		out[ outLength++ ] = ( byte ) b;
+	}
+}
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Opens uncompressed TIFF files and ENVI raw files without copying the pixel
+ * data: each XY plane is a cell of a {@link LazyCellImg}, backed by a slice of
+ * a memory mapped buffer. Opening only reads the headers, pixels are paged in
+ * by the operating system when accessed, and the page cache is shared with
+ * other processes.
+ * <p>
+ * Files are mapped copy-on-write if they are writable, so the image can be
+ * modified without changing the file. Otherwise the mapping is read-only.
+ */
+final class MappedImages {
+
+	/** Planes are grouped into mappings of at most this size. */
+	private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+	private MappedImages() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Pixel types that can be stored in a {@link ByteBuffer}, and the matching
+	 * imglib2 types.
+	 */
+	enum Kind {
+		INT8( 1 ), UINT8( 1 ), INT16( 2 ), UINT16( 2 ), INT32( 4 ), UINT32( 4 ), FLOAT32( 4 ), FLOAT64( 8 ), ARGB( 4 );
+
+		final int bytesPerPixel;
+
+		Kind( final int bytesPerPixel ) {
+			this.bytesPerPixel = bytesPerPixel;
+		}
+
+		@SuppressWarnings( "rawtypes" )
+		NativeType type() {
+			switch ( this ) {
+			case INT8:
+				return new ByteType();
+			case UINT8:
+				return new UnsignedByteType();
+			case INT16:
+				return new ShortType();
+			case UINT16:
+				return new UnsignedShortType();
+			case INT32:
+				return new IntType();
+			case UINT32:
+				return new UnsignedIntType();
+			case FLOAT32:
+				return new FloatType();
+			case FLOAT64:
+				return new DoubleType();
+			default:
+				return new ARGBType();
+			}
+		}
+
+		BufferAccess access( final ByteBuffer buffer ) {
+			switch ( this ) {
+			case INT8:
+			case UINT8:
+				return new BufferAccess.Bytes( buffer );
+			case INT16:
+			case UINT16:
+				return new BufferAccess.Shorts( buffer );
+			case INT32:
+			case UINT32:
+			case ARGB:
+				return new BufferAccess.Ints( buffer );
+			case FLOAT32:
+				return new BufferAccess.Floats( buffer );
+			default:
+				return new BufferAccess.Doubles( buffer );
+			}
+		}
+
+		/** Returns the kind of the given pixel type, or null if unsupported. */
+		static Kind of( final Object type ) {
+			// NB: Compare exact classes, subclasses might use other accesses.
+			final Class< ? > c = type.getClass();
+			if ( c == ByteType.class )
+				return INT8;
+			if ( c == UnsignedByteType.class )
+				return UINT8;
+			if ( c == ShortType.class )
+				return INT16;
+			if ( c == UnsignedShortType.class )
+				return UINT16;
+			if ( c == IntType.class )
+				return INT32;
+			if ( c == UnsignedIntType.class )
+				return UINT32;
+			if ( c == FloatType.class )
+				return FLOAT32;
+			if ( c == DoubleType.class )
+				return FLOAT64;
+			if ( c == ARGBType.class )
+				return ARGB;
+			return null;
+		}
+	}
+
+	/**
+	 * Where the uncompressed planes of an image are stored in a file. The
+	 * planes are listed in the order of a planar image with the given
+	 * dimensions, i.e. the first non-spatial axis varies fastest.
+	 */
+	static class Layout {
+
+		final Path file;
+
+		final String name;
+
+		final Kind kind;
+
+		final ByteOrder order;
+
+		final long[] dimensions;
+
+		final CalibratedAxis[] axes;
+
+		final long[] planeOffsets;
+
+		Layout( final Path file, final String name, final Kind kind, final ByteOrder order, final long[] dimensions,
+				final CalibratedAxis[] axes, final long[] planeOffsets ) {
+			this.file = file;
+			this.name = name;
+			this.kind = kind;
+			this.order = order;
+			this.dimensions = dimensions;
+			this.axes = axes;
+			this.planeOffsets = planeOffsets;
+		}
+
+		long planeSize() {
+			return dimensions[ 0 ] * dimensions[ 1 ] * kind.bytesPerPixel;
+		}
+	}
+
+	/**
+	 * Opens an uncompressed TIFF file, or an ENVI file given either by its
+	 * header or its data file.
+	 *
+	 * @throws SimplifiedIOException if the file can't be memory mapped.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	static ImgPlus open( final String path ) {
+		try {
+			return map( layout( path ) );
+		} catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	/**
+	 * Reads the headers of an uncompressed TIFF file or an ENVI file.
+	 *
+	 * @throws SimplifiedIOException if the file can't be memory mapped.
+	 */
+	static Layout layout( final String path ) throws IOException {
+		final Path file = Paths.get( path );
+		return EnviRaw.isEnvi( file ) ? EnviRaw.parse( file ) : MappedTiff.parse( file );
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static ImgPlus< ? > map( final Layout layout ) throws IOException {
+		final long planeSize = layout.planeSize();
+		if ( planeSize > MAX_MAPPING_SIZE )
+			throw new SimplifiedIOException( "Planes larger than " + MAX_MAPPING_SIZE + " bytes can't be memory mapped: " + layout.file );
+		final ByteBuffer[] planes = new ByteBuffer[ layout.planeOffsets.length ];
+		FileChannel channel;
+		FileChannel.MapMode mode;
+		try {
+			channel = FileChannel.open( layout.file, StandardOpenOption.READ, StandardOpenOption.WRITE );
+			mode = FileChannel.MapMode.PRIVATE;
+		} catch ( IOException | UnsupportedOperationException | SecurityException e ) {
+			channel = FileChannel.open( layout.file, StandardOpenOption.READ );
+			mode = FileChannel.MapMode.READ_ONLY;
+		}
+		// NB: The mappings stay valid after the channel is closed.
+		try {
+			final long fileSize = channel.size();
+			MappedByteBuffer mapping = null;
+			long mappingStart = 0;
+			for ( int i = 0; i < planes.length; i++ ) {
+				final long offset = layout.planeOffsets[ i ];
+				if ( offset < 0 || offset + planeSize > fileSize )
+					throw new SimplifiedIOException( "Plane " + i + " is outside of the file: " + layout.file );
+				if ( mapping == null || offset < mappingStart || offset + planeSize > mappingStart + mapping.capacity() ) {
+					mappingStart = offset;
+					mapping = channel.map( mode, mappingStart, Math.min( MAX_MAPPING_SIZE, fileSize - mappingStart ) );
+				}
+				final ByteBuffer plane = mapping.duplicate();
+				plane.position( ( int ) ( offset - mappingStart ) );
+				plane.limit( ( int ) ( offset - mappingStart + planeSize ) );
+				planes[ i ] = plane.slice().order( layout.order );
+			}
+		} finally {
+			channel.close();
+		}
+		final int[] cellDimensions = new int[ layout.dimensions.length ];
+		cellDimensions[ 0 ] = ( int ) layout.dimensions[ 0 ];
+		cellDimensions[ 1 ] = ( int ) layout.dimensions[ 1 ];
+		for ( int d = 2; d < cellDimensions.length; d++ )
+			cellDimensions[ d ] = 1;
+		final CellGrid grid = new CellGrid( layout.dimensions, cellDimensions );
+		final Kind kind = layout.kind;
+		final LazyCellImg img = new LazyImg( grid, kind.type(), index -> {
+			final long[] min = new long[ grid.numDimensions() ];
+			final int[] size = new int[ grid.numDimensions() ];
+			grid.getCellDimensions( index, min, size );
+			return new Cell<>( size, min, kind.access( planes[ ( int ) index ] ) );
+		} );
+		final ImgPlus< ? > image = new ImgPlus<>( img, layout.name, layout.axes );
+		image.setSource( layout.file.toString() );
+		return image;
+	}
+
+	/** Checks that a header value is a positive size that fits into an int. */
+	static int checkSize( final long size, final String what, final Path file ) {
+		if ( size <= 0 || size > Integer.MAX_VALUE )
+			throw new SimplifiedIOException( "Invalid " + what + " " + size + " in " + file );
+		return ( int ) size;
+	}
+}
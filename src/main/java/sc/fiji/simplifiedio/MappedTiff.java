@@ -0,0 +1,456 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+
+/**
+ * Reads the IFDs of a classic or BigTIFF file, in either byte order, and
+ * finds out if all planes are stored uncompressed in contiguous strips, so
+ * that they can be memory mapped.
+ * <p>
+ * Only gray scale 8 bit, 16 bit unsigned and 32 bit float images are
+ * accepted, these are read by ImageJ1 with the same pixel type. Axes are
+ * taken from the ImageJ hyperstack description or from single file OME-XML.
+ */
+final class MappedTiff {
+
+	private static final int NEW_SUBFILE_TYPE = 254, IMAGE_WIDTH = 256, IMAGE_LENGTH = 257, BITS_PER_SAMPLE = 258,
+			COMPRESSION = 259, PHOTOMETRIC_INTERPRETATION = 262, IMAGE_DESCRIPTION = 270, STRIP_OFFSETS = 273,
+			SAMPLES_PER_PIXEL = 277, STRIP_BYTE_COUNTS = 279, X_RESOLUTION = 282, Y_RESOLUTION = 283,
+			RESOLUTION_UNIT = 296, TILE_WIDTH = 322, SAMPLE_FORMAT = 339;
+
+	private static final Pattern ATTRIBUTE = Pattern.compile( "\\b(\\w+)=\"([^\"]*)\"" );
+
+	private MappedTiff() {
+		// prevent instantiation of utility class
+	}
+
+	static MappedImages.Layout parse( final Path file ) throws IOException {
+		try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ )) {
+			final ByteBuffer header = read( channel, 0, 16, ByteOrder.LITTLE_ENDIAN );
+			final ByteOrder order;
+			if ( header.get( 0 ) == 'I' && header.get( 1 ) == 'I' )
+				order = ByteOrder.LITTLE_ENDIAN;
+			else if ( header.get( 0 ) == 'M' && header.get( 1 ) == 'M' )
+				order = ByteOrder.BIG_ENDIAN;
+			else
+				throw notSupported( file, "not a TIFF file" );
+			header.order( order );
+			final int magic = header.getShort( 2 ) & 0xffff;
+			if ( magic != 42 && magic != 43 )
+				throw notSupported( file, "not a TIFF file" );
+			final boolean bigTiff = magic == 43;
+			long offset = bigTiff ? header.getLong( 8 ) : header.getInt( 4 ) & 0xffffffffL;
+
+			Ifd first = null;
+			final List< Long > planeOffsets = new ArrayList<>();
+			final Set< Long > visited = new HashSet<>();
+			while ( offset != 0 ) {
+				if ( !visited.add( offset ) )
+					throw notSupported( file, "IFDs form a loop" );
+				final Ifd ifd = new Ifd( channel, offset, bigTiff, order );
+				offset = ifd.next;
+				if ( ( ifd.get( NEW_SUBFILE_TYPE, 0 ) & 1 ) != 0 )
+					continue; // NB: Skip reduced resolution images.
+				if ( first == null )
+					first = ifd;
+				planeOffsets.add( planeOffset( file, first, ifd ) );
+			}
+			if ( first == null )
+				throw notSupported( file, "no images" );
+
+			final MappedImages.Kind kind = kind( file, first );
+			final String description = first.getString( IMAGE_DESCRIPTION );
+			final int width = MappedImages.checkSize( first.get( IMAGE_WIDTH, 0 ), "width", file );
+			final int height = MappedImages.checkSize( first.get( IMAGE_LENGTH, 0 ), "height", file );
+			final long planeSize = ( long ) width * height * kind.bytesPerPixel;
+
+			final Map< String, String > imageJ = imageJProperties( description );
+			if ( imageJ != null && planeOffsets.size() == 1 ) {
+				// NB: ImageJ1 writes only one IFD for files larger than 4 GB, the other planes follow the first one.
+				final long images = parseLong( imageJ.get( "images" ), 1 );
+				for ( long i = 1; i < images; i++ )
+					planeOffsets.add( planeOffsets.get( 0 ) + i * planeSize );
+			}
+			final long[] offsets = planeOffsets.stream().mapToLong( Long::longValue ).toArray();
+			final String name = file.getFileName().toString();
+			if ( description != null && description.contains( "<OME" ) )
+				return omeLayout( file, name, kind, order, width, height, description, offsets );
+			return imageJLayout( file, name, kind, order, width, height, first, imageJ, offsets );
+		}
+	}
+
+	private static long planeOffset( final Path file, final Ifd first, final Ifd ifd ) throws IOException {
+		if ( ifd.has( TILE_WIDTH ) )
+			throw notSupported( file, "tiled" );
+		if ( ifd.get( COMPRESSION, 1 ) != 1 )
+			throw notSupported( file, "compressed" );
+		if ( ifd.get( SAMPLES_PER_PIXEL, 1 ) != 1 )
+			throw notSupported( file, "more than one sample per pixel" );
+		for ( final int tag : new int[] { IMAGE_WIDTH, IMAGE_LENGTH, BITS_PER_SAMPLE, SAMPLE_FORMAT } )
+			if ( ifd.get( tag, 1 ) != first.get( tag, 1 ) )
+				throw notSupported( file, "planes differ in size or type" );
+		final long[] offsets = ifd.getArray( STRIP_OFFSETS );
+		final long[] counts = ifd.getArray( STRIP_BYTE_COUNTS );
+		if ( offsets == null || counts == null || offsets.length != counts.length || offsets.length == 0 )
+			throw notSupported( file, "no strips" );
+		long size = counts[ 0 ];
+		for ( int i = 1; i < offsets.length; i++ ) {
+			if ( offsets[ i ] != offsets[ i - 1 ] + counts[ i - 1 ] )
+				throw notSupported( file, "strips are not contiguous" );
+			size += counts[ i ];
+		}
+		final long planeSize = ifd.get( IMAGE_WIDTH, 0 ) * ifd.get( IMAGE_LENGTH, 0 ) * ( ifd.get( BITS_PER_SAMPLE, 1 ) / 8 );
+		if ( size != planeSize )
+			throw notSupported( file, "strips don't hold exactly one plane" );
+		return offsets[ 0 ];
+	}
+
+	private static MappedImages.Kind kind( final Path file, final Ifd ifd ) throws IOException {
+		final long photometric = ifd.get( PHOTOMETRIC_INTERPRETATION, 1 );
+		// NB: ImageJ1 inverts 16 bit images with white as zero, only black as zero is mapped.
+		if ( photometric != 1 )
+			throw notSupported( file, "not a black is zero gray scale image" );
+		final long bits = ifd.get( BITS_PER_SAMPLE, 1 );
+		final long format = ifd.get( SAMPLE_FORMAT, 1 );
+		if ( bits == 8 && format == 1 )
+			return MappedImages.Kind.UINT8;
+		if ( bits == 16 && format == 1 )
+			return MappedImages.Kind.UINT16;
+		if ( bits == 32 && format == 3 )
+			return MappedImages.Kind.FLOAT32;
+		throw notSupported( file, bits + " bit samples of format " + format );
+	}
+
+	/** Axes from the ImageJ hyperstack description, or a Z axis for plain multi page TIFFs. */
+	private static MappedImages.Layout imageJLayout( final Path file, final String name, final MappedImages.Kind kind,
+			final ByteOrder order, final int width, final int height, final Ifd first, final Map< String, String > imageJ,
+			final long[] offsets ) throws IOException {
+		long c = 1, z = offsets.length, t = 1;
+		String unit = null;
+		double spacing = 1, interval = 1;
+		if ( imageJ != null ) {
+			// NB: Values below one are invalid, and would divide by zero.
+			c = Math.max( 1, parseLong( imageJ.get( "channels" ), 1 ) );
+			t = Math.max( 1, parseLong( imageJ.get( "frames" ), 1 ) );
+			z = parseLong( imageJ.get( "slices" ), offsets.length / c / t );
+			if ( c * z * t != offsets.length ) {
+				c = t = 1;
+				z = offsets.length;
+			}
+			unit = imageJ.get( "unit" );
+			if ( "micron".equals( unit ) )
+				unit = "\u00b5m";
+			spacing = parseDouble( imageJ.get( "spacing" ), 1 );
+			interval = parseDouble( imageJ.get( "finterval" ), 1 );
+		}
+		else if ( first.get( RESOLUTION_UNIT, 2 ) == 3 ) {
+			unit = "cm";
+		}
+		final List< CalibratedAxis > axes = new ArrayList<>();
+		final List< Long > dimensions = new ArrayList<>();
+		axes.add( axis( Axes.X, unit, unit == null ? 1 : pixelSize( first.getRational( X_RESOLUTION ) ) ) );
+		axes.add( axis( Axes.Y, unit, unit == null ? 1 : pixelSize( first.getRational( Y_RESOLUTION ) ) ) );
+		dimensions.add( ( long ) width );
+		dimensions.add( ( long ) height );
+		if ( c > 1 ) {
+			axes.add( new DefaultLinearAxis( Axes.CHANNEL ) );
+			dimensions.add( c );
+		}
+		if ( z > 1 ) {
+			axes.add( axis( Axes.Z, unit, spacing ) );
+			dimensions.add( z );
+		}
+		if ( t > 1 ) {
+			axes.add( axis( Axes.TIME, "sec", interval ) );
+			dimensions.add( t );
+		}
+		return new MappedImages.Layout( file, name, kind, order, dimensions.stream().mapToLong( Long::longValue ).toArray(),
+				axes.toArray( new CalibratedAxis[ 0 ] ), offsets );
+	}
+
+	/**
+	 * Axes from single file, single image OME-XML. The planes are reordered
+	 * from the DimensionOrder of the file to XYCZT.
+	 */
+	private static MappedImages.Layout omeLayout( final Path file, final String name, final MappedImages.Kind kind,
+			final ByteOrder order, final int width, final int height, final String xml, final long[] offsets ) {
+		if ( xml.contains( "<UUID" ) || xml.contains( "FileName=" ) || xml.indexOf( "<Image " ) != xml.lastIndexOf( "<Image " ) )
+			throw notSupported( file, "OME-TIFF with several files or images" );
+		final int start = xml.indexOf( "<Pixels " );
+		if ( start < 0 )
+			throw notSupported( file, "OME-XML without Pixels" );
+		final Map< String, String > pixels = new HashMap<>();
+		final Matcher matcher = ATTRIBUTE.matcher( xml.substring( start, xml.indexOf( '>', start ) ) );
+		while ( matcher.find() )
+			pixels.put( matcher.group( 1 ), matcher.group( 2 ) );
+		final String dimensionOrder = pixels.getOrDefault( "DimensionOrder", "XYCZT" );
+		final long[] czt = { parseLong( pixels.get( "SizeC" ), 1 ), parseLong( pixels.get( "SizeZ" ), 1 ), parseLong( pixels.get( "SizeT" ), 1 ) };
+		if ( czt[ 0 ] * czt[ 1 ] * czt[ 2 ] != offsets.length || !dimensionOrder.startsWith( "XY" ) || dimensionOrder.length() != 5 )
+			throw notSupported( file, "OME-XML doesn't match the IFDs" );
+		// stride of C, Z and T in the IFD sequence
+		final long[] strides = new long[ 3 ];
+		long stride = 1;
+		for ( int i = 2; i < 5; i++ ) {
+			final int which = "CZT".indexOf( dimensionOrder.charAt( i ) );
+			if ( which < 0 )
+				throw notSupported( file, "DimensionOrder " + dimensionOrder );
+			strides[ which ] = stride;
+			stride *= czt[ which ];
+		}
+		final long[] reordered = new long[ offsets.length ];
+		int i = 0;
+		for ( long t = 0; t < czt[ 2 ]; t++ )
+			for ( long z = 0; z < czt[ 1 ]; z++ )
+				for ( long c = 0; c < czt[ 0 ]; c++ )
+					reordered[ i++ ] = offsets[ ( int ) ( c * strides[ 0 ] + z * strides[ 1 ] + t * strides[ 2 ] ) ];
+
+		final List< CalibratedAxis > axes = new ArrayList<>();
+		final List< Long > dimensions = new ArrayList<>();
+		axes.add( omeAxis( Axes.X, pixels, "PhysicalSizeX" ) );
+		axes.add( omeAxis( Axes.Y, pixels, "PhysicalSizeY" ) );
+		dimensions.add( ( long ) width );
+		dimensions.add( ( long ) height );
+		final AxisType[] types = { Axes.CHANNEL, Axes.Z, Axes.TIME };
+		final String[] attributes = { null, "PhysicalSizeZ", "TimeIncrement" };
+		for ( int k = 0; k < 3; k++ ) {
+			if ( czt[ k ] > 1 ) {
+				axes.add( attributes[ k ] == null ? new DefaultLinearAxis( types[ k ] ) : omeAxis( types[ k ], pixels, attributes[ k ] ) );
+				dimensions.add( czt[ k ] );
+			}
+		}
+		return new MappedImages.Layout( file, name, kind, order, dimensions.stream().mapToLong( Long::longValue ).toArray(),
+				axes.toArray( new CalibratedAxis[ 0 ] ), reordered );
+	}
+
+	private static CalibratedAxis omeAxis( final AxisType type, final Map< String, String > pixels, final String attribute ) {
+		final double size = parseDouble( pixels.get( attribute ), Double.NaN );
+		if ( Double.isNaN( size ) )
+			return new DefaultLinearAxis( type );
+		final String defaultUnit = type == Axes.TIME ? "s" : "\u00b5m";
+		return new DefaultLinearAxis( type, unescape( pixels.getOrDefault( attribute + "Unit", defaultUnit ) ), size );
+	}
+
+	private static String unescape( final String text ) {
+		return text.replace( "&#181;", "\u00b5" ).replace( "&#xB5;", "\u00b5" ).replace( "&amp;", "&" ).replace( "&lt;", "<" )
+				.replace( "&gt;", ">" ).replace( "&quot;", "\"" );
+	}
+
+	private static CalibratedAxis axis( final AxisType type, final String unit, final double scale ) {
+		return unit == null ? new DefaultLinearAxis( type, scale ) : new DefaultLinearAxis( type, unit, scale );
+	}
+
+	private static double pixelSize( final long[] resolution ) {
+		if ( resolution == null || resolution.length < 2 || resolution[ 0 ] == 0 || resolution[ 1 ] == 0 )
+			return 1;
+		return ( double ) resolution[ 1 ] / resolution[ 0 ];
+	}
+
+	/** Key value pairs of an ImageJ description, null if it isn't one. */
+	static Map< String, String > imageJProperties( final String description ) {
+		if ( description == null || !description.startsWith( "ImageJ=" ) )
+			return null;
+		final Map< String, String > properties = new HashMap<>();
+		for ( final String line : description.split( "\n" ) ) {
+			final int equals = line.indexOf( '=' );
+			if ( equals > 0 )
+				properties.put( line.substring( 0, equals ).trim(), line.substring( equals + 1 ).trim() );
+		}
+		return properties;
+	}
+
+	static long parseLong( final String value, final long defaultValue ) {
+		try {
+			return value == null ? defaultValue : Long.parseLong( value.trim() );
+		} catch ( NumberFormatException e ) {
+			return defaultValue;
+		}
+	}
+
+	static double parseDouble( final String value, final double defaultValue ) {
+		try {
+			return value == null ? defaultValue : Double.parseDouble( value.trim() );
+		} catch ( NumberFormatException e ) {
+			return defaultValue;
+		}
+	}
+
+	private static SimplifiedIOException notSupported( final Path file, final String reason ) {
+		return new UnsupportedFileException( "Can't memory map TIFF file, " + reason + ": " + file );
+	}
+
+	private static ByteBuffer read( final FileChannel channel, final long position, final int length, final ByteOrder order ) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate( length ).order( order );
+		while ( buffer.hasRemaining() ) {
+			if ( channel.read( buffer, position + buffer.position() ) < 0 )
+				break;
+		}
+		buffer.flip();
+		if ( buffer.limit() < Math.min( length, 8 ) )
+			throw new IOException( "Unexpected end of file" );
+		return buffer;
+	}
+
+	/** The entries of one IFD. Values are read from the file when requested. */
+	private static class Ifd {
+
+		private final FileChannel channel;
+
+		private final boolean bigTiff;
+
+		private final ByteOrder order;
+
+		/** Per tag: type, count and file position of the value. */
+		private final Map< Integer, long[] > entries = new HashMap<>();
+
+		private final long next;
+
+		Ifd( final FileChannel channel, final long offset, final boolean bigTiff, final ByteOrder order ) throws IOException {
+			this.channel = channel;
+			this.bigTiff = bigTiff;
+			this.order = order;
+			final int countSize = bigTiff ? 8 : 2;
+			final int entrySize = bigTiff ? 20 : 12;
+			final int pointerSize = bigTiff ? 8 : 4;
+			final ByteBuffer count = read( channel, offset, 8, order );
+			final long n = bigTiff ? count.getLong( 0 ) : count.getShort( 0 ) & 0xffff;
+			if ( n <= 0 || n > 4096 )
+				throw new IOException( "Invalid IFD at " + offset );
+			final ByteBuffer bytes = read( channel, offset + countSize, ( int ) n * entrySize + pointerSize, order );
+			for ( int i = 0; i < n; i++ ) {
+				final int p = i * entrySize;
+				final int tag = bytes.getShort( p ) & 0xffff;
+				final int type = bytes.getShort( p + 2 ) & 0xffff;
+				final long valueCount = bigTiff ? bytes.getLong( p + 4 ) : bytes.getInt( p + 4 ) & 0xffffffffL;
+				final int valuePosition = p + ( bigTiff ? 12 : 8 );
+				final long size = typeSize( type ) * valueCount;
+				final long position = size <= pointerSize
+						? offset + countSize + valuePosition
+						: bigTiff ? bytes.getLong( valuePosition ) : bytes.getInt( valuePosition ) & 0xffffffffL;
+				entries.put( tag, new long[] { type, valueCount, position } );
+			}
+			final int nextPosition = ( int ) n * entrySize;
+			this.next = bigTiff ? bytes.getLong( nextPosition ) : bytes.getInt( nextPosition ) & 0xffffffffL;
+		}
+
+		boolean has( final int tag ) {
+			return entries.containsKey( tag );
+		}
+
+		/** The first value of the tag. */
+		long get( final int tag, final long defaultValue ) throws IOException {
+			final long[] values = getArray( tag );
+			return values == null || values.length == 0 ? defaultValue : values[ 0 ];
+		}
+
+		long[] getArray( final int tag ) throws IOException {
+			final long[] entry = entries.get( tag );
+			if ( entry == null )
+				return null;
+			final int type = ( int ) entry[ 0 ];
+			final int size = typeSize( type );
+			final int count = MappedImages.checkSize( entry[ 1 ] * ( type == 5 ? 2 : 1 ), "value count", null );
+			final ByteBuffer bytes = read( channel, entry[ 2 ], count * ( type == 5 ? 4 : size ), order );
+			final long[] values = new long[ count ];
+			for ( int i = 0; i < count; i++ ) {
+				switch ( type ) {
+				case 1: // BYTE
+				case 2: // ASCII
+					values[ i ] = bytes.get( i ) & 0xff;
+					break;
+				case 3: // SHORT
+					values[ i ] = bytes.getShort( 2 * i ) & 0xffff;
+					break;
+				case 4: // LONG
+				case 5: // RATIONAL
+					values[ i ] = bytes.getInt( 4 * i ) & 0xffffffffL;
+					break;
+				case 16: // LONG8
+					values[ i ] = bytes.getLong( 8 * i );
+					break;
+				default:
+					throw new IOException( "Unsupported type " + type + " of tag " + tag );
+				}
+			}
+			return values;
+		}
+
+		/** Numerator and denominator of a RATIONAL tag. */
+		long[] getRational( final int tag ) throws IOException {
+			final long[] entry = entries.get( tag );
+			return entry == null || entry[ 0 ] != 5 ? null : getArray( tag );
+		}
+
+		String getString( final int tag ) throws IOException {
+			final long[] entry = entries.get( tag );
+			if ( entry == null || entry[ 0 ] != 2 )
+				return null;
+			final int length = MappedImages.checkSize( entry[ 1 ], "string length", null );
+			final ByteBuffer bytes = read( channel, entry[ 2 ], length, order );
+			final String text = new String( bytes.array(), 0, bytes.limit(), StandardCharsets.UTF_8 );
+			final int end = text.indexOf( '\0' );
+			return end < 0 ? text : text.substring( 0, end );
+		}
+
+		private static int typeSize( final int type ) {
+			switch ( type ) {
+			case 3:
+			case 8:
+				return 2;
+			case 4:
+			case 9:
+			case 11:
+			case 13:
+				return 4;
+			case 5:
+			case 10:
+			case 12:
+			case 16:
+			case 17:
+			case 18:
+				return 8;
+			default:
+				return 1;
+			}
+		}
+	}
+}
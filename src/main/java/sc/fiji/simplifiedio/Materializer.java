@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.stream.IntStream;
+
+import net.imagej.ImgPlus;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Copies images, that are possibly views, into new images. The copy is done
+ * in parallel, split into chunks of consecutive pixels in flat iteration
+ * order.
+ */
+final class Materializer {
+
+	/** Chunks are not made smaller than this number of pixels. */
+	private static final long MIN_CHUNK_SIZE = 1 << 16;
+
+	private Materializer() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Copies the given image into an {@link net.imglib2.img.array.ArrayImg}, or
+	 * a {@link net.imglib2.img.cell.CellImg} if it is too large for an array.
+	 * The metadata of the image is kept.
+	 */
+	static < T extends NativeType< T > > ImgPlus< T > materialize( final ImgPlus< T > image ) {
+		final T type = Util.getTypeFromInterval( image ).createVariable();
+		final Img< T > target = Util.getSuitableImgFactory( image, type ).create( image );
+		copy( image.getImg(), target );
+		return new ImgPlus<>( target, image );
+	}
+
+	/**
+	 * Copies the pixel values of the source into the target, which must have
+	 * the same dimensions.
+	 */
+	static < T extends NativeType< T > > void copy( final RandomAccessibleInterval< T > source, final RandomAccessibleInterval< T > target ) {
+		final long size = Intervals.numElements( target );
+		final int parallelism = Runtime.getRuntime().availableProcessors();
+		final long chunkSize = Math.max( MIN_CHUNK_SIZE, ( size + 4 * parallelism - 1 ) / ( 4 * parallelism ) );
+		final int numChunks = ( int ) ( ( size + chunkSize - 1 ) / chunkSize );
+		IntStream.range( 0, numChunks ).parallel().forEach( chunk -> {
+			final long offset = chunk * chunkSize;
+			copyChunk( source, target, offset, Math.min( chunkSize, size - offset ) );
+		} );
+	}
+
+	private static < T extends NativeType< T > > void copyChunk( final RandomAccessibleInterval< T > source,
+			final RandomAccessibleInterval< T > target, final long offset, final long length ) {
+		final Cursor< T > in = Views.flatIterable( source ).cursor();
+		final Cursor< T > out = Views.flatIterable( target ).cursor();
+		in.jumpFwd( offset );
+		out.jumpFwd( offset );
+		for ( long i = 0; i < length; i++ )
+			out.next().set( in.next() );
+	}
+}
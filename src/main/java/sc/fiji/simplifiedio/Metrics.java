@@ -0,0 +1,241 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SimplifiedIOListener} that counts operations and records their
+ * latencies in histograms. Latencies are recorded under these names:
+ * <ul>
+ * <li>"open", "open.BACKEND" and "open.failed" for opening a file, in total
+ * and by the backend that opened it,</li>
+ * <li>"attempt.BACKEND" and "attempt.BACKEND.failed" for each backend that
+ * tried to open a file,</li>
+ * <li>"convert", "save" and "scifio.init".</li>
+ * </ul>
+ * Recording is lock free, histograms have one bucket per power of two
+ * nanoseconds.
+ * <pre>
+ * Metrics metrics = new Metrics();
+ * SimplifiedIO.addListener( metrics );
+ * ...
+ * System.out.println( metrics.getLatencies() );
+ * </pre>
+ */
+public class Metrics implements SimplifiedIOListener {
+
+	private final Map< String, Recorder > recorders = new ConcurrentHashMap<>();
+
+	private final LongAdder fallbacks = new LongAdder();
+
+	private final LongAdder bytesRead = new LongAdder();
+
+	private final LongAdder bytesWritten = new LongAdder();
+
+	private final LongAdder pixelsConverted = new LongAdder();
+
+	@Override
+	public void backendAttempted( final String path, final Backend backend, final boolean succeeded, final long nanos ) {
+		record( succeeded ? "attempt." + backend : "attempt." + backend + ".failed", nanos );
+	}
+
+	@Override
+	public void opened( final String path, final Backend backend, final int fallbacks, final long nanos, final long bytes ) {
+		record( "open", nanos );
+		record( "open." + backend, nanos );
+		this.fallbacks.add( fallbacks );
+		bytesRead.add( bytes );
+	}
+
+	@Override
+	public void openFailed( final String path, final long nanos ) {
+		record( "open.failed", nanos );
+	}
+
+	@Override
+	public void converted( final Class< ? > sourceType, final Class< ? > targetType, final ConversionMode mode, final long pixels,
+			final long nanos ) {
+		record( "convert", nanos );
+		pixelsConverted.add( pixels );
+	}
+
+	@Override
+	public void saved( final String path, final long nanos, final long bytes ) {
+		record( "save", nanos );
+		bytesWritten.add( bytes );
+	}
+
+	@Override
+	public void scifioInitialized( final long nanos ) {
+		record( "scifio.init", nanos );
+	}
+
+	private void record( final String name, final long nanos ) {
+		recorders.computeIfAbsent( name, k -> new Recorder() ).record( nanos );
+	}
+
+	/** Returns the latencies recorded under the name, or null if there are none. */
+	public Latency getLatency( final String name ) {
+		final Recorder recorder = recorders.get( name );
+		return recorder == null ? null : recorder.snapshot();
+	}
+
+	/** Returns all recorded latencies, sorted by name. */
+	public Map< String, Latency > getLatencies() {
+		final Map< String, Latency > snapshot = new TreeMap<>();
+		recorders.forEach( ( name, recorder ) -> snapshot.put( name, recorder.snapshot() ) );
+		return Collections.unmodifiableMap( snapshot );
+	}
+
+	/** Number of failed backend attempts that were followed by a successful one. */
+	public long getFallbacks() {
+		return fallbacks.sum();
+	}
+
+	/** Total size of the files opened. */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/** Total size of the files saved. */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	public long getPixelsConverted() {
+		return pixelsConverted.sum();
+	}
+
+	/** Pixels converted per second of conversion time, zero if nothing was converted. */
+	public double getConversionThroughput() {
+		final Latency convert = getLatency( "convert" );
+		return convert == null || convert.getTotalNanos() == 0 ? 0 : getPixelsConverted() * 1e9 / convert.getTotalNanos();
+	}
+
+	public void reset() {
+		recorders.clear();
+		fallbacks.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		pixelsConverted.reset();
+	}
+
+	private static class Recorder {
+
+		private final LongAdder[] buckets = new LongAdder[ 64 ];
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAccumulator maxNanos = new LongAccumulator( Math::max, 0 );
+
+		Recorder() {
+			for ( int i = 0; i < buckets.length; i++ )
+				buckets[ i ] = new LongAdder();
+		}
+
+		void record( final long nanos ) {
+			final long positive = Math.max( 0, nanos );
+			buckets[ 64 - Long.numberOfLeadingZeros( positive ) ].increment();
+			totalNanos.add( positive );
+			maxNanos.accumulate( positive );
+		}
+
+		Latency snapshot() {
+			final long[] counts = new long[ buckets.length ];
+			for ( int i = 0; i < counts.length; i++ )
+				counts[ i ] = buckets[ i ].sum();
+			return new Latency( counts, totalNanos.sum(), maxNanos.get() );
+		}
+	}
+
+	/**
+	 * Snapshot of a latency histogram. Bucket i counts latencies below
+	 * 2<sup>i</sup> nanoseconds, and at least 2<sup>i-1</sup>.
+	 */
+	public static final class Latency {
+
+		private final long[] buckets;
+
+		private final long count;
+
+		private final long totalNanos;
+
+		private final long maxNanos;
+
+		Latency( final long[] buckets, final long totalNanos, final long maxNanos ) {
+			this.buckets = buckets;
+			long count = 0;
+			for ( final long bucket : buckets )
+				count += bucket;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public double getMeanNanos() {
+			return count == 0 ? 0 : ( double ) totalNanos / count;
+		}
+
+		/**
+		 * Upper bound of the given percentile, e.g. 0.99, accurate to a
+		 * factor of two.
+		 */
+		public long getPercentileNanos( final double percentile ) {
+			final long rank = ( long ) Math.ceil( percentile * count );
+			long seen = 0;
+			for ( int i = 0; i < buckets.length; i++ ) {
+				seen += buckets[ i ];
+				if ( seen >= rank && seen > 0 )
+					return Math.min( maxNanos, i == 63 ? Long.MAX_VALUE : ( 1L << i ) - 1 );
+			}
+			return 0;
+		}
+
+		public long[] getBuckets() {
+			return buckets.clone();
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + ( long ) getMeanNanos() / 1000 + " us, p99=" + getPercentileNanos( 0.99 ) / 1000 +
+					" us, max=" + maxNanos / 1000 + " us";
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+
+/**
+ * An image whose pixel data is stored in direct {@link ByteBuffer}s, outside
+ * of the Java heap. Each cell is an XY plane, or a band of rows if a plane
+ * is larger than 1 GB.
+ * <p>
+ * The memory is freed by {@link #release()}, or by the garbage collector
+ * once the image is unreachable. Accessing pixels after the image was
+ * released throws an {@link IndexOutOfBoundsException}. The image must not be
+ * accessed by other threads while it is released.
+ */
+final class OffHeapImg< T extends NativeType< T > > extends LazyImg< T, BufferAccess > {
+
+	private static final long MAX_CELL_SIZE = 1L << 30;
+
+	private static final Consumer< ByteBuffer > FREE = freeFunction();
+
+	private final BufferAccess[] accesses;
+
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	private final long sizeInBytes;
+
+	private OffHeapImg( final CellGrid grid, final T type, final Cell< BufferAccess >[] cells, final BufferAccess[] accesses, final long sizeInBytes ) {
+		super( grid, type, index -> cells[ ( int ) index ] );
+		this.accesses = accesses;
+		this.sizeInBytes = sizeInBytes;
+	}
+
+	/**
+	 * Allocates an image of the given size, with all pixels zero.
+	 *
+	 * @throws SimplifiedIOException if the pixel type isn't supported, or an
+	 *             XY row is larger than 1 GB.
+	 */
+	@SuppressWarnings( "unchecked" )
+	static < T extends NativeType< T > > OffHeapImg< T > create( final long[] dimensions, final T type ) {
+		final MappedImages.Kind kind = MappedImages.Kind.of( type );
+		if ( kind == null )
+			throw new SimplifiedIOException( "Off-heap storage isn't supported for pixel type " + type.getClass().getSimpleName() );
+		final long rowSize = dimensions[ 0 ] * kind.bytesPerPixel;
+		if ( rowSize > MAX_CELL_SIZE )
+			throw new SimplifiedIOException( "Rows larger than " + MAX_CELL_SIZE + " bytes can't be stored off-heap" );
+		final int[] cellDimensions = new int[ dimensions.length ];
+		cellDimensions[ 0 ] = ( int ) dimensions[ 0 ];
+		if ( dimensions.length > 1 )
+			cellDimensions[ 1 ] = ( int ) Math.max( 1, Math.min( dimensions[ 1 ], MAX_CELL_SIZE / Math.max( 1, rowSize ) ) );
+		for ( int d = 2; d < dimensions.length; d++ )
+			cellDimensions[ d ] = 1;
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+		final long numCells = Intervals.numElements( grid.getGridDimensions() );
+		if ( numCells > Integer.MAX_VALUE )
+			throw new SimplifiedIOException( "Too many planes to store off-heap: " + numCells );
+		final Cell< BufferAccess >[] cells = new Cell[ ( int ) numCells ];
+		final BufferAccess[] accesses = new BufferAccess[ cells.length ];
+		final long[] min = new long[ dimensions.length ];
+		final int[] size = new int[ dimensions.length ];
+		long sizeInBytes = 0;
+		try {
+			for ( int i = 0; i < cells.length; i++ ) {
+				grid.getCellDimensions( i, min, size );
+				final long bytes = Intervals.numElements( size ) * kind.bytesPerPixel;
+				accesses[ i ] = kind.access( ByteBuffer.allocateDirect( ( int ) bytes ).order( ByteOrder.nativeOrder() ) );
+				cells[ i ] = new Cell<>( size.clone(), min.clone(), accesses[ i ] );
+				sizeInBytes += bytes;
+			}
+		} catch ( OutOfMemoryError e ) {
+			free( accesses );
+			throw e;
+		}
+		return new OffHeapImg<>( grid, type, cells, accesses, sizeInBytes );
+	}
+
+	/**
+	 * Copies the image into a new off-heap image, the metadata of the image is
+	 * kept. Lazy images, like memory mapped files, are copied without
+	 * allocating their pixels on the Java heap.
+	 */
+	static < T extends NativeType< T > > ImgPlus< T > copyOf( final ImgPlus< T > image ) {
+		final T type = Util.getTypeFromInterval( image ).createVariable();
+		final OffHeapImg< T > target = create( Intervals.dimensionsAsLongArray( image ), type );
+		try {
+			Materializer.copy( image.getImg(), target );
+		} catch ( RuntimeException | Error e ) {
+			target.release();
+			throw e;
+		}
+		return new ImgPlus<>( target, image );
+	}
+
+	/** Returns the off-heap image wrapped by the given image, or null. */
+	static OffHeapImg< ? > unwrap( Img< ? > img ) {
+		while ( img instanceof ImgPlus )
+			img = ( ( ImgPlus< ? > ) img ).getImg();
+		return img instanceof OffHeapImg ? ( OffHeapImg< ? > ) img : null;
+	}
+
+	int numCells() {
+		return accesses.length;
+	}
+
+	/** The buffer of the cell with the given index of the cell grid. */
+	ByteBuffer buffer( final int cell ) {
+		return accesses[ cell ].buffer();
+	}
+
+	/** Frees the pixel data, calling this again has no effect. */
+	void release() {
+		if ( !released.getAndSet( true ) )
+			free( accesses );
+	}
+
+	boolean isReleased() {
+		return released.get();
+	}
+
+	long sizeInBytes() {
+		return sizeInBytes;
+	}
+
+	private static void free( final BufferAccess[] accesses ) {
+		for ( final BufferAccess access : accesses ) {
+			if ( access == null )
+				continue;
+			final ByteBuffer buffer = access.buffer();
+			access.detach();
+			FREE.accept( buffer );
+		}
+	}
+
+	/**
+	 * Returns a function that frees the memory of a direct buffer right away.
+	 * If that isn't possible, the memory is left to the garbage collector.
+	 */
+	private static Consumer< ByteBuffer > freeFunction() {
+		try {
+			final Class< ? > unsafeClass = Class.forName( "sun.misc.Unsafe" );
+			final Field field = unsafeClass.getDeclaredField( "theUnsafe" );
+			field.setAccessible( true );
+			final Object unsafe = field.get( null );
+			final Method invokeCleaner = unsafeClass.getMethod( "invokeCleaner", ByteBuffer.class );
+			return buffer -> {
+				try {
+					invokeCleaner.invoke( unsafe, buffer );
+				} catch ( ReflectiveOperationException | RuntimeException e ) {
+					// NB: The garbage collector frees the memory.
+				}
+			};
+		} catch ( ReflectiveOperationException | RuntimeException e ) {
+			// NB: Java 8 has no invokeCleaner, call the cleaner of the buffer.
+			return buffer -> {
+				try {
+					final Method cleaner = buffer.getClass().getMethod( "cleaner" );
+					cleaner.setAccessible( true );
+					final Object c = cleaner.invoke( buffer );
+					if ( c != null )
+						c.getClass().getMethod( "clean" ).invoke( c );
+				} catch ( ReflectiveOperationException | RuntimeException e2 ) {
+					// NB: The garbage collector frees the memory.
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import loci.formats.IFormatReader;
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+
+/**
+ * Iterates over the slices of an image along the channel, Z or time axis,
+ * e.g. one time point after the other. Only a few slices are held in memory:
+ * a background thread reads the next slices ahead, into buffers that are
+ * recycled once the caller moved on. A slice returned by {@link #next()} is
+ * therefore only valid until the following call of {@link #next()} or
+ * {@link #close()}, copy it to keep it longer.
+ * <p>
+ * The iterator keeps the file open until it is closed.
+ * <pre>
+ * try (PlaneIterator planes = SimplifiedIO.planes( "timelapse.tif", Axes.TIME )) {
+ *     while ( planes.hasNext() )
+ *         process( planes.next() );
+ * }
+ * </pre>
+ */
+public class PlaneIterator implements Iterator< ImgPlus< ? > >, Closeable {
+
+	/** Marks the end of the slices in the queue of read slices. */
+	private static final Object END = new Object();
+
+	private final IFormatReader reader;
+
+	private final BioFormatsSeries series;
+
+	private final int which;
+
+	private final int count;
+
+	private final CalibratedAxis[] axes;
+
+	/** Buffers that can be read into. */
+	private final BlockingQueue< PlanarImg< ?, ? > > free;
+
+	/** Read slices, followed by {@link #END} or the exception that stopped reading. */
+	private final BlockingQueue< Object > ready;
+
+	private final Thread thread;
+
+	private PlanarImg< ?, ? > current;
+
+	private int next = 0;
+
+	private volatile boolean closed = false;
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	PlaneIterator( final String path, final AxisType axis, final int readAhead ) {
+		this.which = ReadRequest.which( axis );
+		if ( which < ReadRequest.C )
+			throw new IllegalArgumentException( "Slices can only be taken along the channel, Z or time axis, not " + axis );
+		this.reader = BioFormatsSeries.openReader( path );
+		try {
+			this.series = new BioFormatsSeries( reader, 0 );
+			final long[] dimensions = series.dimensions();
+			final CalibratedAxis[] allAxes = series.axes();
+			int d = 0;
+			while ( d < allAxes.length && !allAxes[ d ].type().equals( axis ) )
+				d++;
+			// NB: A missing axis has size one, the whole image is the only slice.
+			this.count = d < allAxes.length ? ( int ) dimensions[ d ] : 1;
+			final long[] sliceDimensions = new long[ allAxes.length - ( d < allAxes.length ? 1 : 0 ) ];
+			this.axes = new CalibratedAxis[ sliceDimensions.length ];
+			for ( int i = 0, j = 0; i < allAxes.length; i++ ) {
+				if ( i == d )
+					continue;
+				sliceDimensions[ j ] = dimensions[ i ];
+				axes[ j++ ] = allAxes[ i ];
+			}
+			// NB: One buffer for the caller, the others for the slices read ahead.
+			this.free = new ArrayBlockingQueue<>( readAhead + 1 );
+			this.ready = new ArrayBlockingQueue<>( readAhead + 2 );
+			final PlanarImgFactory factory = new PlanarImgFactory( ( NativeType ) series.type() );
+			for ( int i = 0; i <= readAhead; i++ )
+				free.add( ( PlanarImg ) factory.create( sliceDimensions ) );
+		}
+		catch ( RuntimeException e ) {
+			closeReader();
+			throw e;
+		}
+		this.thread = new Thread( this::readSlices, "simplified-io-planes" );
+		this.thread.setDaemon( true );
+		this.thread.start();
+	}
+
+	private void readSlices() {
+		try {
+			for ( int s = 0; s < count && !closed; s++ ) {
+				final PlanarImg< ?, ? > buffer = free.take();
+				series.readPlanes( slice( s ), buffer );
+				ready.put( buffer );
+			}
+			ready.put( END );
+		}
+		catch ( InterruptedException e ) {
+			// NB: Closed by the caller.
+		}
+		catch ( RuntimeException e ) {
+			ready.offer( e );
+		}
+	}
+
+	private ReadRequest slice( final int index ) {
+		switch ( which ) {
+		case ReadRequest.C:
+			return ReadRequest.all().channel( index );
+		case ReadRequest.Z:
+			return ReadRequest.all().slice( index );
+		default:
+			return ReadRequest.all().frame( index );
+		}
+	}
+
+	/** Number of slices along the axis. */
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !closed && next < count;
+	}
+
+	/**
+	 * Returns the next slice, without the axis along which the image is
+	 * sliced. The slice is overwritten by later slices once
+	 * {@link #next()} is called again.
+	 */
+	@Override
+	public ImgPlus< ? > next() {
+		if ( !hasNext() )
+			throw new NoSuchElementException();
+		if ( current != null ) {
+			free.add( current );
+			current = null;
+		}
+		final Object slice;
+		try {
+			slice = ready.take();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new SimplifiedIOException( e );
+		}
+		if ( slice instanceof RuntimeException ) {
+			close();
+			throw ( RuntimeException ) slice;
+		}
+		current = ( PlanarImg< ?, ? > ) slice;
+		next++;
+		final CalibratedAxis[] copy = new CalibratedAxis[ axes.length ];
+		for ( int d = 0; d < axes.length; d++ )
+			copy[ d ] = axes[ d ].copy();
+		return new ImgPlus<>( current, series.name(), copy );
+	}
+
+	/**
+	 * Returns a sequential stream of the slices, that closes this iterator
+	 * when it is closed. The same as for {@link #next()} applies, a slice is
+	 * only valid until the stream moves on.
+	 */
+	public Stream< ImgPlus< ? > > stream() {
+		final Spliterator< ImgPlus< ? > > spliterator = Spliterators.spliterator( this, count, Spliterator.ORDERED | Spliterator.NONNULL );
+		return StreamSupport.stream( spliterator, false ).onClose( this::close );
+	}
+
+	/** Stops reading ahead and closes the file. */
+	@Override
+	public void close() {
+		if ( closed )
+			return;
+		closed = true;
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+		closeReader();
+	}
+
+	private void closeReader() {
+		try {
+			reader.close();
+		}
+		catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+}
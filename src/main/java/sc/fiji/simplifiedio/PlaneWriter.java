@@ -0,0 +1,165 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.ImgView;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Writes a TIFF or OME-TIFF file slice by slice, e.g. one time point after
+ * the other, without holding the whole image in memory. The slices are
+ * stacked along the given channel, Z or time axis. The pixels of each slice
+ * are written when it is appended, the file is complete once the writer is
+ * closed.
+ * <p>
+ * The size of the file isn't known in advance, so classic TIFF is written
+ * unless {@link SaveOptions#bigTiff(boolean)} is set. Appending fails if the
+ * file would grow too large for classic TIFF.
+ * <pre>
+ * try (PlaneIterator planes = SimplifiedIO.planes( "in.tif", Axes.TIME );
+ *         PlaneWriter writer = SimplifiedIO.planeWriter( "out.tif", Axes.TIME )) {
+ *     while ( planes.hasNext() )
+ *         writer.append( process( planes.next() ) );
+ * }
+ * </pre>
+ */
+public class PlaneWriter implements Closeable {
+
+	private final String path;
+
+	private final AxisType axis;
+
+	private final SaveOptions options;
+
+	private TiffWriter writer;
+
+	private TiffWriter.PixelKind kind;
+
+	/** The first slice, its size, type and axes are used for all slices. */
+	private ImgPlus< ? > first;
+
+	private long count = 0;
+
+	PlaneWriter( final String path, final AxisType axis, final SaveOptions options ) {
+		if ( ReadRequest.which( axis ) < ReadRequest.C )
+			throw new IllegalArgumentException( "Slices can only be stacked along the channel, Z or time axis, not " + axis );
+		if ( options.getResolutionLevels() > 1 && !TiffWriter.isOmeTiff( path ) )
+			throw new SimplifiedIOException( "Resolution levels are only supported for OME-TIFF files: " + path );
+		this.path = path;
+		this.axis = axis;
+		this.options = options;
+	}
+
+	/** Number of slices appended so far. */
+	public long size() {
+		return count;
+	}
+
+	/**
+	 * Appends a slice, an image with axes X, Y and any of the axes that vary
+	 * faster than the stacking axis: channel for Z, channel and Z for time.
+	 * All slices must have the size and pixel type of the first slice. The
+	 * slice can be reused by the caller once this method returns.
+	 */
+	public void append( final RandomAccessibleInterval< ? > slice ) {
+		final ImgPlus< ? > image = SimplifiedIO.toImgPlus( slice );
+		try {
+			if ( writer == null )
+				start( image );
+			else if ( !Intervals.equalDimensions( first, image ) ||
+					!Util.getTypeFromInterval( image ).getClass().equals( Util.getTypeFromInterval( first ).getClass() ) )
+				throw new SimplifiedIOException( "Slice " + count + " differs from the first slice in size or pixel type: " + path );
+			final HyperstackLayout< ? > layout = HyperstackLayout.of( image );
+			// NB: The IFDs and the description are written by close(), room for them is reserved now.
+			if ( !options.isBigTiff() && writer.estimatedSize( layout, description( count + 1 ) ) > TiffWriter.CLASSIC_TIFF_LIMIT )
+				throw new SimplifiedIOException( "The file grows too large for classic TIFF, use SaveOptions.bigTiff( true ): " + path );
+			writer.writeHyperstack( layout );
+			count++;
+		}
+		catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	private void start( final ImgPlus< ? > image ) throws IOException {
+		if ( !TiffWriter.supports( image, path ) )
+			throw new SimplifiedIOException( "Slices can only be written to TIFF files with 8 bit, 16 bit, float or RGB pixels: " + path );
+		for ( int d = 0; d < image.numDimensions(); d++ )
+			if ( ReadRequest.which( image.axis( d ).type() ) >= ReadRequest.which( axis ) )
+				throw new SimplifiedIOException( "Slices stacked along " + axis + " can't have an axis " + image.axis( d ).type() + ": " + path );
+		final HyperstackLayout< ? > layout = HyperstackLayout.of( image );
+		kind = TiffWriter.PixelKind.of( Util.getTypeFromInterval( image ) );
+		writer = new TiffWriter( Paths.get( path ), kind, ( int ) layout.size( HyperstackLayout.X ),
+				( int ) layout.size( HyperstackLayout.Y ), options.isBigTiff(), options );
+		writer.setPixelSize( layout.scale( HyperstackLayout.X ), layout.scale( HyperstackLayout.Y ) );
+		first = image;
+	}
+
+	/**
+	 * Writes the description of the axes and the IFDs. Nothing is written if
+	 * no slice was appended.
+	 */
+	@Override
+	public void close() {
+		if ( writer == null )
+			return;
+		try (TiffWriter w = writer) {
+			writer = null;
+			w.setDescription( description( count ) );
+		}
+		catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	/** The description of the file with the given number of slices. */
+	private String description( final long slices ) {
+		final HyperstackLayout< ? > layout = HyperstackLayout.of( stacked( slices ) );
+		return TiffWriter.isOmeTiff( path ) ? TiffWriter.omeXml( layout, kind ) : TiffWriter.imageJDescription( layout );
+	}
+
+	/**
+	 * The metadata of the whole image with the given number of slices, the
+	 * pixels are a view that repeats the first slice.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private ImgPlus< ? > stacked( final long slices ) {
+		final int n = first.numDimensions();
+		final CalibratedAxis[] axes = new CalibratedAxis[ n + 1 ];
+		for ( int d = 0; d < n; d++ )
+			axes[ d ] = first.axis( d ).copy();
+		axes[ n ] = new DefaultLinearAxis( axis );
+		final RandomAccessibleInterval view = Views.addDimension( ( RandomAccessibleInterval ) first, 0, slices - 1 );
+		return new ImgPlus<>( ImgView.wrap( view, null ), first.getName(), axes );
+	}
+}
@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+
+/**
+ * Fast path for converting {@link ArrayImg}s and {@link PlanarImg}s of
+ * primitive integer or real types to {@link FloatType} or {@link DoubleType}.
+ * The conversion is done by simple loops over the primitive arrays, which the
+ * JIT compiler can vectorize. The results are the same as with
+ * {@link net.imglib2.converter.RealTypeConverters}.
+ */
+final class PrimitiveConverter {
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private PrimitiveConverter() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Converts the image, if source and target type are supported by this
+	 * fast path.
+	 *
+	 * @return the converted image, or null if the fast path doesn't apply.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static < T extends NativeType< T > > ImgPlus< T > convert( final ImgPlus< ? > image, final T type ) {
+		if ( !( type instanceof FloatType || type instanceof DoubleType ) )
+			return null;
+		final Object sourceType = Util.getTypeFromInterval( image );
+		final SourceKind kind = SourceKind.of( sourceType );
+		if ( kind == null || sourceType.getClass().equals( type.getClass() ) )
+			return null;
+		final Img< ? > source = unwrap( image );
+		final List< Object > sourceArrays = arrays( source );
+		if ( sourceArrays == null )
+			return null;
+		final Img< T > target;
+		if ( source instanceof ArrayImg )
+			target = new ArrayImgFactory<>( type ).create( source );
+		else if ( source instanceof PlanarImg )
+			target = ( Img< T > ) new PlanarImgFactory( type ).create( source );
+		else
+			return null;
+		final List< Object > targetArrays = arrays( target );
+		final List< int[] > chunks = new ArrayList<>();
+		for ( int i = 0; i < sourceArrays.size(); i++ ) {
+			final int length = length( sourceArrays.get( i ) );
+			for ( int from = 0; from < length; from += CHUNK_SIZE )
+				chunks.add( new int[] { i, from, Math.min( length, from + CHUNK_SIZE ) } );
+		}
+		chunks.parallelStream().forEach( chunk -> {
+			final Object s = sourceArrays.get( chunk[ 0 ] );
+			final Object t = targetArrays.get( chunk[ 0 ] );
+			if ( t instanceof float[] )
+				toFloats( kind, s, ( float[] ) t, chunk[ 1 ], chunk[ 2 ] );
+			else
+				toDoubles( kind, s, ( double[] ) t, chunk[ 1 ], chunk[ 2 ] );
+		} );
+		return new ImgPlus<>( target, ( ImgPlus ) image );
+	}
+
+	private static Img< ? > unwrap( Img< ? > img ) {
+		while ( img instanceof ImgPlus )
+			img = ( ( ImgPlus< ? > ) img ).getImg();
+		return img;
+	}
+
+	/**
+	 * Returns the primitive arrays that store the pixels of an
+	 * {@link ArrayImg} or {@link PlanarImg}, or null if the image isn't backed
+	 * by primitive arrays.
+	 */
+	private static List< Object > arrays( final Img< ? > img ) {
+		final List< Object > accesses = new ArrayList<>();
+		if ( img instanceof ArrayImg ) {
+			accesses.add( ( ( ArrayImg< ?, ? > ) img ).update( null ) );
+		} else if ( img instanceof PlanarImg ) {
+			final PlanarImg< ?, ? > planar = ( PlanarImg< ?, ? > ) img;
+			for ( int i = 0; i < planar.numSlices(); i++ )
+				accesses.add( planar.getPlane( i ) );
+		} else {
+			return null;
+		}
+		final List< Object > arrays = new ArrayList<>( accesses.size() );
+		for ( final Object access : accesses ) {
+			if ( !( access instanceof ArrayDataAccess ) )
+				return null;
+			arrays.add( ( ( ArrayDataAccess< ? > ) access ).getCurrentStorageArray() );
+		}
+		return arrays;
+	}
+
+	private static int length( final Object array ) {
+		return Array.getLength( array );
+	}
+
+	static void toFloats( final SourceKind kind, final Object source, final float[] target, final int from, final int to ) {
+		switch ( kind ) {
+		case BYTE: {
+			final byte[] s = ( byte[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_BYTE: {
+			final byte[] s = ( byte[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xff;
+			break;
+		}
+		case SHORT: {
+			final short[] s = ( short[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_SHORT: {
+			final short[] s = ( short[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xffff;
+			break;
+		}
+		case INT: {
+			final int[] s = ( int[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_INT: {
+			final int[] s = ( int[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xffffffffL;
+			break;
+		}
+		case FLOAT:
+			System.arraycopy( source, from, target, from, to - from );
+			break;
+		case DOUBLE: {
+			final double[] s = ( double[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = ( float ) s[ i ];
+			break;
+		}
+		}
+	}
+
+	static void toDoubles( final SourceKind kind, final Object source, final double[] target, final int from, final int to ) {
+		switch ( kind ) {
+		case BYTE: {
+			final byte[] s = ( byte[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_BYTE: {
+			final byte[] s = ( byte[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xff;
+			break;
+		}
+		case SHORT: {
+			final short[] s = ( short[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_SHORT: {
+			final short[] s = ( short[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xffff;
+			break;
+		}
+		case INT: {
+			final int[] s = ( int[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case UNSIGNED_INT: {
+			final int[] s = ( int[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ] & 0xffffffffL;
+			break;
+		}
+		case FLOAT: {
+			final float[] s = ( float[] ) source;
+			for ( int i = from; i < to; i++ )
+				target[ i ] = s[ i ];
+			break;
+		}
+		case DOUBLE:
+			System.arraycopy( source, from, target, from, to - from );
+			break;
+		}
+	}
+
+	/**
+	 * The source pixel types supported by the fast path. Each is stored in a
+	 * primitive array of a known type.
+	 */
+	enum SourceKind {
+		BYTE, UNSIGNED_BYTE, SHORT, UNSIGNED_SHORT, INT, UNSIGNED_INT, FLOAT, DOUBLE;
+
+		static SourceKind of( final Object type ) {
+			// NB: Compare exact classes, subclasses might not be backed by the expected arrays.
+			final Class< ? > c = type.getClass();
+			if ( c == ByteType.class )
+				return BYTE;
+			if ( c == UnsignedByteType.class )
+				return UNSIGNED_BYTE;
+			if ( c == ShortType.class )
+				return SHORT;
+			if ( c == UnsignedShortType.class )
+				return UNSIGNED_SHORT;
+			if ( c == IntType.class )
+				return INT;
+			if ( c == UnsignedIntType.class )
+				return UNSIGNED_INT;
+			if ( c == FloatType.class )
+				return FLOAT;
+			if ( c == DoubleType.class )
+				return DOUBLE;
+			return null;
+		}
+	}
+}
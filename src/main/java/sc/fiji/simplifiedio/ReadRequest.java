@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.LinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.ImgView;
+import net.imglib2.view.Views;
+
+/**
+ * Selects the part of a file to read with
+ * {@link SimplifiedIO#openImage(String, ReadRequest)}: a series, a resolution
+ * level, an XY region, and ranges of channels, Z slices and time points.
+ * <pre>
+ * ReadRequest.all().crop( 100, 100, 512, 512 ).channel( 1 ).frames( 0, 9 )
+ * </pre>
+ * Ranges are inclusive, unset ranges cover the whole axis. The XY region is
+ * given in pixels of the selected resolution level.
+ */
+public class ReadRequest {
+
+	/** Index of X, Y, channel, Z and time in {@link #min} and {@link #max}. */
+	static final int X = 0, Y = 1, C = 2, Z = 3, T = 4;
+
+	private static final AxisType[] AXIS_TYPES = { Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME };
+
+	private int series = 0;
+
+	private int resolution = 0;
+
+	/** Selected range per axis, -1 if the whole axis is selected. */
+	private final long[] min = { -1, -1, -1, -1, -1 };
+
+	private final long[] max = { -1, -1, -1, -1, -1 };
+
+	public static ReadRequest all() {
+		return new ReadRequest();
+	}
+
+	public ReadRequest series( final int series ) {
+		if ( series < 0 )
+			throw new IllegalArgumentException( "Negative series index: " + series );
+		this.series = series;
+		return this;
+	}
+
+	/**
+	 * Selects a resolution level of a pyramidal file, zero is the full
+	 * resolution. Only Bio-Formats reads resolution levels.
+	 */
+	public ReadRequest resolution( final int resolution ) {
+		if ( resolution < 0 )
+			throw new IllegalArgumentException( "Negative resolution level: " + resolution );
+		this.resolution = resolution;
+		return this;
+	}
+
+	public ReadRequest crop( final long x, final long y, final long width, final long height ) {
+		set( X, x, x + width - 1 );
+		set( Y, y, y + height - 1 );
+		return this;
+	}
+
+	public ReadRequest channel( final long c ) {
+		return channels( c, c );
+	}
+
+	public ReadRequest channels( final long first, final long last ) {
+		return set( C, first, last );
+	}
+
+	public ReadRequest slice( final long z ) {
+		return slices( z, z );
+	}
+
+	public ReadRequest slices( final long first, final long last ) {
+		return set( Z, first, last );
+	}
+
+	public ReadRequest frame( final long t ) {
+		return frames( t, t );
+	}
+
+	public ReadRequest frames( final long first, final long last ) {
+		return set( T, first, last );
+	}
+
+	private ReadRequest set( final int axis, final long first, final long last ) {
+		if ( first < 0 || last < first )
+			throw new IllegalArgumentException( "Invalid range for " + AXIS_TYPES[ axis ] + ": " + first + " - " + last );
+		min[ axis ] = first;
+		max[ axis ] = last;
+		return this;
+	}
+
+	public int getSeries() {
+		return series;
+	}
+
+	public int getResolution() {
+		return resolution;
+	}
+
+	boolean isSet( final int axis ) {
+		return min[ axis ] >= 0;
+	}
+
+	/** First selected index of the axis, for an axis of the given size. */
+	long min( final int axis, final long size ) {
+		check( axis, size );
+		return isSet( axis ) ? min[ axis ] : 0;
+	}
+
+	/** Last selected index of the axis, for an axis of the given size. */
+	long max( final int axis, final long size ) {
+		check( axis, size );
+		return isSet( axis ) ? max[ axis ] : size - 1;
+	}
+
+	private void check( final int axis, final long size ) {
+		if ( isSet( axis ) && max[ axis ] >= size )
+			throw new RequestOutOfRangeException( "Requested " + AXIS_TYPES[ axis ] + " range " + min[ axis ] + " - " + max[ axis ] +
+					" is outside of the image, size " + size );
+	}
+
+	static AxisType axisType( final int which ) {
+		return AXIS_TYPES[ which ];
+	}
+
+	static int which( final AxisType type ) {
+		for ( int i = 0; i < AXIS_TYPES.length; i++ )
+			if ( AXIS_TYPES[ i ].equals( type ) )
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Moves the origin of a linear axis to the first selected pixel, so that
+	 * calibrated positions stay the same.
+	 */
+	static void shiftOrigin( final CalibratedAxis axis, final long offset ) {
+		if ( offset != 0 && axis instanceof LinearAxis ) {
+			final LinearAxis linear = ( LinearAxis ) axis;
+			linear.setOrigin( linear.origin() + offset * linear.scale() );
+		}
+	}
+
+	/**
+	 * Crops an image that was opened completely. This is used if no backend
+	 * can read the region directly.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	ImgPlus< ? > crop( final ImgPlus< ? > image ) {
+		final int n = image.numDimensions();
+		final long[] from = new long[ n ];
+		final long[] to = new long[ n ];
+		final CalibratedAxis[] axes = new CalibratedAxis[ n ];
+		final boolean[] present = new boolean[ AXIS_TYPES.length ];
+		for ( int d = 0; d < n; d++ ) {
+			axes[ d ] = image.axis( d ).copy();
+			final int which = which( axes[ d ].type() );
+			if ( which >= 0 )
+				present[ which ] = true;
+			final long size = image.dimension( d );
+			from[ d ] = which < 0 ? 0 : min( which, size );
+			to[ d ] = which < 0 ? size - 1 : max( which, size );
+			shiftOrigin( axes[ d ], from[ d ] );
+			from[ d ] += image.min( d );
+			to[ d ] += image.min( d );
+		}
+		for ( int which = 0; which < AXIS_TYPES.length; which++ )
+			if ( !present[ which ] )
+				check( which, 1 );
+		final RandomAccessibleInterval cropped = Views.zeroMin( Views.interval( ( RandomAccessibleInterval ) image, from, to ) );
+		final ImgPlus< ? > result = new ImgPlus<>( ImgView.wrap( cropped, null ), image.getName(), axes );
+		result.getProperties().putAll( image.getProperties() );
+		return result;
+	}
+}
@@ -0,0 +1,219 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.scif.Format;
+import io.scif.Reader;
+import io.scif.SCIFIO;
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+
+/**
+ * Holds the SCIFIO context and a bounded number of idle Bio-Formats and
+ * SCIFIO readers, so that they can be reused to open many files.
+ * <p>
+ * Creating a SCIFIO context takes seconds, and creating a Bio-Formats
+ * {@link loci.formats.ImageReader} instantiates a reader for every supported
+ * format. Both are done once and shared. Idle readers are kept per file
+ * format, at most {@code maxIdleReaders} of each.
+ * <p>
+ * {@link #close()} disposes the context and closes all idle readers. Closing
+ * the {@link #shared()} pool is allowed, a new shared pool is created when it
+ * is needed again.
+ */
+public class ReaderPool implements AutoCloseable {
+
+	private static volatile ReaderPool shared;
+
+	private final int maxIdleReaders;
+
+	private final Object scifioLock = new Object();
+
+	private volatile SCIFIO scifio;
+
+	private final Map< String, Deque< IFormatReader > > bioFormatsReaders = new HashMap<>();
+
+	private final Map< Format, Deque< Reader > > scifioReaders = new HashMap<>();
+
+	private volatile boolean closed = false;
+
+	public ReaderPool() {
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	public ReaderPool( final int maxIdleReaders ) {
+		this.maxIdleReaders = maxIdleReaders;
+	}
+
+	/** Returns the pool that is used by {@link SimplifiedIO}. */
+	public static ReaderPool shared() {
+		ReaderPool pool = shared;
+		if ( pool == null || pool.closed ) {
+			synchronized ( ReaderPool.class ) {
+				pool = shared;
+				if ( pool == null || pool.closed ) {
+					pool = new ReaderPool();
+					shared = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the SCIFIO context of this pool. It is created on first use,
+	 * exactly once even if called concurrently.
+	 */
+	public SCIFIO getScifio() {
+		SCIFIO result = scifio;
+		if ( result == null ) {
+			synchronized ( scifioLock ) {
+				ensureOpen();
+				result = scifio;
+				if ( result == null ) {
+					final long start = System.nanoTime();
+					result = new SCIFIO();
+					scifio = result;
+					final long nanos = System.nanoTime() - start;
+					Listeners.fire( Listeners.all(), listener -> listener.scifioInitialized( nanos ) );
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a Bio-Formats reader, that has the given file opened. It must be
+	 * given back with {@link #releaseBioFormatsReader(String, IFormatReader)}.
+	 */
+	IFormatReader acquireBioFormatsReader( final String path ) {
+		final String key = FileSignature.of( path ).key();
+		IFormatReader reader = poll( bioFormatsReaders, key );
+		if ( reader == null )
+			reader = BioFormatsSeries.createReader();
+		try {
+			reader.setId( path );
+			return reader;
+		} catch ( FormatException | IOException | RuntimeException e ) {
+			releaseBioFormatsReader( path, reader );
+			throw e instanceof RuntimeException ? ( RuntimeException ) e : new SimplifiedIOException( e );
+		}
+	}
+
+	void releaseBioFormatsReader( final String path, final IFormatReader reader ) {
+		try {
+			reader.close();
+		} catch ( IOException e ) {
+			return;
+		}
+		offer( bioFormatsReaders, FileSignature.of( path ).key(), reader );
+	}
+
+	/**
+	 * Returns a SCIFIO reader for the format of the given file, with the file
+	 * set as source. It must be given back with
+	 * {@link #releaseScifioReader(Reader)}.
+	 */
+	Reader acquireScifioReader( final String path ) {
+		try {
+			final Format format = getScifio().format().getFormat( path );
+			Reader reader = poll( scifioReaders, format );
+			if ( reader == null )
+				reader = format.createReader();
+			try {
+				reader.setSource( path );
+			} catch ( IOException | RuntimeException e ) {
+				releaseScifioReader( reader );
+				throw e;
+			}
+			return reader;
+		} catch ( io.scif.FormatException | IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	void releaseScifioReader( final Reader reader ) {
+		try {
+			reader.close();
+		} catch ( IOException e ) {
+			return;
+		}
+		offer( scifioReaders, reader.getFormat(), reader );
+	}
+
+	/** Number of idle readers currently held by this pool. */
+	public int numIdleReaders() {
+		synchronized ( this ) {
+			return count( bioFormatsReaders ) + count( scifioReaders );
+		}
+	}
+
+	@Override
+	public void close() {
+		synchronized ( this ) {
+			closed = true;
+			// NB: idle readers are closed already, when they are released.
+			bioFormatsReaders.clear();
+			scifioReaders.clear();
+		}
+		synchronized ( scifioLock ) {
+			if ( scifio != null ) {
+				scifio.getContext().dispose();
+				scifio = null;
+			}
+		}
+	}
+
+	private void ensureOpen() {
+		if ( closed )
+			throw new IllegalStateException( "ReaderPool is closed." );
+	}
+
+	private synchronized < K, R > R poll( final Map< K, Deque< R > > idle, final K key ) {
+		ensureOpen();
+		final Deque< R > readers = idle.get( key );
+		if ( readers != null && !readers.isEmpty() )
+			return readers.poll();
+		return null;
+	}
+
+	private synchronized < K, R > void offer( final Map< K, Deque< R > > idle, final K key, final R reader ) {
+		if ( closed )
+			return;
+		final Deque< R > readers = idle.computeIfAbsent( key, k -> new ArrayDeque<>() );
+		if ( readers.size() < maxIdleReaders )
+			readers.push( reader );
+	}
+
+	private static < K, R > int count( final Map< K, Deque< R > > idle ) {
+		int count = 0;
+		for ( final Deque< R > readers : idle.values() )
+			count += readers.size();
+		return count;
+	}
+}
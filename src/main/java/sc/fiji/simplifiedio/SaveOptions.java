@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options for {@link SimplifiedIO#saveImage(net.imglib2.RandomAccessibleInterval, String, SaveOptions)}.
+ * <p>
+ * Compression and tiling apply to TIFF and OME-TIFF files. Tiles are
+ * encoded in parallel on the {@link #executor(Executor) executor} and
+ * written to the file in order. OME-TIFF files can contain a pyramid of
+ * sub-resolution levels, for fast overview display.
+ * <p>
+ * Zarr files, saved to a path ending with ".zarr", are split into chunks of
+ * the {@link #chunkSize(int...) chunk size}. The chunks are written in
+ * parallel on the executor, they can be uncompressed or DEFLATE compressed.
+ * <pre>
+ * SimplifiedIO.saveImage( image, "image.ome.tif", SaveOptions.options().compression( Compression.DEFLATE ) );
+ * </pre>
+ */
+public class SaveOptions {
+
+	/** TIFF compression schemes. */
+	public enum Compression {
+		NONE( 1 ), LZW( 5 ), DEFLATE( 8 );
+
+		private final int tiffCode;
+
+		Compression( final int tiffCode ) {
+			this.tiffCode = tiffCode;
+		}
+
+		int tiffCode() {
+			return tiffCode;
+		}
+	}
+
+	static final int DEFAULT_TILE_SIZE = 256;
+
+	private Compression compression = Compression.NONE;
+
+	private int tileSize = 0;
+
+	private boolean bigTiff = false;
+
+	private int resolutionLevels = 1;
+
+	private int[] chunkSize = null;
+
+	private Executor executor = ForkJoinPool.commonPool();
+
+	public static SaveOptions options() {
+		return new SaveOptions();
+	}
+
+	/** Sets the compression, the default is {@link Compression#NONE}. */
+	public SaveOptions compression( final Compression compression ) {
+		this.compression = compression;
+		return this;
+	}
+
+	/**
+	 * Writes tiles of the given width and height, which must be a multiple
+	 * of 16. Compressed images are tiled by default, with 256 x 256 pixel
+	 * tiles.
+	 */
+	public SaveOptions tileSize( final int tileSize ) {
+		if ( tileSize <= 0 || tileSize % 16 != 0 )
+			throw new IllegalArgumentException( "Tile size must be a positive multiple of 16: " + tileSize );
+		this.tileSize = tileSize;
+		return this;
+	}
+
+	/**
+	 * Writes BigTIFF, even if the file is small enough for classic TIFF.
+	 * Large files are always written as BigTIFF.
+	 */
+	public SaveOptions bigTiff( final boolean bigTiff ) {
+		this.bigTiff = bigTiff;
+		return this;
+	}
+
+	/**
+	 * Writes the given number of resolution levels into an OME-TIFF file, each
+	 * level downsampled by two in X and Y. One, the default, writes only the
+	 * full resolution. Pyramids are tiled, with 256 x 256 pixel tiles unless
+	 * set otherwise.
+	 */
+	public SaveOptions resolutionLevels( final int resolutionLevels ) {
+		if ( resolutionLevels < 1 )
+			throw new IllegalArgumentException( "At least one resolution level is needed: " + resolutionLevels );
+		this.resolutionLevels = resolutionLevels;
+		return this;
+	}
+
+	/**
+	 * Sets the chunk size of Zarr files, per dimension of the image. Missing
+	 * dimensions, and all by default, have chunks of 256 pixels in X and Y
+	 * and of one pixel otherwise.
+	 */
+	public SaveOptions chunkSize( final int... chunkSize ) {
+		for ( final int size : chunkSize )
+			if ( size < 1 )
+				throw new IllegalArgumentException( "Chunk sizes must be positive: " + Arrays.toString( chunkSize ) );
+		this.chunkSize = chunkSize.clone();
+		return this;
+	}
+
+	/**
+	 * Sets the executor that encodes the tiles, the default is
+	 * {@link ForkJoinPool#commonPool()}.
+	 */
+	public SaveOptions executor( final Executor executor ) {
+		this.executor = executor;
+		return this;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/** Tile width and height, zero if the image is written in strips. */
+	public int getTileSize() {
+		if ( tileSize == 0 && ( compression != Compression.NONE || resolutionLevels > 1 ) )
+			return DEFAULT_TILE_SIZE;
+		return tileSize;
+	}
+
+	public boolean isBigTiff() {
+		return bigTiff;
+	}
+
+	public int getResolutionLevels() {
+		return resolutionLevels;
+	}
+
+	/** Chunk size of Zarr files, null for the default. */
+	public int[] getChunkSize() {
+		return chunkSize == null ? null : chunkSize.clone();
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/** True if the options need the TIFF writer of Simplified IO. */
+	boolean needsTiffWriter() {
+		return getTileSize() > 0 || bigTiff;
+	}
+}
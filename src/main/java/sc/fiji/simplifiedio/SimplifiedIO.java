@@ -23,7 +23,22 @@ package sc.fiji.simplifiedio;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.StringJoiner;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.scijava.util.FileUtils;
 
@@ -32,14 +47,21 @@ import ij.ImagePlus;
 import ij.Macro;
 import ij.io.Opener;
 import ij.plugin.ImagesToStack;
-import io.scif.SCIFIO;
+import io.scif.ImageMetadata;
+import io.scif.Metadata;
+import io.scif.Reader;
+import io.scif.config.SCIFIOConfig;
+import io.scif.config.SCIFIOConfig.ImgMode;
+import io.scif.img.ImageRegion;
+import io.scif.img.ImgOpener;
 import loci.formats.FormatException;
+import loci.formats.IFormatReader;
 import loci.plugins.in.ImagePlusReader;
 import loci.plugins.in.ImportProcess;
 import loci.plugins.in.ImporterOptions;
-import net.imagej.Dataset;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
 import net.imagej.axis.DefaultLinearAxis;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converters;
@@ -54,11 +76,22 @@ import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 
 public class SimplifiedIO {
 
-	private static SCIFIO scifio;
+	/**
+	 * Key of the image property that holds the {@link Backend} used to open an
+	 * image.
+	 */
+	public static final String BACKEND_PROPERTY = "sc.fiji.simplifiedio.backend";
+
+	private static final BackendDispatcher dispatcher = new BackendDispatcher();
+
+	private static volatile ImageCache imageCache;
 
 	/**
 	 * Loads an image using ImageJ1, then wraps it into an ImgPlus object
@@ -74,13 +107,16 @@ public class SimplifiedIO {
 		final Opener opnr = new Opener();
 		ImagePlus image = opnr.openImage( path );
 		if ( image == null )
-			throw new SimplifiedIOException( "new ij.io.Opener().openImage() returned null." );
+			throw new UnsupportedFileException( "new ij.io.Opener().openImage() returned null." );
 		return ImagePlusAdapter.wrapImgPlus( image );
 	}
 
 	/**
 	 *
 	 * Loads an image using SCIFIO
+	 * <p>
+	 * The SCIFIO context and the reader are taken from
+	 * {@link ReaderPool#shared()}.
 	 *
 	 * @return ImgPlus object
 	 * @see net.imagej.ImgPlus
@@ -89,23 +125,102 @@ public class SimplifiedIO {
 	@SuppressWarnings( "rawtypes" )
 	static ImgPlus openImageWithSCIFIO( final String path ) {
 		// package private to allow testing
+		return openImageWithSCIFIO( path, ReadRequest.all() );
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private static ImgPlus openImageWithSCIFIO( final String path, final ReadRequest request ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final Reader reader = pool.acquireScifioReader( path );
 		try {
-			SCIFIO scifio = getScifio();
-			Dataset dataset = scifio.datasetIO().open( path );
-			return dataset.getImgPlus();
+			final Metadata metadata = reader.getMetadata();
+			if ( request.getSeries() >= metadata.getImageCount() )
+				throw new RequestOutOfRangeException( "Series " + request.getSeries() + " doesn't exist, the file has " +
+						metadata.getImageCount() + " series: " + path );
+			final ImageMetadata series = metadata.get( request.getSeries() );
+			// NB: Planar images are read completely, the reader can be reused afterwards.
+			final SCIFIOConfig config = new SCIFIOConfig().imgOpenerSetImgModes( ImgMode.PLANAR )
+					.imgOpenerSetIndex( request.getSeries() );
+			final List< AxisType > regionAxes = new ArrayList<>();
+			final List< String > regionRanges = new ArrayList<>();
+			for ( int which = ReadRequest.X; which <= ReadRequest.T; which++ ) {
+				if ( request.isSet( which ) ) {
+					final AxisType type = ReadRequest.axisType( which );
+					final long size = series.getAxisIndex( type ) < 0 ? 1 : series.getAxisLength( type );
+					regionAxes.add( type );
+					regionRanges.add( request.min( which, size ) + "-" + request.max( which, size ) );
+				}
+			}
+			if ( !regionAxes.isEmpty() )
+				config.imgOpenerSetRegion( new ImageRegion( regionAxes.toArray( new AxisType[ 0 ] ), regionRanges.toArray( new String[ 0 ] ) ) );
+			final ImgPlus image = new ImgOpener( pool.getScifio().getContext() ).openImgs( reader, config ).get( 0 );
+			for ( int d = 0; d < image.numDimensions(); d++ ) {
+				final int which = ReadRequest.which( image.axis( d ).type() );
+				if ( which >= 0 && request.isSet( which ) )
+					ReadRequest.shiftOrigin( image.axis( d ), request.min( which, Long.MAX_VALUE ) );
+			}
+			return image;
 		} catch ( IOException e ) {
 			throw new SimplifiedIOException( e );
+		} finally {
+			pool.releaseScifioReader( reader );
 		}
 	}
 
 	/**
 	 * Loads an image using BioFormats
+	 * <p>
+	 * A file with a single series is read plane by plane into a planar image,
+	 * using a reader from {@link ReaderPool#shared()}. Large images are decoded
+	 * in parallel, with more readers of the file from the pool. Files with
+	 * several series are opened with the Bio-Formats importer, which stacks
+	 * the series it opens into one image.
 	 *
 	 * @see net.imagej.ImgPlus
 	 */
 	@SuppressWarnings( "rawtypes" )
 	static ImgPlus openImageWithBioFormats( final String path ) {
 		// package private to allow testing
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			if ( reader.getSeriesCount() == 1 ) {
+				final BioFormatsSeries series = new BioFormatsSeries( reader, 0 );
+				return series.openPlanar( ReadRequest.all(), series.type(), pool, path );
+			}
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+		return openImageWithImporter( path );
+	}
+
+	/**
+	 * Opens the image with Bio-Formats like {@link #openImageWithBioFormats(String)}
+	 * and converts it to the given type. Each plane of a single series file is
+	 * converted right after it is decoded, if possible.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static ImgPlus openImageWithBioFormats( final String path, final NativeType type ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			if ( reader.getSeriesCount() == 1 ) {
+				final BioFormatsSeries series = new BioFormatsSeries( reader, 0 );
+				final ImgPlus converted = series.openPlanar( ReadRequest.all(), type, pool, path );
+				return converted != null ? converted : convert( series.openPlanar( ReadRequest.all(), series.type(), pool, path ), type, ConversionMode.MATERIALIZE );
+			}
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+		return convert( openImageWithImporter( path ), type, ConversionMode.MATERIALIZE );
+	}
+
+	/**
+	 * Opens the file with the Bio-Formats importer, with the importer options
+	 * of the user, and stacks the opened images.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	private static ImgPlus openImageWithImporter( final String path ) {
 		try {
 			ImporterOptions options = new ImporterOptions();
 			if ( Macro.getOptions() == null ) {
@@ -124,42 +239,459 @@ public class SimplifiedIO {
 		}
 	}
 
+	@SuppressWarnings( "rawtypes" )
+	private static ImgPlus openImageWithBioFormats( final String path, final ReadRequest request ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			if ( request.getSeries() >= reader.getSeriesCount() )
+				throw new RequestOutOfRangeException( "Series " + request.getSeries() + " doesn't exist, the file has " +
+						reader.getSeriesCount() + " series: " + path );
+			final BioFormatsSeries series = new BioFormatsSeries( reader, request.getSeries(), request.getResolution() );
+			return series.openPlanar( request, series.type(), pool, path );
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+	}
+
 	/**
 	 * Loads an image into an ImgPlus object
+	 * <p>
+	 * The file type is determined from the file extension and the first bytes
+	 * of the file, and the file is sent to the {@link Backend} that is most
+	 * likely to read it. The other backends are used as fallback. The backend
+	 * that was used is stored in the image properties under the key
+	 * {@link #BACKEND_PROPERTY}.
 	 *
 	 * @see net.imagej.ImgPlus
 	 */
 	@SuppressWarnings( "rawtypes" )
 	public static ImgPlus openImage( final String path ) {
+		final ImageCache cache = imageCache;
+		if ( cache == null )
+			return dispatcher.open( path );
+		return cache.get( path, null, () -> dispatcher.open( path ) );
+	}
 
-		StringJoiner messages = new StringJoiner( "\n" );
+	/**
+	 * Sets the cache used by {@link #openImage(String)} and
+	 * {@link #openImage(String, NativeType)}, null to disable caching, which
+	 * is the default. While a cache is set, opening the same file again
+	 * returns the same image instance, changes made by one caller are seen by
+	 * all others.
+	 */
+	public static void setImageCache( final ImageCache cache ) {
+		imageCache = cache;
+	}
 
-		try {
-			return SimplifiedIO.openImageWithIJ1( path );
-		} catch ( Exception e ) {
-			messages.add( "ImageJ1 Exception: " + e.getMessage() );
+	public static ImageCache getImageCache() {
+		return imageCache;
+	}
+
+	/**
+	 * Reads only the part of the file selected by the request. The backends
+	 * are tried in the same order as by {@link #openImage(String)}. Memory
+	 * mapped TIFF files and Zarr arrays are returned as a view of the
+	 * region, Bio-Formats and SCIFIO read just the requested planes and decode
+	 * just the requested region. ImageJ1 is tried last, it opens the first
+	 * series completely, which is then cropped. The axes of the returned image
+	 * have their origin at the first requested pixel, so calibrated positions
+	 * match those of the whole image.
+	 * <p>
+	 * Other series are read by Bio-Formats and SCIFIO only. Lower resolution
+	 * levels of pyramidal files are read by Bio-Formats only, the pixel size
+	 * of the returned image is that of the level.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openImage( final String path, final ReadRequest request ) {
+		return dispatcher.open( path, () -> false, order -> regionBackends( order, request ),
+				( backend, p ) -> openRegion( backend, p, request ) );
+	}
+
+	/**
+	 * The backends that can read the request, in the given order. ImageJ1
+	 * can't read a region, it is moved to the end.
+	 */
+	private static List< Backend > regionBackends( final List< Backend > order, final ReadRequest request ) {
+		final List< Backend > backends = new ArrayList<>( order.size() );
+		for ( final Backend backend : order )
+			if ( backend != Backend.IJ1 && canRead( backend, request ) )
+				backends.add( backend );
+		if ( order.contains( Backend.IJ1 ) && canRead( Backend.IJ1, request ) )
+			backends.add( Backend.IJ1 );
+		return backends;
+	}
+
+	private static boolean canRead( final Backend backend, final ReadRequest request ) {
+		if ( request.getResolution() > 0 )
+			return backend == Backend.BIOFORMATS;
+		if ( request.getSeries() > 0 )
+			return backend == Backend.BIOFORMATS || backend == Backend.SCIFIO;
+		return true;
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private static ImgPlus openRegion( final Backend backend, final String path, final ReadRequest request ) {
+		switch ( backend ) {
+		case BIOFORMATS:
+			return openImageWithBioFormats( path, request );
+		case SCIFIO:
+			return openImageWithSCIFIO( path, request );
+		default:
+			// NB: A view of the region for memory mapped and Zarr images, a crop of the decoded image for ImageJ1.
+			return request.crop( backend.open( path ) );
+		}
+	}
+
+	/**
+	 * Opens many files with the default {@link BatchOptions}.
+	 *
+	 * @see #openImages(Collection, BatchOptions)
+	 */
+	public static Stream< BatchResult > openImages( final Collection< Path > paths ) {
+		return openImages( paths, BatchOptions.options() );
+	}
+
+	/**
+	 * Opens many files with {@link #openImage(String)} in a pipeline: files are
+	 * read ahead on I/O threads while other files are decoded in parallel. A
+	 * file that can't be opened gives a {@link BatchResult} holding the
+	 * {@link SimplifiedIOException}, the other files are still opened.
+	 * <p>
+	 * The stream should be closed if it isn't consumed completely, to stop
+	 * opening the remaining files.
+	 */
+	public static Stream< BatchResult > openImages( final Collection< Path > paths, final BatchOptions options ) {
+		return new BatchOpener( paths, options, SimplifiedIO::openImage ).stream();
+	}
+
+	/**
+	 * Reads dimensions, pixel type, axes and calibration of the image from the
+	 * file header, without decoding pixels. The backends are tried in the same
+	 * order as by {@link #openImage(String)}, the result describes the image
+	 * as it would be opened.
+	 */
+	public static ImageInfo probe( final String path ) {
+		return dispatcher.probe( path );
+	}
+
+	/**
+	 * Reads the headers of all files in the directory in parallel, see
+	 * {@link #probe(String)}. Files that can't be read as images are left
+	 * out, the others are returned sorted by path.
+	 */
+	public static List< ImageInfo > probeDirectory( final Path directory ) {
+		final List< Path > files;
+		try (Stream< Path > list = Files.list( directory )) {
+			files = list.filter( Files::isRegularFile ).sorted().collect( Collectors.toList() );
+		}
+		catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+		final Executor executor = AsyncTasks.executor();
+		final int maxInFlight = 4 * Runtime.getRuntime().availableProcessors();
+		final Deque< CompletableFuture< ImageInfo > > inFlight = new ArrayDeque<>();
+		final List< ImageInfo > infos = new ArrayList<>();
+		for ( final Path file : files ) {
+			if ( inFlight.size() >= maxInFlight )
+				addIfPresent( infos, inFlight.poll().join() );
+			inFlight.add( CompletableFuture.supplyAsync( () -> {
+				try {
+					return probe( file.toString() );
+				}
+				catch ( RuntimeException e ) {
+					return null;
+				}
+			}, executor ) );
+		}
+		while ( !inFlight.isEmpty() )
+			addIfPresent( infos, inFlight.poll().join() );
+		return infos;
+	}
+
+	/**
+	 * Opens files of the same size and pixel type, e.g. one file per Z slice,
+	 * as one image with an additional axis of the given type. The image is
+	 * allocated once, the files are opened in parallel and copied into their
+	 * slices. Files read by Bio-Formats are decoded directly into the image.
+	 * The calibration is taken from the first file.
+	 *
+	 * @throws SimplifiedIOException if a file can't be opened, or differs
+	 *             from the first file in size or pixel type.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openStack( final List< Path > files, final AxisType axis ) {
+		return StackOpener.open( files, axis );
+	}
+
+	/**
+	 * Opens the files in the directory that match the glob pattern, e.g.
+	 * "z*.tif", sorted by name, as one image, see
+	 * {@link #openStack(List, AxisType)}.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openStack( final Path directory, final String glob, final AxisType axis ) {
+		final List< Path > files = new ArrayList<>();
+		try (DirectoryStream< Path > stream = Files.newDirectoryStream( directory, glob )) {
+			for ( final Path file : stream )
+				if ( Files.isRegularFile( file ) )
+					files.add( file );
 		}
+		catch ( IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+		Collections.sort( files );
+		return openStack( files, axis );
+	}
+
+	/**
+	 * Iterates over the slices of the image along the channel, Z or time
+	 * axis, reading two slices ahead on a background thread. Only a few
+	 * slices are held in memory, their buffers are reused, see
+	 * {@link PlaneIterator}. The iterator must be closed.
+	 */
+	public static PlaneIterator planes( final String path, final AxisType axis ) {
+		return planes( path, axis, 2 );
+	}
+
+	/**
+	 * Iterates over the slices of the image along the channel, Z or time
+	 * axis, reading up to the given number of slices ahead.
+	 */
+	public static PlaneIterator planes( final String path, final AxisType axis, final int readAhead ) {
+		if ( !new File( path ).exists() )
+			throw new SimplifiedIOException( "Image file doesn't exist: " + path );
+		if ( readAhead < 1 )
+			throw new IllegalArgumentException( "Read ahead must be at least one slice: " + readAhead );
+		return new PlaneIterator( path, axis, readAhead );
+	}
 
+	/**
+	 * Creates a writer that appends slices along the channel, Z or time axis
+	 * to a TIFF or OME-TIFF file, see {@link PlaneWriter}.
+	 */
+	public static PlaneWriter planeWriter( final String path, final AxisType axis ) {
+		return planeWriter( path, axis, SaveOptions.options() );
+	}
+
+	/**
+	 * Creates a writer that appends slices to a TIFF or OME-TIFF file, tiled
+	 * and compressed as specified by the {@link SaveOptions}.
+	 */
+	public static PlaneWriter planeWriter( final String path, final AxisType axis, final SaveOptions options ) {
+		return new PlaneWriter( addTifAsDefaultExtension( path ), axis, options );
+	}
+
+	private static < T > void addIfPresent( final List< T > list, final T value ) {
+		if ( value != null )
+			list.add( value );
+	}
+
+	/**
+	 * Opens an image without decoding it. Tiles of the image are read and
+	 * decoded by Bio-Formats when they are first accessed. A quarter of the
+	 * maximum heap size is used to cache decoded tiles.
+	 *
+	 * @see #openImageLazy(String, long)
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openImageLazy( final String path ) {
+		return openImageLazy( path, Runtime.getRuntime().maxMemory() / 4 );
+	}
+
+	/**
+	 * Opens an image without decoding it. Tiles of the image are read and
+	 * decoded by Bio-Formats when they are first accessed. The least recently
+	 * used tiles are dropped from memory once the decoded tiles exceed the
+	 * given cache size, and are decoded again if needed.
+	 * <p>
+	 * The image keeps the file open between tiles, with one reader for each
+	 * thread that decodes tiles. The file is closed by {@link #release(ImgPlus)},
+	 * or once the image is garbage collected. The file must not be changed or
+	 * deleted while the image is used. The image is read only, changes to
+	 * pixel values may be lost.
+	 *
+	 * @param cacheSize
+	 *            Maximum size of the decoded tiles kept in memory, in bytes.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openImageLazy( final String path, final long cacheSize ) {
+		if ( !new File( path ).exists() )
+			throw new SimplifiedIOException( "Image file doesn't exist: " + path );
+		final LazyReaders readers = new LazyReaders( path );
+		final IFormatReader reader = readers.acquire();
 		try {
-			return SimplifiedIO.openImageWithSCIFIO( path );
-		} catch ( Exception e ) {
-			messages.add( "SCIFIO Exception: " + e.getMessage() );
+			return new BioFormatsSeries( reader, 0 ).openLazy( cacheSize, readers );
+		}
+		catch ( RuntimeException e ) {
+			readers.close();
+			throw e;
+		}
+		finally {
+			readers.release( reader );
 		}
+	}
 
+	/**
+	 * Lists the series of a file, without decoding pixels. Files that
+	 * Bio-Formats can't read are described as a single series by
+	 * {@link #probe(String)}.
+	 */
+	public static List< ImageInfo > listSeries( final String path ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader;
+		try {
+			reader = pool.acquireBioFormatsReader( path );
+		}
+		catch ( RuntimeException e ) {
+			return Collections.singletonList( probe( path ) );
+		}
 		try {
-			return SimplifiedIO.openImageWithBioFormats( path );
-		} catch ( Exception e ) {
-			messages.add( "BioFormats Exception: " + e.getMessage() );
+			final List< ImageInfo > series = new ArrayList<>();
+			for ( int i = 0; i < reader.getSeriesCount(); i++ )
+				series.add( ImageProbe.bioFormats( path, reader, i ) );
+			return series;
 		}
+		finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+	}
 
+	/**
+	 * Opens one series of a file. Only the planes of this series are read and
+	 * decoded.
+	 *
+	 * @see #openImage(String, ReadRequest)
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static ImgPlus openSeries( final String path, final int series ) {
+		return openImage( path, ReadRequest.all().series( series ) );
+	}
+
+	/**
+	 * Opens all series of a file without decoding them, see
+	 * {@link #openSeriesLazy(String, long)}. Each series keeps up to a quarter
+	 * of the maximum heap size of decoded tiles.
+	 */
+	public static List< ImgPlus< ? > > openSeriesLazy( final String path ) {
+		return openSeriesLazy( path, Runtime.getRuntime().maxMemory() / 4 );
+	}
+
+	/**
+	 * Opens all series of a file without decoding them, like
+	 * {@link #openImageLazy(String, long)}. Each series keeps its own readers
+	 * of the file open between tiles, until it is released with
+	 * {@link #release(ImgPlus)} or garbage collected. A series that is never
+	 * accessed is never decoded. Series can have different sizes and pixel
+	 * types.
+	 *
+	 * @param cacheSize
+	 *            Maximum size of the decoded tiles kept in memory for each
+	 *            series, in bytes.
+	 */
+	public static List< ImgPlus< ? > > openSeriesLazy( final String path, final long cacheSize ) {
 		if ( !new File( path ).exists() )
 			throw new SimplifiedIOException( "Image file doesn't exist: " + path );
+		// NB: The reader that lists the series is kept open by the first series.
+		final LazyReaders first = new LazyReaders( path );
+		final IFormatReader reader = first.acquire();
+		final List< ImgPlus< ? > > series = new ArrayList<>();
+		try {
+			for ( int i = 0; i < reader.getSeriesCount(); i++ )
+				series.add( new BioFormatsSeries( reader, i ).openLazy( cacheSize, i == 0 ? first : new LazyReaders( path ) ) );
+			return series;
+		}
+		catch ( RuntimeException e ) {
+			first.close();
+			for ( final ImgPlus< ? > image : series )
+				BioFormatsSeries.close( image );
+			throw e;
+		}
+		finally {
+			first.release( reader );
+		}
+	}
 
-		throw new SimplifiedIOException( "Couldn't open image file: \"" + path + "\"\n" + "Exceptions:\n" + messages );
+	/**
+	 * Returns the {@link Backend} that was used to open the given image, or
+	 * null if the image wasn't opened by {@link #openImage(String)}.
+	 */
+	public static Backend getBackend( final ImgPlus< ? > image ) {
+		final Object backend = image.getProperties().get( BACKEND_PROPERTY );
+		return backend instanceof Backend ? ( Backend ) backend : null;
 	}
 
+	/**
+	 * Returns how often each {@link Backend} succeeded and failed to open files,
+	 * grouped by file kind (extension and magic bytes).
+	 */
+	public static Map< String, Map< Backend, BackendStatistics > > getBackendStatistics() {
+		return dispatcher.statistics();
+	}
+
+	/**
+	 * Forgets the statistics that are used to adapt the order in which the
+	 * backends are tried.
+	 */
+	public static void resetBackendStatistics() {
+		dispatcher.resetStatistics();
+	}
+
+	/**
+	 * Returns the backends that {@link #openImage(String)} currently skips,
+	 * because they failed to open a file of the same kind (extension and magic
+	 * bytes) that another backend could open, together with the messages of
+	 * these failures.
+	 */
+	public static Map< String, Map< Backend, String > > getRememberedFailures() {
+		return dispatcher.failures();
+	}
+
+	/**
+	 * Forgets which backends failed, all backends are tried again.
+	 */
+	public static void resetRememberedFailures() {
+		dispatcher.resetFailures();
+	}
+
+	/**
+	 * Sets how long {@link #openImage(String)} skips a backend after it failed
+	 * for a kind of file, ten minutes by default. Zero disables skipping.
+	 */
+	public static void setFailureTimeToLive( final long duration, final TimeUnit unit ) {
+		dispatcher.setFailureTimeToLive( unit.toNanos( duration ) );
+	}
+
+	/**
+	 * Registers a listener that is told how long opening, converting and
+	 * saving images takes, e.g. a {@link Metrics} instance. Without
+	 * listeners, no timings are taken.
+	 */
+	public static void addListener( final SimplifiedIOListener listener ) {
+		Listeners.add( listener );
+	}
+
+	public static void removeListener( final SimplifiedIOListener listener ) {
+		Listeners.remove( listener );
+	}
+
+	/**
+	 * Opens the image and converts it to the given pixel type. Bio-Formats
+	 * converts each plane right after decoding it into an image of the given
+	 * type, so that only one copy of the pixels is kept. Images decoded by
+	 * the other libraries are converted into a new image after decoding.
+	 * Memory mapped and Zarr images are converted on access, their pixels
+	 * are not copied.
+	 * <p>
+	 * If an {@link ImageCache} is set, the converted image is computed once
+	 * and cached, separately from the image with its own pixel type.
+	 */
+	@SuppressWarnings( "unchecked" )
 	public static < T extends NativeType< T > > ImgPlus< T > openImage( String path, T type ) {
-		return convert( openImage( path ), type );
+		final ImageCache cache = imageCache;
+		if ( cache == null )
+			return dispatcher.open( path, () -> false, ( backend, p ) -> backend.open( p, type ) );
+		return cache.get( path, type, () -> dispatcher.open( path, () -> false, ( backend, p ) -> backend.open( p, type ) ) );
 	}
 
 	@SuppressWarnings( { "rawtypes", "unchecked" } )
@@ -172,7 +704,105 @@ public class SimplifiedIO {
 		} else if ( imageType instanceof UnsignedByteType && type instanceof ARGBType ) {
 			return convertUnsignedByteTypeToARGBType( image );
 		} else if ( imageType instanceof ARGBType && type instanceof RealType ) { return convertARGBTypeToRealType( image, ( RealType ) type ); }
-		throw new IllegalStateException( "Cannot convert between given pixel types: " + imageType.getClass().getSimpleName() + ", " + type.getClass().getSimpleName() );
+		throw new UnsupportedConversionException( "Cannot convert between given pixel types: " + imageType.getClass().getSimpleName() + ", " + type.getClass().getSimpleName() );
+	}
+
+	/**
+	 * Converts the image to the given pixel type.
+	 * <p>
+	 * With {@link ConversionMode#VIEW} the result is the same as
+	 * {@link #convert(ImgPlus, NativeType)}, a view that converts pixel values
+	 * on access. With {@link ConversionMode#MATERIALIZE} the converted values
+	 * are computed in parallel and copied into a new image. Array backed
+	 * images of primitive types are converted to {@link FloatType} and
+	 * {@link DoubleType} by specialized loops over the primitive arrays. With
+	 * {@link ConversionMode#OFF_HEAP} the converted values are copied into a
+	 * new image outside of the Java heap, unless the image already is such an
+	 * image of the given type.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static < T extends NativeType< T > > ImgPlus< T > convert( ImgPlus image, T type, ConversionMode mode ) {
+		if ( !Listeners.enabled() )
+			return convertWithMode( image, type, mode );
+		final long start = System.nanoTime();
+		final ImgPlus< T > converted = convertWithMode( image, type, mode );
+		final long nanos = System.nanoTime() - start;
+		final Class< ? > sourceType = Util.getTypeFromInterval( image ).getClass();
+		final long pixels = Intervals.numElements( image );
+		Listeners.fire( Listeners.all(), listener -> listener.converted( sourceType, type.getClass(), mode, pixels, nanos ) );
+		return converted;
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static < T extends NativeType< T > > ImgPlus< T > convertWithMode( ImgPlus image, T type, ConversionMode mode ) {
+		if ( mode == ConversionMode.MATERIALIZE ) {
+			final ImgPlus< T > converted = PrimitiveConverter.convert( image, type );
+			if ( converted != null )
+				return converted;
+		}
+		final ImgPlus< T > converted = convert( image, type );
+		if ( mode == ConversionMode.OFF_HEAP )
+			return converted == image && OffHeapImg.unwrap( image ) != null ? converted : OffHeapImg.copyOf( converted );
+		if ( mode == ConversionMode.VIEW || converted == image )
+			return converted;
+		return Materializer.materialize( converted );
+	}
+
+	/**
+	 * Opens the image like {@link #openImage(String)} and copies its pixels
+	 * outside of the Java heap, so that large images don't add to garbage
+	 * collection pauses. Memory mapped files are copied without using the
+	 * heap, and Bio-Formats decodes straight into the off-heap image. Images
+	 * decoded by ImageJ1 or SCIFIO only use the heap until they are copied.
+	 * The {@link ImageCache} is not used.
+	 * <p>
+	 * The memory is limited by {@code -XX:MaxDirectMemorySize}. It is freed
+	 * by {@link #release(ImgPlus)}, or by the garbage collector once the image
+	 * is unreachable.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public static ImgPlus openImageOffHeap( final String path ) {
+		final ImgPlus image = dispatcher.open( path, () -> false,
+				( backend, p ) -> backend == Backend.BIOFORMATS ? openOffHeapWithBioFormats( p ) : backend.open( p ) );
+		if ( OffHeapImg.unwrap( image ) != null )
+			return image;
+		final ImgPlus copy = OffHeapImg.copyOf( image );
+		copy.getProperties().put( BACKEND_PROPERTY, getBackend( image ) );
+		return copy;
+	}
+
+	/**
+	 * Decodes a file with a single series straight into an off-heap image.
+	 * Other files are opened like {@link #openImageWithBioFormats(String)}.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	private static ImgPlus openOffHeapWithBioFormats( final String path ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			if ( reader.getSeriesCount() == 1 )
+				return new BioFormatsSeries( reader, 0 ).openOffHeap( pool, path );
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+		return openImageWithBioFormats( path );
+	}
+
+	/**
+	 * Frees the pixel data of an image returned by
+	 * {@link #openImageOffHeap(String)} or converted with
+	 * {@link ConversionMode#OFF_HEAP}. Pixels of a released image must not be
+	 * accessed anymore, doing so throws an {@link IndexOutOfBoundsException}.
+	 * <p>
+	 * Closes the file of an image returned by {@link #openImageLazy(String)},
+	 * tiles that are decoded afterwards open the file again for each tile.
+	 * Does nothing for other images.
+	 */
+	public static void release( final ImgPlus< ? > image ) {
+		final OffHeapImg< ? > img = OffHeapImg.unwrap( image );
+		if ( img != null )
+			img.release();
+		BioFormatsSeries.close( image );
 	}
 
 	/**
@@ -182,12 +812,147 @@ public class SimplifiedIO {
 	 * The method also accepts {@link ImgPlus} and stores the metadata.
 	 **/
 	public static void saveImage( RandomAccessibleInterval< ? > img, String path ) {
+		saveImage( img, path, SaveOptions.options() );
+	}
+
+	/**
+	 * Saves the specified image to the specified file path, TIFF and OME-TIFF
+	 * files can be tiled and compressed as specified by the {@link SaveOptions}.
+	 * Tiles are compressed in parallel. Resolution levels are only written to
+	 * OME-TIFF files.
+	 **/
+	public static void saveImage( RandomAccessibleInterval< ? > img, String path, SaveOptions options ) {
 		path = addTifAsDefaultExtension( path );
-		IJ.save( ImgToVirtualStack.wrap( toImgPlus( img ) ), path );
+		if ( !Listeners.enabled() ) {
+			save( img, path, options );
+			return;
+		}
+		final long start = System.nanoTime();
+		save( img, path, options );
+		final long nanos = System.nanoTime() - start;
+		final long bytes = Listeners.size( path );
+		final String saved = path;
+		Listeners.fire( Listeners.all(), listener -> listener.saved( saved, nanos, bytes ) );
+	}
+
+	private static void save( final RandomAccessibleInterval< ? > img, final String path, final SaveOptions options ) {
+		final ImgPlus< ? > imgPlus = toImgPlus( img );
+		if ( options.getResolutionLevels() > 1 && !TiffWriter.isOmeTiff( path ) )
+			throw new SimplifiedIOException( "Resolution levels are only supported for OME-TIFF files: " + path );
+		if ( ZarrImages.hasZarrExtension( path ) ) {
+			try {
+				ZarrImages.save( imgPlus, path, options );
+			}
+			catch ( IOException e ) {
+				throw new SimplifiedIOException( e );
+			}
+			return;
+		}
+		if ( TiffWriter.supports( imgPlus, path ) ) {
+			try {
+				TiffWriter.save( imgPlus, path, options );
+			}
+			catch ( IOException e ) {
+				throw new SimplifiedIOException( e );
+			}
+			return;
+		}
+		if ( options.needsTiffWriter() )
+			throw new SimplifiedIOException( "Tiles, compression and BigTIFF are only supported for TIFF files with 8 bit, 16 bit, float or RGB pixels: " + path );
+		IJ.save( ImgToVirtualStack.wrap( detach( imgPlus, path ) ), path );
+	}
+
+	/**
+	 * Copies a memory mapped image to the heap if it is mapped from the file
+	 * that is about to be overwritten in place.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static ImgPlus< ? > detach( final ImgPlus image, final String path ) {
+		if ( getBackend( image ) != Backend.MAPPED || image.getSource() == null )
+			return image;
+		try {
+			if ( !Files.exists( Paths.get( path ) ) || !Files.isSameFile( Paths.get( image.getSource() ), Paths.get( path ) ) )
+				return image;
+		}
+		catch ( IOException e ) {
+			return image;
+		}
+		return Materializer.materialize( image );
+	}
+
+	/**
+	 * Sets the executor used by the asynchronous methods that don't take an
+	 * executor. The default uses virtual threads on JDK 21 or newer, and a
+	 * pool of daemon threads otherwise.
+	 */
+	public static void setAsyncExecutor( final Executor executor ) {
+		AsyncTasks.setExecutor( executor );
+	}
+
+	/**
+	 * Opens the image like {@link #openImage(String)}, without blocking the
+	 * caller.
+	 *
+	 * @see #openImageAsync(String, Executor)
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static CompletableFuture< ImgPlus > openImageAsync( final String path ) {
+		return openImageAsync( path, AsyncTasks.executor() );
+	}
+
+	/**
+	 * Opens the image like {@link #openImage(String)} on the given executor.
+	 * Cancelling the returned future stops opening the file before the next
+	 * backend is tried.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static CompletableFuture< ImgPlus > openImageAsync( final String path, final Executor executor ) {
+		return AsyncTasks.supply( executor, cancelled -> {
+			final ImageCache cache = imageCache;
+			if ( cache == null )
+				return dispatcher.open( path, cancelled );
+			return cache.get( path, null, () -> dispatcher.open( path, cancelled ) );
+		} );
+	}
+
+	/**
+	 * Saves the image like {@link #saveImage(RandomAccessibleInterval, String)},
+	 * without blocking the caller.
+	 */
+	public static CompletableFuture< Void > saveImageAsync( final RandomAccessibleInterval< ? > img, final String path ) {
+		return saveImageAsync( img, path, SaveOptions.options(), AsyncTasks.executor() );
+	}
+
+	/**
+	 * Saves the image like
+	 * {@link #saveImage(RandomAccessibleInterval, String, SaveOptions)} on the
+	 * given executor.
+	 */
+	public static CompletableFuture< Void > saveImageAsync( final RandomAccessibleInterval< ? > img, final String path,
+			final SaveOptions options, final Executor executor ) {
+		return AsyncTasks.supply( executor, cancelled -> {
+			saveImage( img, path, options );
+			return null;
+		} );
+	}
+
+	/**
+	 * Converts the image like {@link #convert(ImgPlus, NativeType, ConversionMode)},
+	 * without blocking the caller.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static < T extends NativeType< T > > CompletableFuture< ImgPlus< T > > convertAsync( final ImgPlus image, final T type, final ConversionMode mode ) {
+		return convertAsync( image, type, mode, AsyncTasks.executor() );
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	public static < T extends NativeType< T > > CompletableFuture< ImgPlus< T > > convertAsync( final ImgPlus image, final T type, final ConversionMode mode,
+			final Executor executor ) {
+		return AsyncTasks.supply( executor, cancelled -> convert( image, type, mode ) );
 	}
 
 	@SuppressWarnings( { "unchecked", "rawtypes" } )
-	private static ImgPlus< ? > toImgPlus( RandomAccessibleInterval< ? > image ) {
+	static ImgPlus< ? > toImgPlus( RandomAccessibleInterval< ? > image ) {
 		if ( image instanceof ImgPlus )
 			return ( ImgPlus< ? > ) image;
 		if ( image instanceof Img )
@@ -242,10 +1007,4 @@ public class SimplifiedIO {
 		imgPlus.setName( image.getName() );
 		return imgPlus;
 	}
-
-	private static SCIFIO getScifio() {
-		if ( scifio == null )
-			scifio = new SCIFIO();
-		return scifio;
-	}
 }
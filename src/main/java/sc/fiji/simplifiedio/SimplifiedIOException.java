@@ -37,4 +37,13 @@ public class SimplifiedIOException extends RuntimeException
 	{
 		super( message );
 	}
+
+	/**
+	 * Creates an exception without a stack trace, for failures that are
+	 * expected and handled, like a backend that can't read a kind of file.
+	 */
+	protected SimplifiedIOException( String message, boolean writableStackTrace )
+	{
+		super( message, null, false, writableStackTrace );
+	}
 }
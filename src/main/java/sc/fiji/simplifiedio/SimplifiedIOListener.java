@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+/**
+ * Receives timings and sizes of the operations of {@link SimplifiedIO}, for
+ * monitoring. Register it with
+ * {@link SimplifiedIO#addListener(SimplifiedIOListener)}, {@link Metrics} is
+ * a ready made implementation.
+ * <p>
+ * Listeners are called synchronously, on the thread that did the operation,
+ * possibly from many threads at once. They should return quickly and
+ * should not throw exceptions, exceptions thrown by a listener are ignored.
+ * If no listener is registered, no timings are taken.
+ * All methods do nothing by default.
+ */
+public interface SimplifiedIOListener {
+
+	/**
+	 * A backend tried to open a file. Failed attempts are followed by an
+	 * attempt of the next backend.
+	 */
+	default void backendAttempted( final String path, final Backend backend, final boolean succeeded, final long nanos ) {
+		// do nothing by default
+	}
+
+	/**
+	 * A file was opened by the given backend, after {@code fallbacks} other
+	 * backends failed. The time includes the failed attempts.
+	 */
+	default void opened( final String path, final Backend backend, final int fallbacks, final long nanos, final long bytes ) {
+		// do nothing by default
+	}
+
+	/** No backend could open the file. */
+	default void openFailed( final String path, final long nanos ) {
+		// do nothing by default
+	}
+
+	/** An image was converted with {@link SimplifiedIO#convert(net.imagej.ImgPlus, net.imglib2.type.NativeType, ConversionMode)}. */
+	default void converted( final Class< ? > sourceType, final Class< ? > targetType, final ConversionMode mode, final long pixels,
+			final long nanos ) {
+		// do nothing by default
+	}
+
+	/** An image was saved, {@code bytes} is the size of the file written. */
+	default void saved( final String path, final long nanos, final long bytes ) {
+		// do nothing by default
+	}
+
+	/** The SCIFIO context, which SCIFIO needs to open files, was created. */
+	default void scifioInitialized( final long nanos ) {
+		// do nothing by default
+	}
+}
@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import loci.formats.IFormatReader;
+import net.imagej.ImgPlus;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Opens many files of the same size and pixel type as one image, with an
+ * additional axis along which the files are stacked. The target image is
+ * allocated once, files are opened in parallel and their pixels are copied
+ * into their slice of the target. Files that Bio-Formats reads are decoded
+ * directly into the planes of the target.
+ */
+final class StackOpener {
+
+	private StackOpener() {
+		// prevent instantiation of utility class
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static ImgPlus< ? > open( final List< Path > files, final AxisType axis ) {
+		if ( files.isEmpty() )
+			throw new SimplifiedIOException( "No files to stack." );
+		final ImgPlus first = SimplifiedIO.openImage( files.get( 0 ).toString() );
+		final Backend backend = SimplifiedIO.getBackend( first );
+		final int n = first.numDimensions();
+		if ( first.dimensionIndex( axis ) >= 0 )
+			throw new SimplifiedIOException( "The images already have an axis " + axis + ": " + files.get( 0 ) );
+		final Object type = Util.getTypeFromInterval( first );
+		if ( !( type instanceof NativeType ) )
+			throw new SimplifiedIOException( "Unsupported pixel type " + type.getClass().getSimpleName() + ": " + files.get( 0 ) );
+		final long[] fileDimensions = Intervals.dimensionsAsLongArray( first );
+		if ( n < 2 || fileDimensions[ 0 ] * fileDimensions[ 1 ] > Integer.MAX_VALUE )
+			throw new SimplifiedIOException( "The XY planes of the images must have at most 2^31 pixels: " + files.get( 0 ) );
+		final long[] dimensions = Arrays.copyOf( fileDimensions, n + 1 );
+		dimensions[ n ] = files.size();
+		final PlanarImg< ?, ? > target = ( PlanarImg ) new PlanarImgFactory( ( NativeType ) type ).create( dimensions );
+		final int planesPerFile = target.numSlices() / files.size();
+		Materializer.copy( Views.zeroMin( first ), ( RandomAccessibleInterval ) Views.hyperSlice( target, n, 0 ) );
+
+		final Executor executor = AsyncTasks.executor();
+		final int maxInFlight = 4 * Runtime.getRuntime().availableProcessors();
+		final Deque< CompletableFuture< Void > > inFlight = new ArrayDeque<>();
+		try {
+			for ( int k = 1; k < files.size(); k++ ) {
+				if ( inFlight.size() >= maxInFlight )
+					inFlight.poll().join();
+				final int index = k;
+				inFlight.add( CompletableFuture.runAsync( () -> {
+					final String path = files.get( index ).toString();
+					if ( backend == Backend.BIOFORMATS )
+						readWithBioFormats( path, target, index * planesPerFile, type, fileDimensions );
+					else
+						copy( SimplifiedIO.openImage( path ), target, index, type, fileDimensions, path );
+				}, executor ) );
+			}
+			while ( !inFlight.isEmpty() )
+				inFlight.poll().join();
+		}
+		catch ( final CompletionException e ) {
+			for ( final CompletableFuture< Void > future : inFlight )
+				future.cancel( false );
+			throw e.getCause() instanceof RuntimeException ? ( RuntimeException ) e.getCause() : e;
+		}
+
+		final CalibratedAxis[] axes = new CalibratedAxis[ n + 1 ];
+		for ( int d = 0; d < n; d++ )
+			axes[ d ] = first.axis( d ).copy();
+		axes[ n ] = new DefaultLinearAxis( axis );
+		final ImgPlus< ? > stack = new ImgPlus<>( target, first.getName(), axes );
+		stack.getProperties().put( SimplifiedIO.BACKEND_PROPERTY, backend );
+		return stack;
+	}
+
+	private static void readWithBioFormats( final String path, final PlanarImg< ?, ? > target, final int firstPlane, final Object type,
+			final long[] dimensions ) {
+		final ReaderPool pool = ReaderPool.shared();
+		final IFormatReader reader = pool.acquireBioFormatsReader( path );
+		try {
+			final BioFormatsSeries series = new BioFormatsSeries( reader, 0 );
+			check( series.type(), series.dimensions(), type, dimensions, path );
+			series.readPlanes( target, firstPlane );
+		} finally {
+			pool.releaseBioFormatsReader( path, reader );
+		}
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static void copy( final ImgPlus image, final PlanarImg< ?, ? > target, final int index, final Object type,
+			final long[] dimensions, final String path ) {
+		check( Util.getTypeFromInterval( image ), Intervals.dimensionsAsLongArray( image ), type, dimensions, path );
+		Materializer.copy( Views.zeroMin( image ), ( RandomAccessibleInterval ) Views.hyperSlice( target, dimensions.length, index ) );
+	}
+
+	private static void check( final Object fileType, final long[] fileDimensions, final Object type, final long[] dimensions,
+			final String path ) {
+		if ( !fileType.getClass().equals( type.getClass() ) || !Arrays.equals( fileDimensions, dimensions ) )
+			throw new SimplifiedIOException( "Image differs from the first image of the stack, it has size " +
+					Arrays.toString( fileDimensions ) + " and pixel type " + fileType.getClass().getSimpleName() + ": " + path );
+	}
+}
@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Files are saved to a temporary file next to the target, which replaces the
+ * target once it is complete. An image that is memory mapped or read lazily
+ * from the target can therefore be saved over its own file: it is read from
+ * the old file while the new one is written, and a failed save leaves the old
+ * file untouched.
+ */
+final class TemporaryFiles {
+
+	private TemporaryFiles() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Hidden path in the directory of the target, which doesn't exist yet.
+	 * Renaming it to the target doesn't cross file systems.
+	 */
+	static Path sibling( final Path target ) {
+		final Path absolute = target.toAbsolutePath();
+		Path path;
+		do
+			path = absolute.resolveSibling( "." + absolute.getFileName() + "." + Long.toHexString( ThreadLocalRandom.current().nextLong() ) + ".tmp" );
+		while ( Files.exists( path ) );
+		return path;
+	}
+
+	/**
+	 * Renames the file to the target, atomically if the file system supports
+	 * it. An existing target file is replaced.
+	 */
+	static void replace( final Path file, final Path target ) throws IOException {
+		try {
+			Files.move( file, target, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( final AtomicMoveNotSupportedException e ) {
+			Files.move( file, target, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	/**
+	 * Deletes the file, or the directory and its contents. Errors are
+	 * ignored, this is used to clean up after a failure.
+	 */
+	static void deleteQuietly( final Path path ) {
+		try (Stream< Path > files = Files.walk( path )) {
+			for ( final Path file : ( Iterable< Path > ) files.sorted( Comparator.reverseOrder() )::iterator )
+				Files.deleteIfExists( file );
+		}
+		catch ( final IOException | RuntimeException e ) {
+			// NB: ignore
+		}
+	}
+}
@@ -0,0 +1,923 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongFunction;
+import java.util.zip.Deflater;
+
+import net.imagej.ImgPlus;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Writes TIFF and OME-TIFF files. Uncompressed planes are streamed from the
+ * image cursor through a direct buffer into a {@link FileChannel}, all IFDs
+ * are written at the end of the file. BigTIFF is used if the file would be
+ * too large for classic TIFF.
+ * <p>
+ * The file is written to a {@link TemporaryFiles temporary file}, which
+ * replaces the target when the writer is closed. An image that is memory
+ * mapped from the target can be saved over its own file.
+ * <p>
+ * If {@link SaveOptions} ask for tiles or compression, the planes are split
+ * into tiles that are encoded in parallel on the executor of the options. The
+ * encoded tiles are written in order by the calling thread, at most a few
+ * tiles per core are held in memory. ImageJ1 can't read tiled TIFF files,
+ * Bio-Formats and SCIFIO can.
+ * <p>
+ * OME-TIFF files can contain sub-resolution levels. Each plane is followed by
+ * its levels, every level is computed from the previous one in parallel. The
+ * levels are written as SubIFDs of the plane, as Bio-Formats expects.
+ * <p>
+ * 8 and 16 bit unsigned integer, 32 bit float and RGB images are supported.
+ * The axes are written as ImageJ hyperstack description, or as OME-XML for
+ * files ending with ".ome.tif".
+ */
+class TiffWriter implements Closeable {
+
+	/** Largest file offset of classic TIFF. */
+	static final long CLASSIC_TIFF_LIMIT = 0xFFFF_FFFFL;
+
+	private static final int CLASSIC_HEADER_SIZE = 8;
+
+	/** Number of entries of the largest IFD written by {@link #ifd(int, long[][], boolean)}, with SubIFDs. */
+	private static final int MAX_IFD_ENTRIES = 18;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	static final int NEW_SUBFILE_TYPE = 254, IMAGE_WIDTH = 256, IMAGE_LENGTH = 257, BITS_PER_SAMPLE = 258,
+			COMPRESSION = 259, PHOTOMETRIC_INTERPRETATION = 262, IMAGE_DESCRIPTION = 270, STRIP_OFFSETS = 273,
+			SAMPLES_PER_PIXEL = 277, ROWS_PER_STRIP = 278, STRIP_BYTE_COUNTS = 279, X_RESOLUTION = 282,
+			Y_RESOLUTION = 283, PLANAR_CONFIGURATION = 284, RESOLUTION_UNIT = 296, TILE_WIDTH = 322, TILE_LENGTH = 323,
+			TILE_OFFSETS = 324, TILE_BYTE_COUNTS = 325, SUB_IFDS = 330, SAMPLE_FORMAT = 339;
+
+	static final int ASCII = 2, SHORT = 3, LONG = 4, RATIONAL = 5, LONG8 = 16;
+
+	/** The pixel types this writer supports. */
+	enum PixelKind {
+		UINT8( 8, 1, 1 ), UINT16( 16, 1, 1 ), FLOAT32( 32, 3, 1 ), RGB( 8, 1, 3 );
+
+		final int bitsPerSample;
+
+		final int sampleFormat;
+
+		final int samplesPerPixel;
+
+		PixelKind( final int bitsPerSample, final int sampleFormat, final int samplesPerPixel ) {
+			this.bitsPerSample = bitsPerSample;
+			this.sampleFormat = sampleFormat;
+			this.samplesPerPixel = samplesPerPixel;
+		}
+
+		int bytesPerPixel() {
+			return bitsPerSample / 8 * samplesPerPixel;
+		}
+
+		String omeType() {
+			return this == UINT16 ? "uint16" : this == FLOAT32 ? "float" : "uint8";
+		}
+
+		static PixelKind of( final Object type ) {
+			final Class< ? > c = type.getClass();
+			if ( c == UnsignedByteType.class )
+				return UINT8;
+			if ( c == UnsignedShortType.class )
+				return UINT16;
+			if ( c == FloatType.class )
+				return FLOAT32;
+			if ( c == ARGBType.class )
+				return RGB;
+			return null;
+		}
+	}
+
+	private static final ThreadLocal< LzwEncoder > LZW = ThreadLocal.withInitial( LzwEncoder::new );
+
+	private static final ThreadLocal< Deflater > DEFLATER = ThreadLocal.withInitial( Deflater::new );
+
+	private final Path path;
+
+	/** The file being written, renamed to the path once it is complete. */
+	private final Path temp;
+
+	private final FileChannel channel;
+
+	private final boolean bigTiff;
+
+	private final PixelKind kind;
+
+	private final int width, height;
+
+	private final SaveOptions.Compression compression;
+
+	private final int tileSize;
+
+	private final SaveOptions options;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+
+	/** File offsets and byte counts of the strip or tiles of each plane. */
+	private final List< long[][] > planes = new ArrayList<>();
+
+	/** For each level below full resolution, the tiles of each plane. */
+	private final List< List< long[][] > > subResolutions = new ArrayList<>();
+
+	private String description;
+
+	private double pixelWidth = 1, pixelHeight = 1;
+
+	TiffWriter( final Path path, final PixelKind kind, final int width, final int height, final boolean bigTiff ) throws IOException {
+		this( path, kind, width, height, bigTiff, SaveOptions.options() );
+	}
+
+	TiffWriter( final Path path, final PixelKind kind, final int width, final int height, final boolean bigTiff,
+			final SaveOptions options ) throws IOException {
+		this.options = options;
+		this.compression = options.getCompression();
+		this.tileSize = options.getTileSize();
+		this.path = path;
+		this.temp = TemporaryFiles.sibling( path );
+		this.channel = FileChannel.open( temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+		this.kind = kind;
+		this.width = width;
+		this.height = height;
+		this.bigTiff = bigTiff;
+		for ( int level = 1; level < options.getResolutionLevels(); level++ )
+			subResolutions.add( new ArrayList<>() );
+		final ByteBuffer header = ByteBuffer.allocate( bigTiff ? 16 : 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		header.put( ( byte ) 'I' ).put( ( byte ) 'I' );
+		if ( bigTiff )
+			header.putShort( ( short ) 43 ).putShort( ( short ) 8 ).putShort( ( short ) 0 ).putLong( 0 );
+		else
+			header.putShort( ( short ) 42 ).putInt( 0 );
+		header.flip();
+		writeFully( header );
+	}
+
+	/**
+	 * Returns true if the image can be saved by this writer to the given path.
+	 */
+	static boolean supports( final ImgPlus< ? > image, final String path ) {
+		final String lower = path.toLowerCase( Locale.ROOT );
+		return ( lower.endsWith( ".tif" ) || lower.endsWith( ".tiff" ) || lower.endsWith( ".btf" ) ) &&
+				PixelKind.of( Util.getTypeFromInterval( image ) ) != null &&
+				HyperstackLayout.of( image ) != null &&
+				image.dimension( 0 ) <= Integer.MAX_VALUE && image.dimension( 1 ) <= Integer.MAX_VALUE;
+	}
+
+	static boolean isOmeTiff( final String path ) {
+		final String lower = path.toLowerCase( Locale.ROOT );
+		return lower.endsWith( ".ome.tif" ) || lower.endsWith( ".ome.tiff" ) || lower.endsWith( ".ome.btf" );
+	}
+
+	/**
+	 * Saves the image, which must be {@link #supports(ImgPlus, String)
+	 * supported}.
+	 */
+	static < T > void save( final ImgPlus< T > image, final String path, final SaveOptions options ) throws IOException {
+		final HyperstackLayout< T > layout = HyperstackLayout.of( image );
+		final PixelKind kind = PixelKind.of( Util.getTypeFromInterval( image ) );
+		final int width = ( int ) layout.size( HyperstackLayout.X );
+		final int height = ( int ) layout.size( HyperstackLayout.Y );
+		final String description = isOmeTiff( path ) ? omeXml( layout, kind ) : imageJDescription( layout );
+		final boolean bigTiff = options.isBigTiff() || estimatedSize( layout, kind, options, description ) > CLASSIC_TIFF_LIMIT;
+		final TiffWriter writer = new TiffWriter( Paths.get( path ), kind, width, height, bigTiff, options );
+		try {
+			writer.setPixelSize( layout.scale( HyperstackLayout.X ), layout.scale( HyperstackLayout.Y ) );
+			writer.setDescription( description );
+			writer.writeHyperstack( layout );
+		}
+		catch ( final Throwable t ) {
+			writer.discard();
+			throw t;
+		}
+		writer.close();
+	}
+
+	/**
+	 * Upper bound of the size of a classic TIFF file with the planes of the
+	 * layout and the given description: the header, the pixels including
+	 * padding of the tiles, sub-resolution levels and the growth of
+	 * incompressible data by compression, and the IFDs of all planes and
+	 * levels.
+	 */
+	static long estimatedSize( final HyperstackLayout< ? > layout, final PixelKind kind, final SaveOptions options, final String description ) {
+		final long width = layout.size( HyperstackLayout.X );
+		final long height = layout.size( HyperstackLayout.Y );
+		return CLASSIC_HEADER_SIZE + descriptionSize( description ) +
+				layout.numPlanes() * ( maxPixelSize( width, height, kind, options ) + maxIfdSize( width, height, options ) );
+	}
+
+	/**
+	 * Upper bound of the size of the file if the planes of the layout are
+	 * appended, and the writer is then closed with the given description. The
+	 * IFDs of the planes written so far are included. Only meaningful for
+	 * classic TIFF.
+	 */
+	long estimatedSize( final HyperstackLayout< ? > layout, final String description ) throws IOException {
+		final long planeSize = maxPixelSize( width, height, kind, options ) + maxIfdSize( width, height, options );
+		return channel.position() + planes.size() * maxIfdSize( width, height, options ) + layout.numPlanes() * planeSize +
+				descriptionSize( description );
+	}
+
+	/** Upper bound of the number of bytes of the strips or tiles of a plane and its sub-resolution levels. */
+	private static long maxPixelSize( final long width, final long height, final PixelKind kind, final SaveOptions options ) {
+		long size = 0;
+		for ( int level = 0; level < options.getResolutionLevels(); level++ )
+			size += maxLevelSize( ceil( width, 1L << level ), ceil( height, 1L << level ), kind, options );
+		return size;
+	}
+
+	/**
+	 * Upper bound of the number of bytes of the classic TIFF IFDs of a plane
+	 * and its sub-resolution levels, without the description.
+	 */
+	private static long maxIfdSize( final long width, final long height, final SaveOptions options ) {
+		final int levels = options.getResolutionLevels();
+		// NB: The IFD of the plane points to the IFDs of its levels.
+		long size = levels > 1 ? 4L * levels : 0;
+		for ( int level = 0; level < levels; level++ ) {
+			final long tiles = numTiles( ceil( width, 1L << level ), ceil( height, 1L << level ), options );
+			// NB: Count, entries and next offset, bits per sample, sample format and resolutions stored behind the
+			// entries, the offsets and byte counts of the tiles, and alignment.
+			size += 2 + 12 * MAX_IFD_ENTRIES + 4 + 32 + 8 * tiles + 2;
+		}
+		return size;
+	}
+
+	private static long descriptionSize( final String description ) {
+		// NB: Characters that aren't ASCII are written as one byte, the text ends with a zero byte.
+		return description == null ? 0 : align( description.length() + 1 );
+	}
+
+	private static long numTiles( final long width, final long height, final SaveOptions options ) {
+		final int tile = options.getTileSize();
+		return tile == 0 ? 1 : ceil( width, tile ) * ceil( height, tile );
+	}
+
+	/** Upper bound of the number of bytes of the strip or tiles of a plane at one level. */
+	private static long maxLevelSize( final long width, final long height, final PixelKind kind, final SaveOptions options ) {
+		final int tile = options.getTileSize();
+		final long tiles = numTiles( width, height, options );
+		final long raw = ( tile == 0 ? width * height : tiles * tile * tile ) * kind.bytesPerPixel();
+		switch ( options.getCompression() ) {
+		case LZW:
+			// NB: A code has at most 12 bits and encodes at least one byte, plus clear codes.
+			return raw + raw / 2 + raw / 1024 + 8 * tiles;
+		case DEFLATE:
+			// NB: The bound of zlib for incompressible data.
+			return raw + ( raw >> 12 ) + ( raw >> 14 ) + 64 * tiles;
+		default:
+			return raw;
+		}
+	}
+
+	/**
+	 * Appends all planes of the layout, and their sub-resolution levels if
+	 * the options ask for a pyramid.
+	 */
+	< T > void writeHyperstack( final HyperstackLayout< T > layout ) throws IOException {
+		if ( options.getResolutionLevels() == 1 ) {
+			writePlanes( layout.numPlanes(), layout::plane );
+			return;
+		}
+		for ( long i = 0; i < layout.numPlanes(); i++ ) {
+			final RandomAccessibleInterval< T > plane = layout.plane( i );
+			writePlanes( 1, index -> plane );
+			RandomAccessibleInterval< T > level = plane;
+			for ( int l = 1; l < options.getResolutionLevels(); l++ ) {
+				level = Downsampler.halve( level );
+				writeSubResolution( l, level );
+			}
+		}
+	}
+
+	private static long ceil( final long size, final long tile ) {
+		return ( size + tile - 1 ) / tile;
+	}
+
+	/** ImageJ hyperstack description, as written by ImageJ1 itself. */
+	static String imageJDescription( final HyperstackLayout< ? > layout ) {
+		final StringBuilder text = new StringBuilder( "ImageJ=1.54f\n" );
+		text.append( "images=" ).append( layout.numPlanes() ).append( '\n' );
+		if ( layout.hasAxis( HyperstackLayout.C ) )
+			text.append( "channels=" ).append( layout.size( HyperstackLayout.C ) ).append( '\n' );
+		if ( layout.hasAxis( HyperstackLayout.Z ) )
+			text.append( "slices=" ).append( layout.size( HyperstackLayout.Z ) ).append( '\n' );
+		if ( layout.hasAxis( HyperstackLayout.T ) )
+			text.append( "frames=" ).append( layout.size( HyperstackLayout.T ) ).append( '\n' );
+		if ( layout.numPlanes() > 1 )
+			text.append( "hyperstack=true\n" );
+		final String unit = imageJUnit( layout.unit( HyperstackLayout.X ) );
+		if ( unit != null )
+			text.append( "unit=" ).append( unit ).append( '\n' );
+		if ( layout.hasAxis( HyperstackLayout.Z ) )
+			text.append( "spacing=" ).append( layout.scale( HyperstackLayout.Z ) ).append( '\n' );
+		if ( layout.hasAxis( HyperstackLayout.T ) )
+			text.append( "finterval=" ).append( layout.scale( HyperstackLayout.T ) ).append( '\n' );
+		text.append( "loop=false\n" );
+		return text.toString();
+	}
+
+	private static String imageJUnit( final String unit ) {
+		if ( unit == null || unit.isEmpty() )
+			return null;
+		if ( unit.equals( "\u00b5m" ) || unit.equals( "um" ) || unit.equals( "micron" ) )
+			return "micron";
+		// NB: The description must be ASCII.
+		for ( int i = 0; i < unit.length(); i++ )
+			if ( unit.charAt( i ) > 127 || unit.charAt( i ) < 32 )
+				return null;
+		return unit;
+	}
+
+	/**
+	 * Minimal OME-XML describing the planes in XYCZT order, all planes are
+	 * stored in this file.
+	 */
+	static String omeXml( final HyperstackLayout< ? > layout, final PixelKind kind ) {
+		final long sizeC = layout.size( HyperstackLayout.C );
+		final StringBuilder xml = new StringBuilder();
+		xml.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" );
+		xml.append( "<OME xmlns=\"http://www.openmicroscopy.org/Schemas/OME/2016-06\">" );
+		xml.append( "<Image ID=\"Image:0\" Name=\"" ).append( escape( layout.image().getName() ) ).append( "\">" );
+		xml.append( "<Pixels ID=\"Pixels:0\" DimensionOrder=\"XYCZT\" Type=\"" ).append( kind.omeType() ).append( '"' );
+		xml.append( " SizeX=\"" ).append( layout.size( HyperstackLayout.X ) ).append( '"' );
+		xml.append( " SizeY=\"" ).append( layout.size( HyperstackLayout.Y ) ).append( '"' );
+		xml.append( " SizeC=\"" ).append( sizeC * kind.samplesPerPixel ).append( '"' );
+		xml.append( " SizeZ=\"" ).append( layout.size( HyperstackLayout.Z ) ).append( '"' );
+		xml.append( " SizeT=\"" ).append( layout.size( HyperstackLayout.T ) ).append( '"' );
+		if ( kind == PixelKind.RGB )
+			xml.append( " Interleaved=\"true\"" );
+		appendPhysicalSize( xml, "PhysicalSizeX", layout, HyperstackLayout.X );
+		appendPhysicalSize( xml, "PhysicalSizeY", layout, HyperstackLayout.Y );
+		appendPhysicalSize( xml, "PhysicalSizeZ", layout, HyperstackLayout.Z );
+		xml.append( '>' );
+		for ( long c = 0; c < sizeC; c++ )
+			xml.append( "<Channel ID=\"Channel:0:" ).append( c ).append( "\" SamplesPerPixel=\"" ).append( kind.samplesPerPixel ).append( "\"/>" );
+		xml.append( "<TiffData PlaneCount=\"" ).append( layout.numPlanes() ).append( "\"/>" );
+		xml.append( "</Pixels></Image></OME>" );
+		return xml.toString();
+	}
+
+	private static void appendPhysicalSize( final StringBuilder xml, final String attribute, final HyperstackLayout< ? > layout, final int which ) {
+		final String unit = omeUnit( layout.unit( which ) );
+		final double scale = layout.scale( which );
+		if ( !layout.hasAxis( which ) || unit == null || !( scale > 0 ) || Double.isInfinite( scale ) )
+			return;
+		xml.append( ' ' ).append( attribute ).append( "=\"" ).append( scale ).append( '"' );
+		xml.append( ' ' ).append( attribute ).append( "Unit=\"" ).append( unit ).append( '"' );
+	}
+
+	private static String omeUnit( final String unit ) {
+		if ( unit == null )
+			return null;
+		switch ( unit ) {
+		case "\u00b5m":
+		case "um":
+		case "micron":
+		case "microns":
+			return "&#181;m";
+		case "nm":
+		case "mm":
+		case "cm":
+		case "m":
+			return unit;
+		default:
+			return null;
+		}
+	}
+
+	private static String escape( final String text ) {
+		if ( text == null )
+			return "";
+		final StringBuilder escaped = new StringBuilder();
+		for ( final char c : text.toCharArray() ) {
+			if ( c == '<' )
+				escaped.append( "&lt;" );
+			else if ( c == '>' )
+				escaped.append( "&gt;" );
+			else if ( c == '&' )
+				escaped.append( "&amp;" );
+			else if ( c == '"' )
+				escaped.append( "&quot;" );
+			else if ( c > 127 || c < 32 )
+				escaped.append( "&#" ).append( ( int ) c ).append( ';' );
+			else
+				escaped.append( c );
+		}
+		return escaped.toString();
+	}
+
+	/** Sets the text that is written as ImageDescription of the first IFD. */
+	void setDescription( final String description ) {
+		this.description = description;
+	}
+
+	void setPixelSize( final double pixelWidth, final double pixelHeight ) {
+		this.pixelWidth = pixelWidth;
+		this.pixelHeight = pixelHeight;
+	}
+
+	int numPlanes() {
+		return planes.size();
+	}
+
+	/** Appends the planes with index 0 to count - 1. */
+	void writePlanes( final long count, final LongFunction< ? extends RandomAccessibleInterval< ? > > planes ) throws IOException {
+		if ( tileSize == 0 ) {
+			for ( long i = 0; i < count; i++ )
+				writePlane( planes.apply( i ) );
+			return;
+		}
+		writeTiles( width, height, count, planes, this.planes );
+	}
+
+	/**
+	 * Appends a sub-resolution level of the plane that was written last. The
+	 * level must have the size of the plane, divided by 2<sup>level</sup> and
+	 * rounded up.
+	 */
+	void writeSubResolution( final int level, final RandomAccessibleInterval< ? > image ) throws IOException {
+		writeTiles( levelSize( width, level ), levelSize( height, level ), 1, i -> image, subResolutions.get( level - 1 ) );
+	}
+
+	private static int levelSize( final int size, final int level ) {
+		return ( int ) ceil( size, 1L << level );
+	}
+
+	private void writeTiles( final int width, final int height, final long count,
+			final LongFunction< ? extends RandomAccessibleInterval< ? > > planes, final List< long[][] > target ) throws IOException {
+		final int tilesAcross = ( int ) ceil( width, tileSize );
+		final int tilesPerPlane = tilesAcross * ( int ) ceil( height, tileSize );
+		final long numTiles = count * tilesPerPlane;
+		final int window = 4 * Runtime.getRuntime().availableProcessors();
+		final Deque< CompletableFuture< byte[] > > pending = new ArrayDeque<>();
+		long submitted = 0;
+		RandomAccessibleInterval< ? > plane = null;
+		long[][] offsets = null;
+		try {
+			for ( long i = 0; i < numTiles; i++ ) {
+				while ( submitted < numTiles && pending.size() < window ) {
+					final int tile = ( int ) ( submitted % tilesPerPlane );
+					if ( tile == 0 )
+						plane = planes.apply( submitted / tilesPerPlane );
+					final RandomAccessibleInterval< ? > p = plane;
+					pending.add( CompletableFuture.supplyAsync( () -> encodeTile( p, width, height, tile % tilesAcross, tile / tilesAcross ),
+							options.getExecutor() ) );
+					submitted++;
+				}
+				final byte[] bytes = pending.poll().join();
+				final int tile = ( int ) ( i % tilesPerPlane );
+				if ( tile == 0 )
+					offsets = new long[][] { new long[ tilesPerPlane ], new long[ tilesPerPlane ] };
+				checkOffset( channel.position() + bytes.length );
+				offsets[ 0 ][ tile ] = channel.position();
+				offsets[ 1 ][ tile ] = bytes.length;
+				writeFully( ByteBuffer.wrap( bytes ) );
+				// NB: A plane is only added once it is complete, the IFDs never point to missing tiles.
+				if ( tile == tilesPerPlane - 1 )
+					target.add( offsets );
+			}
+		}
+		catch ( final CompletionException e ) {
+			throw e.getCause() instanceof RuntimeException ? ( RuntimeException ) e.getCause() : e;
+		}
+		finally {
+			for ( final CompletableFuture< byte[] > future : pending )
+				future.cancel( false );
+		}
+	}
+
+	/** Reads a tile of the plane, padded with zeros, and compresses it. */
+	private byte[] encodeTile( final RandomAccessibleInterval< ? > plane, final int width, final int height, final int tileX, final int tileY ) {
+		final int bytesPerPixel = kind.bytesPerPixel();
+		final int w = Math.min( tileSize, width - tileX * tileSize );
+		final int h = Math.min( tileSize, height - tileY * tileSize );
+		// NB: Uncompressed tiles are written as they are, only buffers of compressed tiles are reused.
+		final boolean pooled = compression != SaveOptions.Compression.NONE;
+		final byte[] raw = pooled ? BufferPool.take( tileSize * tileSize * bytesPerPixel ) : new byte[ tileSize * tileSize * bytesPerPixel ];
+		if ( pooled && ( w < tileSize || h < tileSize ) )
+			Arrays.fill( raw, ( byte ) 0 );
+		final ByteBuffer out = ByteBuffer.wrap( raw ).order( ByteOrder.LITTLE_ENDIAN );
+		final long x = plane.min( 0 ) + ( long ) tileX * tileSize;
+		final long y = plane.min( 1 ) + ( long ) tileY * tileSize;
+		final RandomAccessibleInterval< ? > region = Views.interval( plane, new long[] { x, y }, new long[] { x + w - 1, y + h - 1 } );
+		final Cursor< ? > cursor = Views.flatIterable( region ).cursor();
+		for ( int row = 0; row < h; row++ ) {
+			out.position( row * tileSize * bytesPerPixel );
+			putPixels( cursor, out, w );
+		}
+		if ( !pooled )
+			return raw;
+		final byte[] compressed = compress( raw );
+		BufferPool.give( raw );
+		return compressed;
+	}
+
+	private void putPixels( final Cursor< ? > cursor, final ByteBuffer out, final int count ) {
+		switch ( kind ) {
+		case UINT8:
+			for ( int i = 0; i < count; i++ )
+				out.put( ( byte ) ( ( UnsignedByteType ) cursor.next() ).get() );
+			break;
+		case UINT16:
+			for ( int i = 0; i < count; i++ )
+				out.putShort( ( short ) ( ( UnsignedShortType ) cursor.next() ).get() );
+			break;
+		case FLOAT32:
+			for ( int i = 0; i < count; i++ )
+				out.putFloat( ( ( FloatType ) cursor.next() ).get() );
+			break;
+		case RGB:
+			for ( int i = 0; i < count; i++ ) {
+				final int argb = ( ( ARGBType ) cursor.next() ).get();
+				out.put( ( byte ) ARGBType.red( argb ) ).put( ( byte ) ARGBType.green( argb ) ).put( ( byte ) ARGBType.blue( argb ) );
+			}
+			break;
+		}
+	}
+
+	private byte[] compress( final byte[] raw ) {
+		switch ( compression ) {
+		case LZW:
+			return LZW.get().encode( raw );
+		case DEFLATE: {
+			final Deflater deflater = DEFLATER.get();
+			deflater.reset();
+			deflater.setInput( raw );
+			deflater.finish();
+			// NB: Large enough for incompressible data, so that the pooled buffer rarely grows.
+			byte[] out = BufferPool.take( raw.length + ( raw.length >> 12 ) + ( raw.length >> 14 ) + 64 );
+			int length = 0;
+			while ( !deflater.finished() ) {
+				if ( length == out.length )
+					out = Arrays.copyOf( out, out.length * 2 );
+				length += deflater.deflate( out, length, out.length - length );
+			}
+			final byte[] compressed = Arrays.copyOf( out, length );
+			BufferPool.give( out );
+			return compressed;
+		}
+		default:
+			return raw;
+		}
+	}
+
+	/** Appends a plane, X must be dimension zero. */
+	void writePlane( final RandomAccessibleInterval< ? > plane ) throws IOException {
+		if ( tileSize > 0 ) {
+			writePlanes( 1, i -> plane );
+			return;
+		}
+		final long offset = channel.position();
+		checkOffset( offset + ( long ) width * height * kind.bytesPerPixel() );
+		final Cursor< ? > cursor = Views.flatIterable( plane ).cursor();
+		switch ( kind ) {
+		case UINT8:
+			while ( cursor.hasNext() ) {
+				ensureRemaining( 1 );
+				buffer.put( ( byte ) ( ( UnsignedByteType ) cursor.next() ).get() );
+			}
+			break;
+		case UINT16:
+			while ( cursor.hasNext() ) {
+				ensureRemaining( 2 );
+				buffer.putShort( ( short ) ( ( UnsignedShortType ) cursor.next() ).get() );
+			}
+			break;
+		case FLOAT32:
+			while ( cursor.hasNext() ) {
+				ensureRemaining( 4 );
+				buffer.putFloat( ( ( FloatType ) cursor.next() ).get() );
+			}
+			break;
+		case RGB:
+			while ( cursor.hasNext() ) {
+				ensureRemaining( 3 );
+				final int argb = ( ( ARGBType ) cursor.next() ).get();
+				buffer.put( ( byte ) ARGBType.red( argb ) ).put( ( byte ) ARGBType.green( argb ) ).put( ( byte ) ARGBType.blue( argb ) );
+			}
+			break;
+		}
+		flush();
+		planes.add( new long[][] { { offset }, { channel.position() - offset } } );
+	}
+
+	/**
+	 * Writes the IFDs and the header, and replaces the target file. Does
+	 * nothing if the writer was {@link #discard() discarded}.
+	 */
+	@Override
+	public void close() throws IOException {
+		if ( !channel.isOpen() )
+			return;
+		boolean committed = false;
+		try {
+			writeIfds();
+			channel.close();
+			TemporaryFiles.replace( temp, path );
+			committed = true;
+		}
+		finally {
+			if ( !committed )
+				discard();
+		}
+	}
+
+	/** Closes the writer and deletes the incomplete file, the target is left untouched. */
+	void discard() {
+		try {
+			channel.close();
+		}
+		catch ( final IOException e ) {
+			// NB: ignore
+		}
+		TemporaryFiles.deleteQuietly( temp );
+	}
+
+	private void writeIfds() throws IOException {
+		long position = align( channel.position() );
+		// NB: The sub-resolution IFDs come first, the plane IFDs point to them.
+		final long[][] subIfds = new long[ planes.size() ][ subResolutions.size() ];
+		for ( int i = 0; i < planes.size(); i++ ) {
+			for ( int level = 1; level <= subResolutions.size(); level++ ) {
+				final Ifd ifd = ifd( level, subResolutions.get( level - 1 ).get( i ), false );
+				subIfds[ i ][ level - 1 ] = position;
+				checkOffset( position + ifd.size( bigTiff ) );
+				channel.position( position );
+				writeFully( ifd.encode( position, 0, bigTiff ) );
+				position = align( position + ifd.size( bigTiff ) );
+			}
+		}
+		final long firstIfd = position;
+		for ( int i = 0; i < planes.size(); i++ ) {
+			final Ifd ifd = ifd( 0, planes.get( i ), i == 0 );
+			if ( subIfds[ i ].length > 0 )
+				ifd.add( SUB_IFDS, bigTiff ? LONG8 : LONG, subIfds[ i ] );
+			final long next = i + 1 < planes.size() ? position + ifd.size( bigTiff ) : 0;
+			checkOffset( position + ifd.size( bigTiff ) );
+			final ByteBuffer bytes = ifd.encode( position, next, bigTiff );
+			channel.position( position );
+			writeFully( bytes );
+			position = next;
+		}
+		final ByteBuffer offset = ByteBuffer.allocate( 8 ).order( ByteOrder.LITTLE_ENDIAN );
+		if ( bigTiff )
+			offset.putLong( planes.isEmpty() ? 0 : firstIfd );
+		else
+			offset.putInt( ( int ) ( planes.isEmpty() ? 0 : firstIfd ) );
+		offset.flip();
+		channel.position( bigTiff ? 8 : 4 );
+		writeFully( offset );
+	}
+
+	/**
+	 * IFD of a plane at the given resolution level, with the description if
+	 * it is the first plane.
+	 */
+	private Ifd ifd( final int level, final long[][] offsets, final boolean first ) {
+		final Ifd ifd = new Ifd();
+		if ( level > 0 )
+			ifd.add( NEW_SUBFILE_TYPE, LONG, 1 );
+		final int height = levelSize( this.height, level );
+		ifd.add( IMAGE_WIDTH, LONG, levelSize( width, level ) );
+		ifd.add( IMAGE_LENGTH, LONG, height );
+		ifd.add( BITS_PER_SAMPLE, SHORT, repeat( kind.bitsPerSample, kind.samplesPerPixel ) );
+		ifd.add( COMPRESSION, SHORT, compression.tiffCode() );
+		ifd.add( PHOTOMETRIC_INTERPRETATION, SHORT, kind == PixelKind.RGB ? 2 : 1 );
+		if ( first && description != null )
+			ifd.addAscii( IMAGE_DESCRIPTION, description );
+		final int offsetType = bigTiff ? LONG8 : LONG;
+		if ( tileSize == 0 ) {
+			ifd.add( STRIP_OFFSETS, offsetType, offsets[ 0 ] );
+			ifd.add( ROWS_PER_STRIP, LONG, height );
+			ifd.add( STRIP_BYTE_COUNTS, offsetType, offsets[ 1 ] );
+		}
+		else {
+			ifd.add( TILE_WIDTH, LONG, tileSize );
+			ifd.add( TILE_LENGTH, LONG, tileSize );
+			ifd.add( TILE_OFFSETS, offsetType, offsets[ 0 ] );
+			ifd.add( TILE_BYTE_COUNTS, offsetType, offsets[ 1 ] );
+		}
+		ifd.add( SAMPLES_PER_PIXEL, SHORT, kind.samplesPerPixel );
+		ifd.add( X_RESOLUTION, RATIONAL, rational( 1 / ( pixelWidth * ( 1 << level ) ) ) );
+		ifd.add( Y_RESOLUTION, RATIONAL, rational( 1 / ( pixelHeight * ( 1 << level ) ) ) );
+		ifd.add( PLANAR_CONFIGURATION, SHORT, 1 );
+		ifd.add( RESOLUTION_UNIT, SHORT, 1 );
+		ifd.add( SAMPLE_FORMAT, SHORT, repeat( kind.sampleFormat, kind.samplesPerPixel ) );
+		return ifd;
+	}
+
+	private void ensureRemaining( final int bytes ) throws IOException {
+		if ( buffer.remaining() < bytes )
+			flush();
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		writeFully( buffer );
+		buffer.clear();
+	}
+
+	private void writeFully( final ByteBuffer bytes ) throws IOException {
+		while ( bytes.hasRemaining() )
+			channel.write( bytes );
+	}
+
+	/**
+	 * Fails if data that ends at the given file position can't be addressed
+	 * by the 32 bit offsets of classic TIFF.
+	 */
+	private void checkOffset( final long end ) {
+		if ( !bigTiff && end > CLASSIC_TIFF_LIMIT )
+			throw new SimplifiedIOException( "The file grows too large for classic TIFF, use SaveOptions.bigTiff( true ): " + path );
+	}
+
+	private static long align( final long position ) {
+		return ( position + 1 ) & ~1L;
+	}
+
+	private static long[] repeat( final long value, final int count ) {
+		final long[] values = new long[ count ];
+		Arrays.fill( values, value );
+		return values;
+	}
+
+	/** Numerator and denominator approximating the given value. */
+	static long[] rational( final double value ) {
+		if ( !( value > 0 ) || Double.isInfinite( value ) )
+			return new long[] { 1, 1 };
+		long denominator = 1_000_000;
+		while ( denominator > 1 && value * denominator > 0xFFFF_FFFFL )
+			denominator /= 10;
+		return new long[] { Math.min( 0xFFFF_FFFFL, Math.max( 1, Math.round( value * denominator ) ) ), denominator };
+	}
+
+	/**
+	 * An image file directory. Entries are sorted by tag when encoded, values
+	 * that don't fit into an entry are stored right behind the entries.
+	 */
+	static class Ifd {
+
+		private final List< Entry > entries = new ArrayList<>();
+
+		void add( final int tag, final int type, final long... values ) {
+			entries.add( new Entry( tag, type, type == RATIONAL ? values.length / 2 : values.length, values, null ) );
+		}
+
+		void addAscii( final int tag, final String text ) {
+			final byte[] bytes = ( text + '\0' ).getBytes( StandardCharsets.US_ASCII );
+			entries.add( new Entry( tag, ASCII, bytes.length, null, bytes ) );
+		}
+
+		/** Total size in bytes, including values stored behind the entries. */
+		long size( final boolean bigTiff ) {
+			long size = headerSize( bigTiff );
+			for ( final Entry entry : entries )
+				if ( entry.valueSize() > inlineSize( bigTiff ) )
+					size += align( entry.valueSize() );
+			return size;
+		}
+
+		private long headerSize( final boolean bigTiff ) {
+			return bigTiff ? 8 + 20L * entries.size() + 8 : 2 + 12L * entries.size() + 4;
+		}
+
+		ByteBuffer encode( final long position, final long nextIfd, final boolean bigTiff ) {
+			entries.sort( Comparator.comparingInt( entry -> entry.tag ) );
+			final ByteBuffer bytes = ByteBuffer.allocate( ( int ) size( bigTiff ) ).order( ByteOrder.LITTLE_ENDIAN );
+			long extra = position + headerSize( bigTiff );
+			final ByteBuffer extraBytes = bytes.duplicate().order( ByteOrder.LITTLE_ENDIAN );
+			extraBytes.position( ( int ) headerSize( bigTiff ) );
+			if ( bigTiff )
+				bytes.putLong( entries.size() );
+			else
+				bytes.putShort( ( short ) entries.size() );
+			for ( final Entry entry : entries ) {
+				bytes.putShort( ( short ) entry.tag ).putShort( ( short ) entry.type );
+				if ( bigTiff )
+					bytes.putLong( entry.count );
+				else
+					bytes.putInt( ( int ) entry.count );
+				final int inline = inlineSize( bigTiff );
+				if ( entry.valueSize() <= inline ) {
+					final int start = bytes.position();
+					entry.writeValues( bytes );
+					bytes.position( start + inline );
+				} else {
+					if ( bigTiff )
+						bytes.putLong( extra );
+					else
+						bytes.putInt( ( int ) extra );
+					final int start = extraBytes.position();
+					entry.writeValues( extraBytes );
+					extraBytes.position( ( int ) ( start + align( entry.valueSize() ) ) );
+					extra += align( entry.valueSize() );
+				}
+			}
+			if ( bigTiff )
+				bytes.putLong( nextIfd );
+			else
+				bytes.putInt( ( int ) nextIfd );
+			bytes.position( 0 );
+			return bytes;
+		}
+
+		private static int inlineSize( final boolean bigTiff ) {
+			return bigTiff ? 8 : 4;
+		}
+	}
+
+	private static class Entry {
+
+		private final int tag;
+
+		private final int type;
+
+		private final long count;
+
+		private final long[] values;
+
+		private final byte[] bytes;
+
+		Entry( final int tag, final int type, final long count, final long[] values, final byte[] bytes ) {
+			this.tag = tag;
+			this.type = type;
+			this.count = count;
+			this.values = values;
+			this.bytes = bytes;
+		}
+
+		long valueSize() {
+			switch ( type ) {
+			case ASCII:
+				return count;
+			case SHORT:
+				return 2 * count;
+			case LONG:
+				return 4 * count;
+			default:
+				return 8 * count;
+			}
+		}
+
+		void writeValues( final ByteBuffer buffer ) {
+			if ( type == ASCII ) {
+				buffer.put( bytes );
+				return;
+			}
+			for ( final long value : values ) {
+				if ( type == SHORT )
+					buffer.putShort( ( short ) value );
+				else if ( type == LONG8 )
+					buffer.putLong( value );
+				else
+					buffer.putInt( ( int ) value );
+			}
+		}
+	}
+}
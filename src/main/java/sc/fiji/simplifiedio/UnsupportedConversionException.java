@@ -0,0 +1,36 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+/**
+ * Thrown if an image can't be converted to the requested pixel type. When
+ * opening and converting in one step, this is not a failure of the backend,
+ * and no other backend is tried.
+ */
+class UnsupportedConversionException extends IllegalStateException {
+
+	private static final long serialVersionUID = 6803542185362416703L;
+
+	UnsupportedConversionException( final String message ) {
+		super( message );
+	}
+}
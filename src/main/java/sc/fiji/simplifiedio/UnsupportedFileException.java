@@ -0,0 +1,37 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+/**
+ * Thrown by a backend that can't read a kind of file, e.g. memory mapping a
+ * compressed TIFF file. {@link SimplifiedIO#openImage(String)} then tries the
+ * next backend. As this is part of the normal control flow, no stack trace
+ * is filled in.
+ */
+class UnsupportedFileException extends SimplifiedIOException {
+
+	private static final long serialVersionUID = -2650853021741135820L;
+
+	UnsupportedFileException( final String message ) {
+		super( message, false );
+	}
+}
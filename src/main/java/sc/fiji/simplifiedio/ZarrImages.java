@@ -0,0 +1,680 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imagej.axis.LinearAxis;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Reads and writes chunked images in the Zarr v2 format, on the local file
+ * system. Images are saved as OME-NGFF group: the axes, pixel sizes and
+ * origins are stored in the multiscales metadata of the group, the pixels in
+ * the array "0" of the group. Plain Zarr arrays can be read too.
+ * <p>
+ * Chunks are written in parallel, each chunk to its own file. Images are read
+ * lazily, a chunk is decoded on first access.
+ */
+final class ZarrImages {
+
+	private static final String ARRAY = "0";
+
+	private static final int DEFAULT_CHUNK_SIZE = 256;
+
+	private static final ThreadLocal< Deflater > DEFLATER = ThreadLocal.withInitial( Deflater::new );
+
+	private ZarrImages() {
+		// prevent instantiation of utility class
+	}
+
+	/** Whether the path is a directory with a Zarr array or group. */
+	static boolean isZarr( final String path ) {
+		final File directory = new File( path );
+		return new File( directory, ".zarray" ).isFile() || new File( directory, ".zgroup" ).isFile();
+	}
+
+	static boolean hasZarrExtension( final String path ) {
+		return "zarr".equals( FileSignature.extension( path ) );
+	}
+
+	/**
+	 * Saves the image as Zarr group. Chunks are encoded and written in
+	 * parallel on the executor of the options. An existing Zarr group or array
+	 * at the path is replaced once the new group is complete, the group is
+	 * written to a {@link TemporaryFiles temporary directory} until then.
+	 */
+	static void save( final ImgPlus< ? > image, final String path, final SaveOptions options ) throws IOException {
+		final MappedImages.Kind kind = MappedImages.Kind.of( Util.getTypeFromInterval( image ) );
+		if ( kind == null || kind == MappedImages.Kind.ARGB )
+			throw new SimplifiedIOException( "Zarr files can only store integer and real pixel types: " + path );
+		if ( options.getCompression() == SaveOptions.Compression.LZW )
+			throw new SimplifiedIOException( "LZW compression isn't supported for Zarr files: " + path );
+		final boolean compressed = options.getCompression() == SaveOptions.Compression.DEFLATE;
+		final Path target = Paths.get( path ).toAbsolutePath();
+		if ( Files.exists( target ) && !isZarr( target.toString() ) )
+			throw new SimplifiedIOException( "Path exists and is not a Zarr file: " + target );
+		final Path root = TemporaryFiles.sibling( target );
+		try {
+			writeGroup( image, root, kind, compressed, options );
+		}
+		catch ( final Throwable t ) {
+			TemporaryFiles.deleteQuietly( root );
+			throw t;
+		}
+		replace( root, target );
+	}
+
+	private static void writeGroup( final ImgPlus< ? > image, final Path root, final MappedImages.Kind kind, final boolean compressed,
+			final SaveOptions options ) throws IOException {
+		final long[] dimensions = Intervals.dimensionsAsLongArray( image );
+		final int[] chunkSize = chunkSize( options, dimensions );
+		final Path array = root.resolve( ARRAY );
+		Files.createDirectories( array );
+		write( root.resolve( ".zgroup" ), "{\"zarr_format\":2}" );
+		write( root.resolve( ".zattrs" ), groupAttributes( image ) );
+		write( array.resolve( ".zarray" ), arrayMetadata( dimensions, chunkSize, kind, compressed ) );
+		final RandomAccessibleInterval< ? > source = Views.zeroMin( image );
+		final CellGrid grid = new CellGrid( dimensions, chunkSize );
+		final long numChunks = Intervals.numElements( grid.getGridDimensions() );
+		final int tasks = ( int ) Math.min( numChunks, 4 * Runtime.getRuntime().availableProcessors() );
+		final List< CompletableFuture< Void > > futures = new ArrayList<>( tasks );
+		for ( int task = 0; task < tasks; task++ ) {
+			final int first = task;
+			futures.add( CompletableFuture.runAsync( () -> {
+				for ( long chunk = first; chunk < numChunks; chunk += tasks )
+					writeChunk( source, array, grid, chunk, kind, compressed );
+			}, options.getExecutor() ) );
+		}
+		try {
+			CompletableFuture.allOf( futures.toArray( new CompletableFuture[ 0 ] ) ).join();
+		}
+		catch ( final CompletionException e ) {
+			if ( e.getCause() instanceof UncheckedIOException )
+				throw ( ( UncheckedIOException ) e.getCause() ).getCause();
+			throw e.getCause() instanceof RuntimeException ? ( RuntimeException ) e.getCause() : e;
+		}
+	}
+
+	/** Chunk size from the options, 256 x 256 pixel planes by default. */
+	private static int[] chunkSize( final SaveOptions options, final long[] dimensions ) {
+		final int[] requested = options.getChunkSize();
+		final int[] chunkSize = new int[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; d++ ) {
+			final int size = requested != null && d < requested.length ? requested[ d ] : d < 2 ? DEFAULT_CHUNK_SIZE : 1;
+			chunkSize[ d ] = ( int ) Math.max( 1, Math.min( size, dimensions[ d ] ) );
+		}
+		return chunkSize;
+	}
+
+	/**
+	 * Moves the new Zarr group to the target, and deletes the Zarr group or
+	 * array that was there. A directory can't be renamed over another one,
+	 * the old group is moved aside first.
+	 */
+	private static void replace( final Path root, final Path target ) throws IOException {
+		if ( !Files.exists( target ) ) {
+			TemporaryFiles.replace( root, target );
+			return;
+		}
+		final Path old = TemporaryFiles.sibling( target );
+		TemporaryFiles.replace( target, old );
+		try {
+			TemporaryFiles.replace( root, target );
+		}
+		catch ( final IOException e ) {
+			TemporaryFiles.replace( old, target );
+			TemporaryFiles.deleteQuietly( root );
+			throw e;
+		}
+		TemporaryFiles.deleteQuietly( old );
+	}
+
+	private static void write( final Path file, final String text ) throws IOException {
+		Files.write( file, text.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/** OME-NGFF 0.4 metadata. Zarr lists the axes in reverse order. */
+	private static String groupAttributes( final ImgPlus< ? > image ) {
+		final int n = image.numDimensions();
+		final List< String > axes = new ArrayList<>();
+		final List< String > scales = new ArrayList<>();
+		final List< String > translations = new ArrayList<>();
+		boolean translated = false;
+		for ( int d = n - 1; d >= 0; d-- ) {
+			final CalibratedAxis axis = image.axis( d );
+			final StringBuilder json = new StringBuilder( "{\"name\":" ).append( Json.quote( axisName( axis.type() ) ) );
+			final String type = axisKind( axis.type() );
+			if ( type != null )
+				json.append( ",\"type\":" ).append( Json.quote( type ) );
+			if ( axis.unit() != null && !axis.unit().isEmpty() )
+				json.append( ",\"unit\":" ).append( Json.quote( axis.unit() ) );
+			axes.add( json.append( '}' ).toString() );
+			scales.add( Double.toString( image.averageScale( d ) ) );
+			final double origin = axis instanceof LinearAxis ? ( ( LinearAxis ) axis ).origin() : 0;
+			translations.add( Double.toString( origin ) );
+			translated |= origin != 0;
+		}
+		final StringBuilder transformations = new StringBuilder( "[{\"type\":\"scale\",\"scale\":[" ).append( String.join( ",", scales ) ).append( "]}" );
+		if ( translated )
+			transformations.append( ",{\"type\":\"translation\",\"translation\":[" ).append( String.join( ",", translations ) ).append( "]}" );
+		transformations.append( ']' );
+		final String name = image.getName() == null ? "" : image.getName();
+		return "{\"multiscales\":[{\"version\":\"0.4\",\"name\":" + Json.quote( name ) + ",\"axes\":[" + String.join( ",", axes ) +
+				"],\"datasets\":[{\"path\":\"" + ARRAY + "\",\"coordinateTransformations\":" + transformations + "}]}]}";
+	}
+
+	private static String arrayMetadata( final long[] dimensions, final int[] chunkSize, final MappedImages.Kind kind, final boolean compressed ) {
+		final List< String > shape = new ArrayList<>();
+		final List< String > chunks = new ArrayList<>();
+		for ( int d = dimensions.length - 1; d >= 0; d-- ) {
+			shape.add( Long.toString( dimensions[ d ] ) );
+			chunks.add( Integer.toString( chunkSize[ d ] ) );
+		}
+		return "{\"zarr_format\":2,\"shape\":[" + String.join( ",", shape ) + "],\"chunks\":[" + String.join( ",", chunks ) +
+				"],\"dtype\":\"" + dtype( kind ) + "\",\"compressor\":" + ( compressed ? "{\"id\":\"zlib\",\"level\":6}" : "null" ) +
+				",\"fill_value\":0,\"order\":\"C\",\"filters\":null,\"dimension_separator\":\"/\"}";
+	}
+
+	private static void writeChunk( final RandomAccessibleInterval< ? > source, final Path array, final CellGrid grid, final long index,
+			final MappedImages.Kind kind, final boolean compressed ) {
+		final int n = grid.numDimensions();
+		final long[] min = new long[ n ];
+		final int[] size = new int[ n ];
+		grid.getCellDimensions( index, min, size );
+		final long[] max = new long[ n ];
+		final long[] stride = new long[ n ];
+		long chunkPixels = 1;
+		for ( int d = 0; d < n; d++ ) {
+			max[ d ] = min[ d ] + size[ d ] - 1;
+			stride[ d ] = chunkPixels;
+			chunkPixels *= grid.cellDimension( d );
+		}
+		// NB: Zarr chunks at the border have the full size, the rest is padding.
+		final byte[] raw = BufferPool.take( ( int ) chunkPixels * kind.bytesPerPixel );
+		if ( Intervals.numElements( size ) < chunkPixels )
+			Arrays.fill( raw, ( byte ) 0 );
+		final ByteBuffer bytes = ByteBuffer.wrap( raw ).order( ByteOrder.LITTLE_ENDIAN );
+		final Cursor< ? > cursor = Views.flatIterable( Views.interval( source, min, max ) ).localizingCursor();
+		while ( cursor.hasNext() ) {
+			final double value = ( ( RealType< ? > ) cursor.next() ).getRealDouble();
+			long offset = 0;
+			for ( int d = 0; d < n; d++ )
+				offset += ( cursor.getLongPosition( d ) - min[ d ] ) * stride[ d ];
+			put( bytes, ( int ) offset, kind, value );
+		}
+		final long[] position = new long[ n ];
+		grid.getCellGridPositionFlat( index, position );
+		try {
+			final Path file = array.resolve( chunkKey( position, "/" ) );
+			Files.createDirectories( file.getParent() );
+			Files.write( file, compressed ? deflate( raw ) : raw );
+		}
+		catch ( final IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		finally {
+			BufferPool.give( raw );
+		}
+	}
+
+	private static void put( final ByteBuffer bytes, final int index, final MappedImages.Kind kind, final double value ) {
+		switch ( kind ) {
+		case INT8:
+		case UINT8:
+			bytes.put( index, ( byte ) ( long ) value );
+			break;
+		case INT16:
+		case UINT16:
+			bytes.putShort( 2 * index, ( short ) ( long ) value );
+			break;
+		case INT32:
+		case UINT32:
+			bytes.putInt( 4 * index, ( int ) ( long ) value );
+			break;
+		case FLOAT32:
+			bytes.putFloat( 4 * index, ( float ) value );
+			break;
+		default:
+			bytes.putDouble( 8 * index, value );
+		}
+	}
+
+	private static byte[] deflate( final byte[] bytes ) {
+		final Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput( bytes );
+		deflater.finish();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream( bytes.length / 2 + 64 );
+		final byte[] buffer = BufferPool.take( 1 << 16 );
+		while ( !deflater.finished() )
+			out.write( buffer, 0, deflater.deflate( buffer ) );
+		BufferPool.give( buffer );
+		return out.toByteArray();
+	}
+
+	/** Name of the chunk file, Zarr lists the grid position in reverse order. */
+	private static String chunkKey( final long[] position, final String separator ) {
+		final List< String > key = new ArrayList<>( position.length );
+		for ( int d = position.length - 1; d >= 0; d-- )
+			key.add( Long.toString( position[ d ] ) );
+		return String.join( separator, key );
+	}
+
+	/**
+	 * Opens the Zarr group or array lazily. At most a quarter of the
+	 * maximum heap size is used to keep decoded chunks.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	static ImgPlus< ? > open( final String path ) {
+		final Header header = Header.read( path );
+		final CellGrid grid = new CellGrid( header.dimensions, header.chunkSize );
+		final long chunkBytes = Intervals.numElements( header.chunkSize ) * header.kind.bytesPerPixel;
+		final ChunkCache cache = new ChunkCache( header, grid, Math.max( 1, Runtime.getRuntime().maxMemory() / 4 / chunkBytes ) );
+		final LazyCellImg img = new LazyImg( grid, header.kind.type(), cache );
+		return new ImgPlus<>( img, header.name, header.axes );
+	}
+
+	static ImageInfo probe( final String path ) {
+		final Header header = Header.read( path );
+		return new ImageInfo( path, Backend.ZARR, header.dimensions, header.axes, header.kind.type(), 1, header.compression, size( path ) );
+	}
+
+	/** Total size of the files of the Zarr directory. */
+	private static long size( final String path ) {
+		try (Stream< Path > files = Files.walk( Paths.get( path ) )) {
+			return files.filter( Files::isRegularFile ).mapToLong( file -> file.toFile().length() ).sum();
+		}
+		catch ( final IOException e ) {
+			throw new SimplifiedIOException( e );
+		}
+	}
+
+	/** Metadata of a Zarr array, with the axes of the group that contains it. */
+	private static final class Header {
+
+		private Path array;
+
+		private String name;
+
+		private long[] dimensions;
+
+		private int[] chunkSize;
+
+		private MappedImages.Kind kind;
+
+		private ByteOrder order;
+
+		/** Null if uncompressed, "zlib" or "gzip" otherwise. */
+		private String compression;
+
+		private String separator;
+
+		private double fillValue;
+
+		private CalibratedAxis[] axes;
+
+		@SuppressWarnings( "unchecked" )
+		static Header read( final String path ) {
+			final Path root = Paths.get( path );
+			final Header header = new Header();
+			header.name = root.getFileName().toString();
+			try {
+				Map< String, Object > multiscale = null;
+				if ( Files.isRegularFile( root.resolve( ".zarray" ) ) ) {
+					header.array = root;
+				}
+				else if ( Files.isRegularFile( root.resolve( ".zattrs" ) ) ) {
+					final Map< String, Object > attributes = ( Map< String, Object > ) read( root.resolve( ".zattrs" ) );
+					final List< Object > multiscales = ( List< Object > ) attributes.get( "multiscales" );
+					if ( multiscales == null || multiscales.isEmpty() )
+						throw new SimplifiedIOException( "Zarr group without multiscales metadata: " + path );
+					multiscale = ( Map< String, Object > ) multiscales.get( 0 );
+					final List< Object > datasets = ( List< Object > ) multiscale.get( "datasets" );
+					header.array = root.resolve( ( String ) ( ( Map< String, Object > ) datasets.get( 0 ) ).get( "path" ) );
+					final Object name = multiscale.get( "name" );
+					if ( name instanceof String && !( ( String ) name ).isEmpty() )
+						header.name = ( String ) name;
+				}
+				else
+					throw new UnsupportedFileException( "Not a Zarr array or OME-NGFF group: " + path );
+				header.readArray( ( Map< String, Object > ) read( header.array.resolve( ".zarray" ) ) );
+				header.axes = multiscale == null ? defaultAxes( header.dimensions.length ) : axes( multiscale, header.dimensions.length );
+				return header;
+			}
+			catch ( final IOException | ClassCastException | NullPointerException | IndexOutOfBoundsException e ) {
+				if ( e instanceof IOException )
+					throw new SimplifiedIOException( ( IOException ) e );
+				throw new SimplifiedIOException( "Invalid Zarr metadata: " + path );
+			}
+		}
+
+		private static Object read( final Path file ) throws IOException {
+			return Json.parse( new String( Files.readAllBytes( file ), StandardCharsets.UTF_8 ) );
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private void readArray( final Map< String, Object > zarray ) {
+			if ( !"C".equals( zarray.get( "order" ) ) )
+				throw new SimplifiedIOException( "Only Zarr arrays in C order are supported: " + array );
+			final Object filters = zarray.get( "filters" );
+			if ( filters != null && !( ( List< Object > ) filters ).isEmpty() )
+				throw new SimplifiedIOException( "Zarr filters are not supported: " + array );
+			final List< Object > shape = ( List< Object > ) zarray.get( "shape" );
+			final List< Object > chunks = ( List< Object > ) zarray.get( "chunks" );
+			final int n = shape.size();
+			dimensions = new long[ n ];
+			chunkSize = new int[ n ];
+			for ( int d = 0; d < n; d++ ) {
+				dimensions[ d ] = ( ( Number ) shape.get( n - 1 - d ) ).longValue();
+				chunkSize[ d ] = ( ( Number ) chunks.get( n - 1 - d ) ).intValue();
+			}
+			final String dtype = ( String ) zarray.get( "dtype" );
+			kind = kind( dtype );
+			if ( kind == null )
+				throw new SimplifiedIOException( "Unsupported Zarr data type " + dtype + ": " + array );
+			order = dtype.charAt( 0 ) == '>' ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+			final Map< String, Object > compressor = ( Map< String, Object > ) zarray.get( "compressor" );
+			compression = compressor == null ? null : ( String ) compressor.get( "id" );
+			if ( compression != null && !compression.equals( "zlib" ) && !compression.equals( "gzip" ) )
+				throw new SimplifiedIOException( "Unsupported Zarr compressor " + compression + ": " + array );
+			final Object separator = zarray.get( "dimension_separator" );
+			this.separator = separator == null ? "." : ( String ) separator;
+			final Object fill = zarray.get( "fill_value" );
+			fillValue = fill instanceof Number ? ( ( Number ) fill ).doubleValue() : 0;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private static CalibratedAxis[] axes( final Map< String, Object > multiscale, final int n ) {
+			final List< Object > axes = ( List< Object > ) multiscale.get( "axes" );
+			final Map< String, Object > dataset = ( Map< String, Object > ) ( ( List< Object > ) multiscale.get( "datasets" ) ).get( 0 );
+			List< Object > scale = null;
+			List< Object > translation = null;
+			final Object transformations = dataset.get( "coordinateTransformations" );
+			if ( transformations != null ) {
+				for ( final Object transformation : ( List< Object > ) transformations ) {
+					final Map< String, Object > t = ( Map< String, Object > ) transformation;
+					if ( "scale".equals( t.get( "type" ) ) )
+						scale = ( List< Object > ) t.get( "scale" );
+					else if ( "translation".equals( t.get( "type" ) ) )
+						translation = ( List< Object > ) t.get( "translation" );
+				}
+			}
+			if ( axes == null || axes.size() != n )
+				return defaultAxes( n );
+			final CalibratedAxis[] result = new CalibratedAxis[ n ];
+			for ( int d = 0; d < n; d++ ) {
+				final int i = n - 1 - d;
+				final Object axis = axes.get( i );
+				// NB: OME-NGFF 0.3 lists the axis names only.
+				final String name = axis instanceof String ? ( String ) axis : ( String ) ( ( Map< String, Object > ) axis ).get( "name" );
+				final String unit = axis instanceof Map ? ( String ) ( ( Map< String, Object > ) axis ).get( "unit" ) : null;
+				final double s = scale == null ? 1 : ( ( Number ) scale.get( i ) ).doubleValue();
+				final double origin = translation == null ? 0 : ( ( Number ) translation.get( i ) ).doubleValue();
+				result[ d ] = new DefaultLinearAxis( axisType( name ), unit, s, origin );
+			}
+			return result;
+		}
+
+		private static CalibratedAxis[] defaultAxes( final int n ) {
+			final AxisType[] types = { Axes.X, Axes.Y, Axes.Z, Axes.TIME };
+			final CalibratedAxis[] axes = new CalibratedAxis[ n ];
+			for ( int d = 0; d < n; d++ )
+				axes[ d ] = new DefaultLinearAxis( d < types.length ? types[ d ] : Axes.unknown() );
+			return axes;
+		}
+
+		/** Reads a chunk into a buffer of the size of the cell, without padding. */
+		ByteBuffer readChunk( final long[] position, final int[] cellSize ) {
+			final int bytesPerPixel = kind.bytesPerPixel;
+			final int chunkBytes = ( int ) Intervals.numElements( chunkSize ) * bytesPerPixel;
+			// NB: A chunk of full size becomes the cell, a padded border chunk is only copied from.
+			final boolean border = !Arrays.equals( cellSize, chunkSize );
+			final byte[] chunk = border ? BufferPool.take( chunkBytes ) : new byte[ chunkBytes ];
+			if ( border )
+				Arrays.fill( chunk, ( byte ) 0 );
+			final Path file = array.resolve( chunkKey( position, separator ) );
+			if ( Files.exists( file ) ) {
+				try {
+					final byte[] stored = Files.readAllBytes( file );
+					if ( compression == null )
+						System.arraycopy( stored, 0, chunk, 0, Math.min( stored.length, chunkBytes ) );
+					else
+						inflate( stored, chunk );
+				}
+				catch ( final IOException | DataFormatException e ) {
+					throw new SimplifiedIOException( "Couldn't read Zarr chunk " + file + ": " + e.getMessage() );
+				}
+			}
+			else if ( fillValue != 0 ) {
+				final ByteBuffer fill = ByteBuffer.wrap( chunk ).order( order );
+				for ( int i = 0; i < chunkBytes / bytesPerPixel; i++ )
+					put( fill, i, kind, fillValue );
+			}
+			if ( !border )
+				return ByteBuffer.wrap( chunk ).order( order );
+			// NB: Border chunks are padded, copy the rows that belong to the image.
+			final int n = cellSize.length;
+			final int rowBytes = cellSize[ 0 ] * bytesPerPixel;
+			final byte[] cell = new byte[ ( int ) Intervals.numElements( cellSize ) * bytesPerPixel ];
+			final int[] row = new int[ n ];
+			for ( int target = 0; target < cell.length; target += rowBytes ) {
+				long source = 0;
+				long stride = chunkSize[ 0 ];
+				for ( int d = 1; d < n; d++ ) {
+					source += row[ d ] * stride;
+					stride *= chunkSize[ d ];
+				}
+				System.arraycopy( chunk, ( int ) source * bytesPerPixel, cell, target, rowBytes );
+				for ( int d = 1; d < n && ++row[ d ] == cellSize[ d ]; d++ )
+					row[ d ] = 0;
+			}
+			BufferPool.give( chunk );
+			return ByteBuffer.wrap( cell ).order( order );
+		}
+
+		private void inflate( final byte[] stored, final byte[] chunk ) throws IOException, DataFormatException {
+			if ( compression.equals( "gzip" ) ) {
+				try (GZIPInputStream in = new GZIPInputStream( new ByteArrayInputStream( stored ) )) {
+					int offset = 0;
+					int read;
+					while ( offset < chunk.length && ( read = in.read( chunk, offset, chunk.length - offset ) ) > 0 )
+						offset += read;
+				}
+				return;
+			}
+			final Inflater inflater = new Inflater();
+			try {
+				inflater.setInput( stored );
+				inflater.inflate( chunk );
+			}
+			finally {
+				inflater.end();
+			}
+		}
+	}
+
+	private static String dtype( final MappedImages.Kind kind ) {
+		switch ( kind ) {
+		case INT8:
+			return "|i1";
+		case UINT8:
+			return "|u1";
+		case INT16:
+			return "<i2";
+		case UINT16:
+			return "<u2";
+		case INT32:
+			return "<i4";
+		case UINT32:
+			return "<u4";
+		case FLOAT32:
+			return "<f4";
+		default:
+			return "<f8";
+		}
+	}
+
+	/** Returns the kind of a Zarr data type, in any byte order, null if unsupported. */
+	private static MappedImages.Kind kind( final String dtype ) {
+		if ( dtype == null || dtype.length() < 3 )
+			return null;
+		switch ( dtype.substring( 1 ) ) {
+		case "i1":
+			return MappedImages.Kind.INT8;
+		case "u1":
+			return MappedImages.Kind.UINT8;
+		case "i2":
+			return MappedImages.Kind.INT16;
+		case "u2":
+			return MappedImages.Kind.UINT16;
+		case "i4":
+			return MappedImages.Kind.INT32;
+		case "u4":
+			return MappedImages.Kind.UINT32;
+		case "f4":
+			return MappedImages.Kind.FLOAT32;
+		case "f8":
+			return MappedImages.Kind.FLOAT64;
+		default:
+			return null;
+		}
+	}
+
+	private static String axisName( final AxisType type ) {
+		if ( type == Axes.X )
+			return "x";
+		if ( type == Axes.Y )
+			return "y";
+		if ( type == Axes.Z )
+			return "z";
+		if ( type == Axes.CHANNEL )
+			return "c";
+		if ( type == Axes.TIME )
+			return "t";
+		return type.getLabel();
+	}
+
+	/** OME-NGFF axis type, null for other axes. */
+	private static String axisKind( final AxisType type ) {
+		if ( type == Axes.X || type == Axes.Y || type == Axes.Z )
+			return "space";
+		if ( type == Axes.CHANNEL )
+			return "channel";
+		if ( type == Axes.TIME )
+			return "time";
+		return null;
+	}
+
+	private static AxisType axisType( final String name ) {
+		switch ( name ) {
+		case "x":
+			return Axes.X;
+		case "y":
+			return Axes.Y;
+		case "z":
+			return Axes.Z;
+		case "c":
+			return Axes.CHANNEL;
+		case "t":
+			return Axes.TIME;
+		default:
+			return Axes.get( name );
+		}
+	}
+
+	/**
+	 * Loads chunks on demand, and keeps the most recently used chunks in
+	 * memory.
+	 */
+	private static class ChunkCache implements LazyCellImg.Get< Cell< BufferAccess > > {
+
+		private final Header header;
+
+		private final CellGrid grid;
+
+		private final LeastRecentlyUsedMap< Long, Cell< BufferAccess > > cells;
+
+		ChunkCache( final Header header, final CellGrid grid, final long maxCells ) {
+			this.header = header;
+			this.grid = grid;
+			this.cells = new LeastRecentlyUsedMap<>( ( int ) Math.min( Integer.MAX_VALUE, maxCells ) );
+		}
+
+		@Override
+		public Cell< BufferAccess > get( final long index ) {
+			synchronized ( cells ) {
+				final Cell< BufferAccess > cell = cells.get( index );
+				if ( cell != null )
+					return cell;
+			}
+			final Cell< BufferAccess > cell = load( index );
+			synchronized ( cells ) {
+				cells.put( index, cell );
+			}
+			return cell;
+		}
+
+		private Cell< BufferAccess > load( final long index ) {
+			final long[] min = new long[ grid.numDimensions() ];
+			final int[] size = new int[ grid.numDimensions() ];
+			grid.getCellDimensions( index, min, size );
+			final long[] position = new long[ grid.numDimensions() ];
+			grid.getCellGridPositionFlat( index, position );
+			return new Cell<>( size, min, header.kind.access( header.readChunk( position, size ) ) );
+		}
+	}
+}
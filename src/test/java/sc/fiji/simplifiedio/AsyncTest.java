@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class AsyncTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testSaveOpenAndConvert() throws IOException, InterruptedException, ExecutionException {
+		Img< UnsignedByteType > img = RandomImgs.seed( 7 ).nextImage( new UnsignedByteType(), 30, 20 );
+		File file = File.createTempFile( "async-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImageAsync( img, file.getPath() ).get();
+		ImgPlus opened = SimplifiedIO.openImageAsync( file.getPath() ).get();
+		ImgLib2Assert.assertImageEquals( img, opened );
+		ImgPlus< FloatType > converted = SimplifiedIO.convertAsync( opened, new FloatType(), ConversionMode.MATERIALIZE ).get();
+		ImgLib2Assert.assertImageEqualsRealType( img, converted, 0.0 );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testCancelledBeforeStartIsNotRun() {
+		Runnable[] queued = new Runnable[ 1 ];
+		Executor manual = runnable -> queued[ 0 ] = runnable;
+		CompletableFuture< ImgPlus > future = SimplifiedIO.openImageAsync( "does-not-exist.tif", manual );
+		assertTrue( future.cancel( false ) );
+		queued[ 0 ].run();
+		assertTrue( future.isCancelled() );
+		assertThrows( CancellationException.class, future::join );
+	}
+
+	@Test
+	public void testFailureCompletesExceptionally() {
+		CompletableFuture< ? > future = SimplifiedIO.openImageAsync( "does-not-exist.tif", Runnable::run );
+		assertTrue( future.isCompletedExceptionally() );
+		assertFalse( future.isCancelled() );
+	}
+}
@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class BackendDispatcherTest {
+
+	@Test
+	public void testSniffMagicBytes() {
+		assertEquals( FileSignature.Magic.TIFF, FileSignature.sniff( bytes( 'I', 'I', 42, 0, 8, 0, 0, 0 ) ) );
+		assertEquals( FileSignature.Magic.TIFF, FileSignature.sniff( bytes( 'M', 'M', 0, 42 ) ) );
+		assertEquals( FileSignature.Magic.BIGTIFF, FileSignature.sniff( bytes( 'I', 'I', 43, 0 ) ) );
+		assertEquals( FileSignature.Magic.PNG, FileSignature.sniff( bytes( 0x89, 'P', 'N', 'G', 0x0D, 0x0A ) ) );
+		assertEquals( FileSignature.Magic.CZI, FileSignature.sniff( bytes( 'Z', 'I', 'S', 'R', 'A', 'W', 'F', 'I', 'L', 'E' ) ) );
+		assertEquals( FileSignature.Magic.UNKNOWN, FileSignature.sniff( bytes( 1, 2, 3 ) ) );
+	}
+
+	@Test
+	public void testExtension() {
+		assertEquals( "ome.tif", FileSignature.extension( "/data/image.OME.TIF" ) );
+		assertEquals( "tif", FileSignature.extension( "/data/image.tif" ) );
+		assertEquals( "czi", FileSignature.extension( "/data/image.czi" ) );
+	}
+
+	@Test
+	public void testSignatureFromFile() throws IOException {
+		File file = File.createTempFile( "image-", ".czi" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), "ZISRAWFILE and some more bytes".getBytes( "US-ASCII" ) );
+		FileSignature signature = FileSignature.of( file.getAbsolutePath() );
+		assertEquals( new FileSignature( "czi", FileSignature.Magic.CZI ), signature );
+		assertEquals( Backend.BIOFORMATS, BackendDispatcher.preferredOrder( signature ).get( 0 ) );
+	}
+
+	@Test
+	public void testPreferredOrder() {
+		assertEquals( Arrays.asList( Backend.MAPPED, Backend.IJ1, Backend.SCIFIO, Backend.BIOFORMATS ),
+				BackendDispatcher.preferredOrder( new FileSignature( "tif", FileSignature.Magic.TIFF ) ) );
+		assertEquals( Arrays.asList( Backend.IJ1, Backend.SCIFIO, Backend.BIOFORMATS ),
+				BackendDispatcher.preferredOrder( new FileSignature( "png", FileSignature.Magic.PNG ) ) );
+		assertEquals( Backend.BIOFORMATS, BackendDispatcher.preferredOrder( new FileSignature( "nd2", FileSignature.Magic.UNKNOWN ) ).get( 0 ) );
+		assertEquals( Backend.SCIFIO, BackendDispatcher.preferredOrder( new FileSignature( "ics", FileSignature.Magic.UNKNOWN ) ).get( 0 ) );
+	}
+
+	@Test
+	public void testOrderAdaptsToFailures() throws IOException {
+		File file = File.createTempFile( "image-", ".xyz" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4 } );
+		BackendDispatcher dispatcher = new BackendDispatcher();
+		FileSignature signature = FileSignature.of( file.getAbsolutePath() );
+		assertEquals( Backend.IJ1, dispatcher.order( signature ).get( 0 ) );
+		// no backend can read this file
+		assertThrows( SimplifiedIOException.class, () -> dispatcher.open( file.getAbsolutePath() ) );
+		assertEquals( 1, dispatcher.statistics().get( signature.key() ).get( Backend.IJ1 ).getFailures() );
+	}
+
+	@Test
+	public void testFailedBackendsAreSkipped() throws IOException {
+		File file = File.createTempFile( "image-", ".xyz" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4 } );
+		BackendDispatcher dispatcher = new BackendDispatcher();
+		FileSignature signature = FileSignature.of( file.getAbsolutePath() );
+		List< Backend > attempted = new ArrayList<>();
+		UnaryOperator< List< Backend > > ij1First = order -> Arrays.asList( Backend.IJ1, Backend.SCIFIO );
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertEquals( Arrays.asList( Backend.IJ1, Backend.SCIFIO ), attempted );
+		assertEquals( "not supported", dispatcher.failures().get( signature.key() ).get( Backend.IJ1 ) );
+		attempted.clear();
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertEquals( Arrays.asList( Backend.SCIFIO ), attempted );
+		assertEquals( 1, dispatcher.statistics().get( signature.key() ).get( Backend.IJ1 ).getFailures() );
+		// a backend is not skipped if it is the only one left
+		attempted.clear();
+		SimplifiedIOException e = assertThrows( SimplifiedIOException.class,
+				() -> dispatcher.open( file.getAbsolutePath(), () -> false, order -> Arrays.asList( Backend.IJ1 ), opener( attempted ) ) );
+		assertEquals( Arrays.asList( Backend.IJ1 ), attempted );
+		assertTrue( e.getMessage().contains( "ImageJ1 Exception: not supported" ) );
+		dispatcher.resetFailures();
+		attempted.clear();
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertEquals( Arrays.asList( Backend.IJ1, Backend.SCIFIO ), attempted );
+	}
+
+	@Test
+	public void testBrokenFileIsNotRemembered() throws IOException {
+		File broken = File.createTempFile( "broken-", ".tif" );
+		broken.deleteOnExit();
+		Files.write( broken.toPath(), new byte[] { 'I', 'I', 42, 0, 8, 0, 0, 0, 1, 2, 3 } );
+		File valid = File.createTempFile( "valid-", ".tif" );
+		valid.deleteOnExit();
+		Img< UnsignedShortType > img = RandomImgs.seed( 42 ).nextImage( new UnsignedShortType(), 32, 24 );
+		SimplifiedIO.saveImage( img, valid.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+		BackendDispatcher dispatcher = new BackendDispatcher();
+		assertThrows( SimplifiedIOException.class, () -> dispatcher.open( broken.getAbsolutePath() ) );
+		assertTrue( dispatcher.failures().isEmpty() );
+		ImgPlus< ? > image = dispatcher.open( valid.getAbsolutePath() );
+		assertArrayEquals( new long[] { 32, 24 }, Intervals.dimensionsAsLongArray( image ) );
+	}
+
+	@Test
+	public void testFailuresExpire() throws IOException {
+		File file = File.createTempFile( "image-", ".xyz" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4 } );
+		AtomicLong clock = new AtomicLong();
+		BackendDispatcher dispatcher = new BackendDispatcher( clock::get );
+		dispatcher.setFailureTimeToLive( 1000 );
+		FileSignature signature = FileSignature.of( file.getAbsolutePath() );
+		List< Backend > attempted = new ArrayList<>();
+		UnaryOperator< List< Backend > > ij1First = order -> Arrays.asList( Backend.IJ1, Backend.SCIFIO );
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		clock.set( 999 );
+		attempted.clear();
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertEquals( Arrays.asList( Backend.SCIFIO ), attempted );
+		clock.set( 1000 );
+		assertTrue( dispatcher.failures().isEmpty() );
+		attempted.clear();
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertEquals( Arrays.asList( Backend.IJ1, Backend.SCIFIO ), attempted );
+		assertEquals( 2, dispatcher.statistics().get( signature.key() ).get( Backend.IJ1 ).getFailures() );
+	}
+
+	@Test
+	public void testZeroTimeToLiveDisablesSkipping() throws IOException {
+		File file = File.createTempFile( "image-", ".xyz" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4 } );
+		BackendDispatcher dispatcher = new BackendDispatcher();
+		dispatcher.setFailureTimeToLive( 0 );
+		List< Backend > attempted = new ArrayList<>();
+		UnaryOperator< List< Backend > > ij1First = order -> Arrays.asList( Backend.IJ1, Backend.SCIFIO );
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		dispatcher.open( file.getAbsolutePath(), () -> false, ij1First, opener( attempted ) );
+		assertTrue( dispatcher.failures().isEmpty() );
+		assertEquals( Arrays.asList( Backend.IJ1, Backend.SCIFIO, Backend.IJ1, Backend.SCIFIO ), attempted );
+	}
+
+	@Test
+	public void testThrowingListenerDoesNotFailTheBackend() throws IOException {
+		File file = File.createTempFile( "image-", ".xyz" );
+		file.deleteOnExit();
+		Files.write( file.toPath(), new byte[] { 1, 2, 3, 4 } );
+		BackendDispatcher dispatcher = new BackendDispatcher();
+		FileSignature signature = FileSignature.of( file.getAbsolutePath() );
+		SimplifiedIOListener listener = new SimplifiedIOListener() {
+
+			@Override
+			public void opened( String path, Backend backend, int fallbacks, long nanos, long bytes ) {
+				throw new IllegalStateException( "broken listener" );
+			}
+		};
+		List< Backend > attempted = new ArrayList<>();
+		Listeners.add( listener );
+		try {
+			ImgPlus< ? > image = dispatcher.open( file.getAbsolutePath(), () -> false,
+					order -> Arrays.asList( Backend.SCIFIO, Backend.BIOFORMATS ), opener( attempted ) );
+			assertEquals( Backend.SCIFIO, image.getProperties().get( SimplifiedIO.BACKEND_PROPERTY ) );
+		}
+		finally {
+			Listeners.remove( listener );
+		}
+		assertEquals( Arrays.asList( Backend.SCIFIO ), attempted );
+		BackendStatistics scifio = dispatcher.statistics().get( signature.key() ).get( Backend.SCIFIO );
+		assertEquals( 1, scifio.getSuccesses() );
+		assertEquals( 0, scifio.getFailures() );
+	}
+
+	/** Fails for ImageJ1 and opens a one pixel image with any other backend. */
+	@SuppressWarnings( "rawtypes" )
+	private static BiFunction< Backend, String, ImgPlus > opener( List< Backend > attempted ) {
+		return ( backend, path ) -> {
+			attempted.add( backend );
+			if ( backend == Backend.IJ1 )
+				throw new SimplifiedIOException( "not supported" );
+			return new ImgPlus<>( ArrayImgs.unsignedBytes( 1, 1 ) );
+		};
+	}
+
+	private static ByteBuffer bytes( int... values ) {
+		byte[] bytes = new byte[ values.length ];
+		for ( int i = 0; i < values.length; i++ )
+			bytes[ i ] = ( byte ) values[ i ];
+		return ByteBuffer.wrap( bytes );
+	}
+}
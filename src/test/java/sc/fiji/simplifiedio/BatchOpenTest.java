@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class BatchOpenTest {
+
+	@Test
+	public void testOrderedResultsAndFailures() throws IOException {
+		List< Path > paths = createImages( 5 );
+		Path missing = new File( paths.get( 0 ).toString() + ".missing.tif" ).toPath();
+		paths.add( 2, missing );
+		List< BatchResult > results;
+		try (Stream< BatchResult > stream = SimplifiedIO.openImages( paths, BatchOptions.options().maxInFlight( 2 ) )) {
+			results = stream.collect( Collectors.toList() );
+		}
+		assertEquals( paths.size(), results.size() );
+		for ( int i = 0; i < paths.size(); i++ ) {
+			BatchResult result = results.get( i );
+			assertEquals( paths.get( i ), result.getPath() );
+			assertEquals( paths.get( i ) != missing, result.isSuccess() );
+		}
+		assertNotNull( results.get( 2 ).getError() );
+		ImgLib2Assert.assertImageEquals( image( 0 ), results.get( 0 ).getImage() );
+	}
+
+	@Test
+	public void testUnorderedResults() throws IOException {
+		List< Path > paths = createImages( 8 );
+		List< Path > opened;
+		try (Stream< BatchResult > stream = SimplifiedIO.openImages( paths, BatchOptions.options().ordered( false ).prefetch( false ) )) {
+			opened = stream.peek( result -> assertTrue( result.isSuccess() ) ).map( BatchResult::getPath ).collect( Collectors.toList() );
+		}
+		assertEquals( paths.size(), opened.size() );
+		assertTrue( opened.containsAll( paths ) );
+	}
+
+	@Test
+	public void testCloseStopsBatch() throws IOException {
+		List< Path > paths = createImages( 4 );
+		Stream< BatchResult > stream = SimplifiedIO.openImages( paths, BatchOptions.options().maxInFlight( 1 ) );
+		Iterator< BatchResult > iterator = stream.iterator();
+		assertTrue( iterator.next().isSuccess() );
+		stream.close();
+		assertFalse( iterator.hasNext() );
+	}
+
+	@Test
+	public void testRejectedTasksAreFailures() throws IOException {
+		List< Path > paths = createImages( 3 );
+		Executor rejecting = task -> {
+			throw new RejectedExecutionException( "test" );
+		};
+		for ( boolean ordered : new boolean[] { true, false } ) {
+			BatchOptions options = BatchOptions.options().ordered( ordered ).ioExecutor( rejecting ).decodeExecutor( rejecting );
+			List< BatchResult > results = assertTimeoutPreemptively( Duration.ofSeconds( 10 ), () -> {
+				try (Stream< BatchResult > stream = SimplifiedIO.openImages( paths, options )) {
+					return stream.collect( Collectors.toList() );
+				}
+			} );
+			assertEquals( paths.size(), results.size() );
+			for ( BatchResult result : results ) {
+				assertFalse( result.isSuccess() );
+				assertTrue( result.getError().getCause() instanceof RejectedExecutionException );
+			}
+		}
+	}
+
+	private static List< Path > createImages( int count ) throws IOException {
+		List< Path > paths = new ArrayList<>();
+		for ( int i = 0; i < count; i++ ) {
+			File file = File.createTempFile( "batch-", ".tif" );
+			file.deleteOnExit();
+			SimplifiedIO.saveImage( image( i ), file.getPath() );
+			paths.add( file.toPath() );
+		}
+		return paths;
+	}
+
+	private static Img< UnsignedByteType > image( int seed ) {
+		Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( 20, 10 );
+		int i = seed;
+		for ( UnsignedByteType pixel : img )
+			pixel.set( i++ & 0xff );
+		return img;
+	}
+}
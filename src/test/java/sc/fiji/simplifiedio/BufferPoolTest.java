@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testArraysAreReused() {
+		byte[] first = BufferPool.take( 1000 );
+		assertEquals( 1000, first.length );
+		BufferPool.give( first );
+		assertNotSame( first, BufferPool.take( 999 ) );
+		assertSame( first, BufferPool.take( 1000 ) );
+		assertNotSame( first, BufferPool.take( 1000 ) );
+	}
+
+	@Test
+	public void testFallbackExceptionHasNoStackTrace() {
+		assertEquals( 0, new UnsupportedFileException( "compressed" ).getStackTrace().length );
+	}
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+
+public class ConvertTest {
+
+	@Test
+	public void testMaterializeEqualsView() {
+		Img< UnsignedShortType > img = RandomImgs.seed( 42 ).nextImage( new UnsignedShortType(), 100, 80, 3 );
+		ImgPlus< UnsignedShortType > image = new ImgPlus<>( img, "random" );
+		ImgPlus< FloatType > view = SimplifiedIO.convert( image, new FloatType(), ConversionMode.VIEW );
+		ImgPlus< FloatType > materialized = SimplifiedIO.convert( image, new FloatType(), ConversionMode.MATERIALIZE );
+		assertTrue( materialized.getImg() instanceof ArrayImg );
+		ImgLib2Assert.assertImageEquals( view, materialized );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testOpenConvertsEachPlane() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 43 ).nextImage( new UnsignedShortType(), 60, 50, 4 );
+		ImgPlus< UnsignedShortType > image = new ImgPlus<>( img, "stack", new AxisType[] { Axes.X, Axes.Y, Axes.Z } );
+		File file = File.createTempFile( "fused-", ".ome.tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( image, file.getPath() );
+		ImgPlus fused = SimplifiedIO.openImageWithBioFormats( file.getPath(), new FloatType() );
+		assertTrue( fused.getImg() instanceof PlanarImg );
+		assertTrue( Util.getTypeFromInterval( fused ) instanceof FloatType );
+		ImgLib2Assert.assertImageEqualsRealType( img, fused, 0.0 );
+		ImgPlus< DoubleType > opened = SimplifiedIO.openImage( file.getPath(), new DoubleType() );
+		ImgLib2Assert.assertImageEqualsRealType( img, opened, 0.0 );
+		assertThrows( IllegalStateException.class, () -> SimplifiedIO.openImage( file.getPath(), new ARGBType() ) );
+	}
+
+	@Test
+	public void testMaterializeLargeImageInChunks() {
+		Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( 1000, 1000 );
+		int i = 0;
+		for ( UnsignedShortType pixel : img )
+			pixel.set( i++ & 0xffff );
+		ImgPlus< FloatType > materialized = SimplifiedIO.convert( new ImgPlus<>( img ), new FloatType(), ConversionMode.MATERIALIZE );
+		ImgLib2Assert.assertImageEqualsRealType( img, materialized, 0.0 );
+	}
+
+	@Test
+	public void testPrimitiveFastPathMatchesGenericConversion() {
+		assertFastPathMatches( RandomImgs.seed( 1 ).nextImage( new UnsignedByteType(), 50, 40 ), new FloatType() );
+		assertFastPathMatches( RandomImgs.seed( 2 ).nextImage( new ByteType(), 50, 40 ), new DoubleType() );
+		assertFastPathMatches( RandomImgs.seed( 3 ).nextImage( new UnsignedIntType(), 50, 40 ), new DoubleType() );
+		assertFastPathMatches( RandomImgs.seed( 4 ).nextImage( new DoubleType(), 50, 40 ), new FloatType() );
+		Img< UnsignedShortType > planar = new PlanarImgFactory<>( new UnsignedShortType() ).create( 50, 40, 3 );
+		RandomImgs.seed( 5 ).randomize( planar );
+		assertFastPathMatches( planar, new FloatType() );
+	}
+
+	private static < T extends NativeType< T > > void assertFastPathMatches( Img< ? > img, T type ) {
+		ImgPlus< ? > image = new ImgPlus<>( img );
+		ImgPlus< T > fast = PrimitiveConverter.convert( image, type );
+		assertNotNull( fast );
+		ImgLib2Assert.assertImageEquals( SimplifiedIO.convert( image, type ), fast );
+	}
+}
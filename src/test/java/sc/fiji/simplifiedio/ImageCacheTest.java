@@ -0,0 +1,131 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class ImageCacheTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testSecondOpenIsCached() throws IOException {
+		File file = createTempImage( 1 );
+		ImageCache cache = new ImageCache( 1 << 20 );
+		SimplifiedIO.setImageCache( cache );
+		try {
+			ImgPlus first = SimplifiedIO.openImage( file.getPath() );
+			ImgPlus second = SimplifiedIO.openImage( file.getPath() );
+			assertSame( first, second );
+			ImgPlus< FloatType > floats = SimplifiedIO.openImage( file.getPath(), new FloatType() );
+			assertSame( floats, SimplifiedIO.openImage( file.getPath(), new FloatType() ) );
+			assertNotSame( first, floats );
+			assertEquals( 2, cache.getHits() );
+			assertEquals( 2, cache.getMisses() );
+			assertEquals( 2, cache.size() );
+		}
+		finally {
+			SimplifiedIO.setImageCache( null );
+		}
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testModifiedFileIsOpenedAgain() throws IOException {
+		File file = createTempImage( 2 );
+		ImageCache cache = new ImageCache( 1 << 20 );
+		SimplifiedIO.setImageCache( cache );
+		try {
+			ImgPlus first = SimplifiedIO.openImage( file.getPath() );
+			Img< UnsignedByteType > changed = RandomImgs.seed( 3 ).nextImage( new UnsignedByteType(), 40, 30 );
+			SimplifiedIO.saveImage( changed, file.getPath() );
+			file.setLastModified( file.lastModified() + 2000 );
+			ImgPlus second = SimplifiedIO.openImage( file.getPath() );
+			assertNotSame( first, second );
+			ImgLib2Assert.assertImageEquals( changed, second );
+		}
+		finally {
+			SimplifiedIO.setImageCache( null );
+		}
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testLeastRecentlyUsedIsEvicted() throws IOException {
+		File a = createTempImage( 4 );
+		File b = createTempImage( 5 );
+		File c = createTempImage( 6 );
+		// NB: Room for two 40x30 8-bit images.
+		ImageCache cache = new ImageCache( 2 * 40 * 30 );
+		ImgPlus imageA = cache.get( a.getPath(), null, () -> SimplifiedIO.openImage( a.getPath() ) );
+		cache.get( b.getPath(), null, () -> SimplifiedIO.openImage( b.getPath() ) );
+		assertSame( imageA, cache.get( a.getPath(), null, () -> SimplifiedIO.openImage( a.getPath() ) ) );
+		cache.get( c.getPath(), null, () -> SimplifiedIO.openImage( c.getPath() ) );
+		assertEquals( 1, cache.getEvictions() );
+		assertEquals( 2 * 40 * 30, cache.getBytes() );
+		assertSame( imageA, cache.get( a.getPath(), null, () -> SimplifiedIO.openImage( a.getPath() ) ) );
+		cache.invalidate( a.getPath() );
+		assertEquals( 1, cache.size() );
+		assertEquals( 40 * 30, cache.getBytes() );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testMappedImageIsCopiedToHeap() throws IOException {
+		File file = createTempImage( 7 );
+		ImgPlus mapped = SimplifiedIO.openImage( file.getPath() );
+		assertEquals( Backend.MAPPED, SimplifiedIO.getBackend( mapped ) );
+		SimplifiedIO.setImageCache( new ImageCache( 1 << 20 ) );
+		try {
+			ImgPlus cached = SimplifiedIO.openImage( file.getPath() );
+			assertEquals( Backend.MAPPED, SimplifiedIO.getBackend( cached ) );
+			assertFalse( cached.getImg() instanceof LazyCellImg );
+			ImgLib2Assert.assertImageEquals( mapped, cached );
+		}
+		finally {
+			SimplifiedIO.setImageCache( null );
+		}
+	}
+
+	private static File createTempImage( final long seed ) throws IOException {
+		File file = File.createTempFile( "cached-", ".tif" );
+		file.deleteOnExit();
+		Img< UnsignedByteType > img = RandomImgs.seed( seed ).nextImage( new UnsignedByteType(), 40, 30 );
+		SimplifiedIO.saveImage( img, file.getPath() );
+		return file;
+	}
+}
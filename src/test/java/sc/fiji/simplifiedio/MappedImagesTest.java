@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class MappedImagesTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testUncompressedTiffIsMapped() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 11 ).nextImage( new UnsignedShortType(), 64, 48, 5 );
+		File file = File.createTempFile( "mapped-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( new ImgPlus<>( img, "stack", new AxisType[] { Axes.X, Axes.Y, Axes.Z } ), file.getPath() );
+		ImgPlus mapped = SimplifiedIO.openImage( file.getPath() );
+		assertEquals( Backend.MAPPED, SimplifiedIO.getBackend( mapped ) );
+		assertTrue( mapped.getImg() instanceof LazyCellImg );
+		assertEquals( Axes.Z, mapped.axis( 2 ).type() );
+		ImgLib2Assert.assertImageEquals( img, mapped );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testSaveOverMappedFile() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 14 ).nextImage( new UnsignedShortType(), 64, 48, 3 );
+		File file = File.createTempFile( "mapped-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( img, file.getPath() );
+		ImgPlus mapped = SimplifiedIO.openImage( file.getPath() );
+		assertEquals( Backend.MAPPED, SimplifiedIO.getBackend( mapped ) );
+		SimplifiedIO.saveImage( mapped, file.getPath(), SaveOptions.options().compression( SaveOptions.Compression.DEFLATE ) );
+		ImgLib2Assert.assertImageEquals( img, mapped );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImage( file.getPath() ) );
+		SimplifiedIO.saveImage( mapped, file.getPath() );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImage( file.getPath() ) );
+	}
+
+	@Test
+	public void testCompressedTiffIsNotMapped() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 12 ).nextImage( new UnsignedShortType(), 64, 48 );
+		File file = File.createTempFile( "compressed-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( img, file.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+		assertThrows( SimplifiedIOException.class, () -> MappedImages.open( file.getPath() ) );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImage( file.getPath() ) );
+	}
+
+	@Test
+	public void testStripsOfWrongSizeAreNotMapped() throws IOException {
+		File file = File.createTempFile( "short-", ".tif" );
+		file.deleteOnExit();
+		// NB: The strip holds half of the plane that the IFD describes.
+		try (TiffWriter writer = new TiffWriter( file.toPath(), TiffWriter.PixelKind.UINT8, 30, 20, false )) {
+			writer.writePlane( ArrayImgs.unsignedBytes( 30, 10 ) );
+		}
+		assertThrows( SimplifiedIOException.class, () -> MappedImages.open( file.getPath() ) );
+	}
+
+	@Test
+	public void testInvalidHyperstackDescription() throws IOException {
+		File file = File.createTempFile( "description-", ".tif" );
+		file.deleteOnExit();
+		try (TiffWriter writer = new TiffWriter( file.toPath(), TiffWriter.PixelKind.UINT8, 30, 20, false )) {
+			writer.setDescription( "ImageJ=1.54f\nimages=2\nchannels=0\nframes=0\n" );
+			writer.writePlane( ArrayImgs.unsignedBytes( 30, 20 ) );
+			writer.writePlane( ArrayImgs.unsignedBytes( 30, 20 ) );
+		}
+		ImgPlus< ? > mapped = MappedImages.open( file.getPath() );
+		assertArrayEquals( new long[] { 30, 20, 2 }, Intervals.dimensionsAsLongArray( mapped ) );
+	}
+
+	@Test
+	public void testBigEndianEnvi() throws IOException {
+		Path data = File.createTempFile( "envi-", ".raw" ).toPath();
+		Path header = data.resolveSibling( data.getFileName() + ".hdr" );
+		data.toFile().deleteOnExit();
+		header.toFile().deleteOnExit();
+		Img< UnsignedShortType > img = RandomImgs.seed( 13 ).nextImage( new UnsignedShortType(), 30, 20, 3 );
+		ByteBuffer bytes = ByteBuffer.allocate( 30 * 20 * 3 * 2 ).order( ByteOrder.BIG_ENDIAN );
+		for ( UnsignedShortType pixel : img )
+			bytes.putShort( ( short ) pixel.get() );
+		Files.write( data, bytes.array() );
+		Files.write( header, Arrays.asList( "ENVI", "description = {test", " image}", "samples = 30", "lines = 20", "bands = 3",
+				"header offset = 0", "data type = 12", "interleave = bsq", "byte order = 1" ) );
+		ImgPlus< ? > mapped = MappedImages.open( header.toString() );
+		assertEquals( Axes.CHANNEL, mapped.axis( 2 ).type() );
+		ImgLib2Assert.assertImageEquals( img, mapped );
+	}
+}
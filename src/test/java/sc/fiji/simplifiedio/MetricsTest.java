@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class MetricsTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testOpenConvertSave() throws IOException {
+		Img< UnsignedByteType > img = RandomImgs.seed( 3 ).nextImage( new UnsignedByteType(), 40, 30 );
+		File file = File.createTempFile( "metrics-", ".tif" );
+		file.deleteOnExit();
+		Metrics metrics = new Metrics();
+		SimplifiedIO.addListener( metrics );
+		try {
+			SimplifiedIO.saveImage( img, file.getPath() );
+			ImgPlus image = SimplifiedIO.openImage( file.getPath() );
+			SimplifiedIO.convert( image, new FloatType(), ConversionMode.MATERIALIZE );
+		}
+		finally {
+			SimplifiedIO.removeListener( metrics );
+		}
+		assertFalse( Listeners.enabled() );
+		assertEquals( 1, metrics.getLatency( "save" ).getCount() );
+		assertEquals( file.length(), metrics.getBytesWritten() );
+		assertEquals( 1, metrics.getLatency( "open" ).getCount() );
+		assertEquals( file.length(), metrics.getBytesRead() );
+		assertEquals( 40 * 30, metrics.getPixelsConverted() );
+		assertTrue( metrics.getConversionThroughput() > 0 );
+		assertNull( metrics.getLatency( "open.failed" ) );
+		metrics.reset();
+		assertTrue( metrics.getLatencies().isEmpty() );
+	}
+
+	@Test
+	public void testFallbacksAreCounted() throws IOException {
+		File file = File.createTempFile( "metrics-", ".metrics" );
+		file.deleteOnExit();
+		SimplifiedIO.resetRememberedFailures();
+		Metrics metrics = new Metrics();
+		SimplifiedIO.addListener( metrics );
+		try {
+			SimplifiedIO.openImage( file.getPath() );
+		}
+		catch ( SimplifiedIOException e ) {
+			// expected, the file is empty
+		}
+		finally {
+			SimplifiedIO.removeListener( metrics );
+		}
+		assertEquals( 1, metrics.getLatency( "open.failed" ).getCount() );
+		assertNotNull( metrics.getLatency( "attempt.IJ1.failed" ) );
+	}
+
+	@Test
+	public void testPercentiles() {
+		Metrics metrics = new Metrics();
+		for ( int i = 0; i < 99; i++ )
+			metrics.saved( "a.tif", 1000, 0 );
+		metrics.saved( "a.tif", 1_000_000, 0 );
+		Metrics.Latency latency = metrics.getLatency( "save" );
+		assertEquals( 100, latency.getCount() );
+		assertEquals( 1023, latency.getPercentileNanos( 0.5 ) );
+		assertEquals( 1_000_000, latency.getPercentileNanos( 1 ) );
+		assertEquals( 1_000_000, latency.getMaxNanos() );
+	}
+}
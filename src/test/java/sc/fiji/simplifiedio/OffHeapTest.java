@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.RealTypeConverters;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class OffHeapTest {
+
+	@Test
+	public void testConvertOffHeap() {
+		Img< UnsignedShortType > img = RandomImgs.seed( 21 ).nextImage( new UnsignedShortType(), 50, 40, 3 );
+		ImgPlus< FloatType > converted = SimplifiedIO.convert( new ImgPlus<>( img ), new FloatType(), ConversionMode.OFF_HEAP );
+		OffHeapImg< ? > offHeap = OffHeapImg.unwrap( converted );
+		assertNotNull( offHeap );
+		assertEquals( 50 * 40 * 3 * 4, offHeap.sizeInBytes() );
+		ImgLib2Assert.assertImageEqualsRealType( RealTypeConverters.convert( img, new FloatType() ), converted, 0 );
+		assertSame( converted, SimplifiedIO.convert( converted, new FloatType(), ConversionMode.OFF_HEAP ) );
+		SimplifiedIO.release( converted );
+		assertTrue( offHeap.isReleased() );
+		RandomAccess< FloatType > access = converted.randomAccess();
+		assertThrows( IndexOutOfBoundsException.class, () -> access.get().get() );
+		SimplifiedIO.release( converted );
+	}
+
+	@Test
+	public void testLargePlanesAreSplitIntoRows() {
+		OffHeapImg< UnsignedShortType > img = OffHeapImg.create( new long[] { 1000, 300 }, new UnsignedShortType() );
+		assertEquals( 1000 * 300 * 2, img.sizeInBytes() );
+		img.release();
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testOpenImageOffHeap() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 22 ).nextImage( new UnsignedShortType(), 64, 48, 4 );
+		File file = File.createTempFile( "off-heap-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( img, file.getPath() );
+		ImgPlus image = SimplifiedIO.openImageOffHeap( file.getPath() );
+		assertNotNull( OffHeapImg.unwrap( image ) );
+		ImgLib2Assert.assertImageEquals( img, image );
+		SimplifiedIO.release( image );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testBioFormatsDecodesOffHeap() throws IOException {
+		Img< UnsignedShortType > shorts = RandomImgs.seed( 24 ).nextImage( new UnsignedShortType(), 64, 48, 3 );
+		Img< FloatType > floats = RandomImgs.seed( 25 ).nextImage( new FloatType(), 30, 20 );
+		for ( Img< ? > img : new Img< ? >[] { shorts, floats } ) {
+			File file = File.createTempFile( "off-heap-", ".ome.tif" );
+			file.deleteOnExit();
+			// NB: Compressed, so that the file isn't memory mapped.
+			SimplifiedIO.saveImage( img, file.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+			ImgPlus image = SimplifiedIO.openImageOffHeap( file.getPath() );
+			assertEquals( Backend.BIOFORMATS, SimplifiedIO.getBackend( image ) );
+			assertNotNull( OffHeapImg.unwrap( image ) );
+			ImgLib2Assert.assertImageEquals( img, image, Object::equals );
+			SimplifiedIO.release( image );
+		}
+	}
+
+	@Test
+	public void testUnsupportedType() {
+		Img< UnsignedShortType > img = RandomImgs.seed( 23 ).nextImage( new UnsignedShortType(), 10, 10 );
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.convert( new ImgPlus<>( img ), new LongType(), ConversionMode.OFF_HEAP ) );
+	}
+}
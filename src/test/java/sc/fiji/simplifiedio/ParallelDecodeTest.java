@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.RealTypeConverters;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Images of more than 8 MB are decoded by Bio-Formats in parallel, a single
+ * plane in bands of rows.
+ */
+public class ParallelDecodeTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testPlanes() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 31 ).nextImage( new UnsignedShortType(), 1024, 1024, 12 );
+		CalibratedAxis[] axes = { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ), new DefaultLinearAxis( Axes.Z ) };
+		String path = save( new ImgPlus<>( img, "planes", axes ) );
+		ImgPlus opened = SimplifiedIO.openImageWithBioFormats( path );
+		ImgLib2Assert.assertImageEquals( img, opened );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testBandsOfOnePlane() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 32 ).nextImage( new UnsignedShortType(), 4096, 3001 );
+		String path = save( img );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImageWithBioFormats( path ) );
+		ImgPlus cropped = SimplifiedIO.openImage( path, ReadRequest.all().crop( 7, 13, 4000, 2900 ) );
+		RandomAccessibleInterval< UnsignedShortType > expected = Views.zeroMin( Views.interval( img, new long[] { 7, 13 }, new long[] { 4006, 2912 } ) );
+		ImgLib2Assert.assertImageEquals( expected, cropped );
+	}
+
+	@Test
+	public void testConvertedBands() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 33 ).nextImage( new UnsignedShortType(), 4096, 2050 );
+		String path = save( img );
+		@SuppressWarnings( "unchecked" )
+		ImgPlus< FloatType > opened = SimplifiedIO.openImageWithBioFormats( path, new FloatType() );
+		ImgLib2Assert.assertImageEquals( RealTypeConverters.convert( img, new FloatType() ), opened );
+		assertEquals( FloatType.class, opened.firstElement().getClass() );
+	}
+
+	private static String save( final RandomAccessibleInterval< UnsignedShortType > img ) throws IOException {
+		File file = File.createTempFile( "parallel-", ".ome.tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( img, file.getPath() );
+		return file.getPath();
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class PlaneTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testWriteAndIterateTimeLapse() {
+		Img< UnsignedShortType > timeLapse = RandomImgs.seed( 21 ).nextImage( new UnsignedShortType(), 32, 24, 2, 5 );
+		String path = directory.resolve( "timelapse.tif" ).toString();
+		try (PlaneWriter writer = SimplifiedIO.planeWriter( path, Axes.TIME )) {
+			for ( int t = 0; t < 5; t++ )
+				writer.append( slice( timeLapse, t ) );
+		}
+		ImgPlus image = SimplifiedIO.openImage( path );
+		assertArrayEquals( new long[] { 32, 24, 2, 5 }, Intervals.dimensionsAsLongArray( image ) );
+		assertEquals( Axes.TIME, image.axis( 3 ).type() );
+		try (PlaneIterator planes = SimplifiedIO.planes( path, Axes.TIME )) {
+			assertEquals( 5, planes.size() );
+			for ( int t = 0; t < 5; t++ ) {
+				ImgPlus plane = planes.next();
+				assertArrayEquals( new long[] { 32, 24, 2 }, Intervals.dimensionsAsLongArray( plane ) );
+				ImgLib2Assert.assertImageEquals( Views.hyperSlice( timeLapse, 3, t ), plane );
+			}
+			assertFalse( planes.hasNext() );
+		}
+	}
+
+	@Test
+	public void testStreamChannels() {
+		Img< UnsignedShortType > image = RandomImgs.seed( 22 ).nextImage( new UnsignedShortType(), 16, 16, 3 );
+		CalibratedAxis[] axes = { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ), new DefaultLinearAxis( Axes.CHANNEL ) };
+		String path = directory.resolve( "channels.tif" ).toString();
+		SimplifiedIO.saveImage( new ImgPlus<>( image, "channels", axes ), path );
+		try (Stream< ImgPlus< ? > > planes = SimplifiedIO.planes( path, Axes.CHANNEL, 1 ).stream()) {
+			assertEquals( 3 * 16 * 16, planes.mapToLong( Intervals::numElements ).sum() );
+		}
+	}
+
+	@Test
+	public void testSlowerAxisIsRejected() {
+		Img< UnsignedShortType > timeLapse = RandomImgs.seed( 23 ).nextImage( new UnsignedShortType(), 8, 8, 3 );
+		CalibratedAxis[] axes = { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ), new DefaultLinearAxis( Axes.TIME ) };
+		try (PlaneWriter writer = SimplifiedIO.planeWriter( directory.resolve( "z.tif" ).toString(), Axes.Z )) {
+			assertThrows( SimplifiedIOException.class, () -> writer.append( new ImgPlus<>( timeLapse, "timelapse", axes ) ) );
+		}
+	}
+
+	private static ImgPlus< UnsignedShortType > slice( final RandomAccessibleInterval< UnsignedShortType > timeLapse, final int t ) {
+		CalibratedAxis[] axes = { new DefaultLinearAxis( Axes.X ), new DefaultLinearAxis( Axes.Y ), new DefaultLinearAxis( Axes.CHANNEL ) };
+		return new ImgPlus<>( ImgView.wrap( Views.hyperSlice( timeLapse, 3, t ), null ), "timelapse", axes );
+	}
+}
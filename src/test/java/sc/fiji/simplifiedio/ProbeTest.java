@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.img.Img;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class ProbeTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testProbeUncompressedTiff() throws IOException {
+		File file = File.createTempFile( "probe-", ".tif" );
+		file.deleteOnExit();
+		Img< UnsignedShortType > img = RandomImgs.seed( 31 ).nextImage( new UnsignedShortType(), 64, 48, 5 );
+		SimplifiedIO.saveImage( new ImgPlus<>( img, "stack", new CalibratedAxis[] { new DefaultLinearAxis( Axes.X, "\u00b5m", 0.5 ),
+				new DefaultLinearAxis( Axes.Y, "\u00b5m", 0.5 ), new DefaultLinearAxis( Axes.Z, "\u00b5m", 2 ) } ), file.getPath() );
+		ImageInfo info = SimplifiedIO.probe( file.getPath() );
+		assertEquals( Backend.MAPPED, info.getBackend() );
+		assertArrayEquals( new long[] { 64, 48, 5 }, info.getDimensions() );
+		assertArrayEquals( new AxisType[] { Axes.X, Axes.Y, Axes.Z }, info.getAxisTypes() );
+		assertEquals( UnsignedShortType.class, info.getPixelType() );
+		assertEquals( 0.5, info.getAxes()[ 0 ].averageScale( 0, 1 ), 1e-6 );
+		assertEquals( 2, info.getAxes()[ 2 ].averageScale( 0, 1 ), 1e-6 );
+		assertEquals( 64 * 48 * 5 * 2, info.getPixelDataSize() );
+		assertEquals( file.length(), info.getFileSize() );
+		assertEquals( 1, info.getSeriesCount() );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testProbeMatchesOpenImage() throws IOException {
+		File file = File.createTempFile( "probe-", ".tif" );
+		file.deleteOnExit();
+		Img< UnsignedShortType > img = RandomImgs.seed( 32 ).nextImage( new UnsignedShortType(), 64, 48, 3 );
+		SimplifiedIO.saveImage( img, file.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+		ImageInfo info = SimplifiedIO.probe( file.getPath() );
+		// NB: Tiled TIFFs are read by SCIFIO, which might not report the compression.
+		assertTrue( info.getCompression() == null || info.getCompression().contains( "LZW" ) );
+		ImgPlus image = SimplifiedIO.openImage( file.getPath() );
+		assertArrayEquals( Intervals.dimensionsAsLongArray( image ), info.getDimensions() );
+		assertEquals( image.firstElement().getClass(), info.getPixelType() );
+	}
+
+	@Test
+	public void testProbeDirectory() throws IOException {
+		Path directory = Files.createTempDirectory( "probe-" );
+		directory.toFile().deleteOnExit();
+		for ( int i = 0; i < 3; i++ ) {
+			File file = directory.resolve( "image-" + i + ".tif" ).toFile();
+			file.deleteOnExit();
+			SimplifiedIO.saveImage( RandomImgs.seed( i ).nextImage( new UnsignedShortType(), 20 + i, 10 ), file.getPath() );
+		}
+		Path text = directory.resolve( "notes.txt" );
+		text.toFile().deleteOnExit();
+		Files.write( text, "not an image".getBytes( "US-ASCII" ) );
+		List< ImageInfo > infos = SimplifiedIO.probeDirectory( directory );
+		assertEquals( 3, infos.size() );
+		for ( int i = 0; i < 3; i++ )
+			assertEquals( 20 + i, infos.get( i ).dimension( 0 ) );
+	}
+
+	@Test
+	public void testProbeMissingFile() {
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.probe( "/does/not/exist.tif" ) );
+	}
+}
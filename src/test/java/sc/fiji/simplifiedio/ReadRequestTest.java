@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class ReadRequestTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testCropChannelAndSlices() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 3 ).nextImage( new UnsignedShortType(), 40, 30, 3, 4 );
+		ImgPlus< UnsignedShortType > image = new ImgPlus<>( img, "stack", new CalibratedAxis[] {
+				new DefaultLinearAxis( Axes.X, "µm", 0.5 ), new DefaultLinearAxis( Axes.Y, "µm", 0.5 ),
+				new DefaultLinearAxis( Axes.CHANNEL ), new DefaultLinearAxis( Axes.Z, "µm", 2 ) } );
+		File file = File.createTempFile( "request-", ".ome.tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( image, file.getPath() );
+
+		ReadRequest request = ReadRequest.all().crop( 10, 5, 20, 15 ).channel( 1 ).slices( 1, 2 );
+		ImgPlus subset = SimplifiedIO.openImage( file.getPath(), request );
+
+		RandomAccessibleInterval< UnsignedShortType > expected = Views.zeroMin( Views.interval( img, new long[] { 10, 5, 1, 1 }, new long[] { 29, 19, 1, 2 } ) );
+		assertArrayEquals( Intervals.dimensionsAsLongArray( expected ), Intervals.dimensionsAsLongArray( subset ) );
+		ImgLib2Assert.assertImageEquals( expected, subset );
+		assertEquals( 5.0, subset.axis( 0 ).calibratedValue( 0 ), 1e-9 );
+		assertEquals( 2.5, subset.axis( 1 ).calibratedValue( 0 ), 1e-9 );
+		assertEquals( 2.0, subset.axis( 3 ).calibratedValue( 0 ), 1e-9 );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testRegionOfCompressedAndMappedFiles() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 5 ).nextImage( new UnsignedShortType(), 40, 30, 3 );
+		ImgPlus< UnsignedShortType > image = new ImgPlus<>( img, "channels", new AxisType[] { Axes.X, Axes.Y, Axes.CHANNEL } );
+		RandomAccessibleInterval< UnsignedShortType > expected = Views.zeroMin( Views.interval( img, new long[] { 4, 6, 1 }, new long[] { 23, 15, 2 } ) );
+		ReadRequest request = ReadRequest.all().crop( 4, 6, 20, 10 ).channels( 1, 2 );
+		File mapped = File.createTempFile( "request-", ".tif" );
+		mapped.deleteOnExit();
+		SimplifiedIO.saveImage( image, mapped.getPath() );
+		ImgPlus view = SimplifiedIO.openImage( mapped.getPath(), request );
+		assertEquals( Backend.MAPPED, SimplifiedIO.getBackend( view ) );
+		ImgLib2Assert.assertImageEquals( expected, view );
+		File compressed = File.createTempFile( "request-", ".tif" );
+		compressed.deleteOnExit();
+		SimplifiedIO.saveImage( image, compressed.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+		ImgPlus decoded = SimplifiedIO.openImage( compressed.getPath(), request );
+		assertNotEquals( Backend.IJ1, SimplifiedIO.getBackend( decoded ) );
+		ImgLib2Assert.assertImageEquals( expected, decoded );
+	}
+
+	@Test
+	public void testOutOfRange() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 4 ).nextImage( new UnsignedShortType(), 20, 10 );
+		File file = File.createTempFile( "request-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( img, file.getPath() );
+		File compressed = File.createTempFile( "request-", ".tif" );
+		compressed.deleteOnExit();
+		SimplifiedIO.saveImage( img, compressed.getPath(), SaveOptions.options().compression( SaveOptions.Compression.LZW ) );
+		for ( String path : new String[] { file.getPath(), compressed.getPath() } ) {
+			Map< Backend, String > before = counts( path );
+			assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.openImage( path, ReadRequest.all().crop( 10, 0, 20, 10 ) ) );
+			assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.openImage( path, ReadRequest.all().series( 3 ) ) );
+			assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.openImage( path, ReadRequest.all().slices( 1, 2 ) ) );
+			// requests outside of the image are not failures of the backends
+			assertEquals( before, counts( path ) );
+		}
+	}
+
+	/** Successes and failures of each backend for the kind of file. */
+	private static Map< Backend, String > counts( String path ) {
+		Map< Backend, String > counts = new EnumMap<>( Backend.class );
+		Map< Backend, BackendStatistics > statistics = SimplifiedIO.getBackendStatistics().get( FileSignature.of( path ).key() );
+		if ( statistics != null )
+			statistics.forEach( ( backend, s ) -> counts.put( backend, s.getSuccesses() + "/" + s.getFailures() ) );
+		return counts;
+	}
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import io.scif.SCIFIO;
+import loci.formats.IFormatReader;
+import net.imagej.ImgPlus;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class ReaderPoolTest {
+
+	@Test
+	public void testConcurrentGetScifioCreatesOneContext() throws InterruptedException, ExecutionException {
+		try (ReaderPool pool = new ReaderPool()) {
+			ExecutorService executor = Executors.newFixedThreadPool( 4 );
+			List< Future< SCIFIO > > futures = new ArrayList<>();
+			for ( int i = 0; i < 4; i++ )
+				futures.add( executor.submit( pool::getScifio ) );
+			executor.shutdown();
+			SCIFIO first = futures.get( 0 ).get();
+			for ( Future< SCIFIO > future : futures )
+				assertSame( first, future.get() );
+		}
+	}
+
+	@Test
+	public void testClosedPool() {
+		ReaderPool pool = new ReaderPool();
+		pool.close();
+		assertThrows( IllegalStateException.class, pool::getScifio );
+	}
+
+	@Test
+	public void testSharedPoolIsRecreatedAfterClose() {
+		ReaderPool shared = ReaderPool.shared();
+		assertSame( shared, ReaderPool.shared() );
+		shared.close();
+		assertNotSame( shared, ReaderPool.shared() );
+	}
+
+	@Test
+	public void testLazyImageKeepsReadersOpen() throws IOException {
+		File file = File.createTempFile( "lazy-", ".ome.tif" );
+		file.deleteOnExit();
+		Img< UnsignedShortType > img = RandomImgs.seed( 7 ).nextImage( new UnsignedShortType(), 64, 48, 3 );
+		SimplifiedIO.saveImage( img, file.getPath(), SaveOptions.options().tileSize( 16 ) );
+		LazyReaders readers = new LazyReaders( file.getPath() );
+		IFormatReader reader = readers.acquire();
+		// NB: A cache of one tile, so that tiles are decoded again.
+		ImgPlus< ? > lazy = new BioFormatsSeries( reader, 0 ).openLazy( 1, readers );
+		readers.release( reader );
+		assertSame( reader, readers.acquire() );
+		readers.release( reader );
+		ImgLib2Assert.assertImageEquals( img, lazy, Object::equals );
+		assertEquals( 1, readers.numOpenReaders() );
+		BioFormatsSeries.close( lazy );
+		assertEquals( 0, readers.numOpenReaders() );
+		ImgLib2Assert.assertImageEquals( img, lazy, Object::equals );
+		assertEquals( 0, readers.numOpenReaders() );
+	}
+}
@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ij.plugin.ImagesToStack;
+import loci.plugins.BF;
+import net.imagej.ImgPlus;
+import net.imglib2.img.ImagePlusAdapter;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+
+public class SeriesTest {
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testSeries() throws IOException {
+		File directory = Files.createTempDirectory( "series-" ).toFile();
+		directory.deleteOnExit();
+		// NB: Bio-Formats generates the pixels of ".fake" files from the file name.
+		File file = new File( directory, "plate&series=3&sizeX=40&sizeY=30&sizeZ=2.fake" );
+		file.createNewFile();
+		file.deleteOnExit();
+
+		List< ImageInfo > infos = SimplifiedIO.listSeries( file.getPath() );
+		assertEquals( 3, infos.size() );
+		for ( int i = 0; i < 3; i++ ) {
+			assertEquals( i, infos.get( i ).getSeries() );
+			assertEquals( 3, infos.get( i ).getSeriesCount() );
+			assertArrayEquals( new long[] { 40, 30, 2 }, infos.get( i ).getDimensions() );
+			assertEquals( UnsignedByteType.class, infos.get( i ).getPixelType() );
+		}
+
+		List< ImgPlus< ? > > lazy = SimplifiedIO.openSeriesLazy( file.getPath(), 1 << 20 );
+		assertEquals( 3, lazy.size() );
+		assertTrue( lazy.get( 2 ).getImg() instanceof LazyCellImg );
+		assertArrayEquals( new long[] { 40, 30, 2 }, Intervals.dimensionsAsLongArray( lazy.get( 2 ) ) );
+
+		ImgPlus series = SimplifiedIO.openSeries( file.getPath(), 2 );
+		ImgLib2Assert.assertImageEquals( lazy.get( 2 ), series, Object::equals );
+		ImgLib2Assert.assertImageEquals( lazy.get( 0 ), SimplifiedIO.openSeries( file.getPath(), 0 ), Object::equals );
+
+		// released series close their readers, tiles can still be decoded
+		lazy.forEach( SimplifiedIO::release );
+		ImgLib2Assert.assertImageEquals( lazy.get( 1 ), SimplifiedIO.openSeries( file.getPath(), 1 ), Object::equals );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testMultiSeriesFileOpensLikeTheImporter() throws Exception {
+		File directory = Files.createTempDirectory( "series-" ).toFile();
+		directory.deleteOnExit();
+		File file = new File( directory, "plate&series=2&sizeX=20&sizeY=10&sizeZ=3.fake" );
+		file.createNewFile();
+		file.deleteOnExit();
+		ImgPlus expected = ImagePlusAdapter.wrapImgPlus( ImagesToStack.run( BF.openImagePlus( file.getPath() ) ) );
+		ImgPlus opened = SimplifiedIO.openImageWithBioFormats( file.getPath() );
+		assertArrayEquals( Intervals.dimensionsAsLongArray( expected ), Intervals.dimensionsAsLongArray( opened ) );
+		ImgLib2Assert.assertImageEquals( expected, opened, Object::equals );
+	}
+}
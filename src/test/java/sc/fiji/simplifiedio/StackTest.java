@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class StackTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testOpenStack() {
+		Img< UnsignedShortType > volume = RandomImgs.seed( 11 ).nextImage( new UnsignedShortType(), 40, 30, 12 );
+		for ( int z = 0; z < 12; z++ ) {
+			CalibratedAxis[] axes = { new DefaultLinearAxis( Axes.X, "mm", 0.25 ), new DefaultLinearAxis( Axes.Y, "mm", 0.25 ) };
+			ImgPlus< UnsignedShortType > plane = new ImgPlus<>( ImgView.wrap( Views.hyperSlice( volume, 2, z ), null ), "z", axes );
+			SimplifiedIO.saveImage( plane, directory.resolve( String.format( "z%04d.tif", z ) ).toString() );
+		}
+		ImgPlus stack = SimplifiedIO.openStack( directory, "z*.tif", Axes.Z );
+		assertArrayEquals( new long[] { 40, 30, 12 }, Intervals.dimensionsAsLongArray( stack ) );
+		assertEquals( Axes.Z, stack.axis( 2 ).type() );
+		assertEquals( 0.25, stack.axis( 0 ).calibratedValue( 1 ), 1e-12 );
+		ImgLib2Assert.assertImageEquals( volume, stack );
+	}
+
+	@Test
+	public void testDifferentSizesAreRejected() {
+		Img< UnsignedByteType > a = RandomImgs.seed( 12 ).nextImage( new UnsignedByteType(), 20, 20 );
+		Img< UnsignedByteType > b = RandomImgs.seed( 13 ).nextImage( new UnsignedByteType(), 20, 21 );
+		Path first = directory.resolve( "a.tif" );
+		Path second = directory.resolve( "b.tif" );
+		SimplifiedIO.saveImage( a, first.toString() );
+		SimplifiedIO.saveImage( b, second.toString() );
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.openStack( Arrays.asList( first, second ), Axes.TIME ) );
+	}
+}
@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class TiffWriterTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		ImgPlus< UnsignedShortType > image = randomStack();
+		File file = File.createTempFile( "stack-", ".tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( image, file.getPath() );
+		assertEquals( 42, header( file )[ 2 ] );
+		ImgLib2Assert.assertImageEquals( image, SimplifiedIO.openImageWithIJ1( file.getPath() ) );
+		ImgLib2Assert.assertImageEquals( image, SimplifiedIO.openImageWithBioFormats( file.getPath() ) );
+	}
+
+	@Test
+	public void testBigTiff() throws IOException {
+		ImgPlus< UnsignedShortType > image = randomStack();
+		File file = File.createTempFile( "stack-", ".tif" );
+		file.deleteOnExit();
+		HyperstackLayout< UnsignedShortType > layout = HyperstackLayout.of( image );
+		try (TiffWriter writer = new TiffWriter( file.toPath(), TiffWriter.PixelKind.UINT16, 30, 20, true )) {
+			for ( long i = 0; i < layout.numPlanes(); i++ )
+				writer.writePlane( layout.plane( i ) );
+		}
+		assertEquals( 43, header( file )[ 2 ] );
+		ImgLib2Assert.assertImageEquals( image, SimplifiedIO.openImageWithBioFormats( file.getPath() ) );
+	}
+
+	@Test
+	public void testCompressedTiles() throws IOException {
+		ImgPlus< UnsignedShortType > image = randomStack();
+		for ( SaveOptions.Compression compression : SaveOptions.Compression.values() ) {
+			File file = File.createTempFile( "tiles-", ".ome.tif" );
+			file.deleteOnExit();
+			SimplifiedIO.saveImage( image, file.getPath(), SaveOptions.options().compression( compression ).tileSize( 16 ) );
+			ImgLib2Assert.assertImageEquals( image, SimplifiedIO.openImageWithBioFormats( file.getPath() ) );
+		}
+	}
+
+	@Test
+	public void testPyramid() throws IOException {
+		ImgPlus< UnsignedShortType > image = randomStack();
+		File file = File.createTempFile( "pyramid-", ".ome.tif" );
+		file.deleteOnExit();
+		SimplifiedIO.saveImage( image, file.getPath(), SaveOptions.options().resolutionLevels( 3 ).tileSize( 16 ) );
+		ImgLib2Assert.assertImageEquals( image, SimplifiedIO.openImage( file.getPath(), ReadRequest.all() ) );
+		ImgPlus< ? > half = SimplifiedIO.openImage( file.getPath(), ReadRequest.all().resolution( 1 ) );
+		assertArrayEquals( new long[] { 15, 10, 5 }, Intervals.dimensionsAsLongArray( half ) );
+		RandomAccess< UnsignedShortType > full = image.randomAccess();
+		double sum = 0;
+		for ( int x = 6; x < 8; x++ )
+			for ( int y = 4; y < 6; y++ )
+				sum += full.setPositionAndGet( x, y, 1 ).getRealDouble();
+		assertEquals( Math.round( sum / 4 ), ( ( RealType< ? > ) half.randomAccess().setPositionAndGet( 3, 2, 1 ) ).getRealDouble() );
+		ImgPlus< ? > quarter = SimplifiedIO.openImage( file.getPath(), ReadRequest.all().resolution( 2 ) );
+		assertArrayEquals( new long[] { 8, 5, 5 }, Intervals.dimensionsAsLongArray( quarter ) );
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.openImage( file.getPath(), ReadRequest.all().resolution( 3 ) ) );
+	}
+
+	@Test
+	public void testPyramidNeedsOmeTiff() throws IOException {
+		File file = File.createTempFile( "pyramid-", ".tif" );
+		file.deleteOnExit();
+		assertThrows( SimplifiedIOException.class,
+				() -> SimplifiedIO.saveImage( randomStack(), file.getPath(), SaveOptions.options().resolutionLevels( 2 ) ) );
+	}
+
+	@Test
+	public void testEstimatedSizeIsUpperBound() throws IOException {
+		// NB: Random pixels don't compress, LZW and Deflate output is larger than the input.
+		ImgPlus< UnsignedShortType > image = randomStack();
+		HyperstackLayout< UnsignedShortType > layout = HyperstackLayout.of( image );
+		for ( SaveOptions.Compression compression : SaveOptions.Compression.values() ) {
+			for ( int levels = 1; levels <= 3; levels += 2 ) {
+				SaveOptions options = SaveOptions.options().compression( compression ).tileSize( 16 ).resolutionLevels( levels );
+				File file = File.createTempFile( "stack-", ".ome.tif" );
+				file.deleteOnExit();
+				SimplifiedIO.saveImage( image, file.getPath(), options );
+				String description = TiffWriter.omeXml( layout, TiffWriter.PixelKind.UINT16 );
+				long estimate = TiffWriter.estimatedSize( layout, TiffWriter.PixelKind.UINT16, options, description );
+				assertTrue( Files.size( file.toPath() ) <= estimate, compression + ", " + levels + " levels: " + Files.size( file.toPath() ) + " > " + estimate );
+			}
+		}
+	}
+
+	private static ImgPlus< UnsignedShortType > randomStack() {
+		Img< UnsignedShortType > img = RandomImgs.seed( 42 ).nextImage( new UnsignedShortType(), 30, 20, 5 );
+		return new ImgPlus<>( img, "stack", new AxisType[] { Axes.X, Axes.Y, Axes.Z } );
+	}
+
+	private static byte[] header( File file ) throws IOException {
+		return Files.readAllBytes( file.toPath() );
+	}
+}
@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2019 - 2024 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package sc.fiji.simplifiedio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imagej.axis.CalibratedAxis;
+import net.imagej.axis.DefaultLinearAxis;
+import net.imglib2.img.Img;
+import net.imglib2.test.ImgLib2Assert;
+import net.imglib2.test.RandomImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class ZarrTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testRoundTrip() {
+		Img< UnsignedShortType > img = RandomImgs.seed( 7 ).nextImage( new UnsignedShortType(), 50, 40, 3 );
+		CalibratedAxis[] axes = {
+				new DefaultLinearAxis( Axes.X, "\u00b5m", 0.5, 10 ),
+				new DefaultLinearAxis( Axes.Y, "\u00b5m", 0.5 ),
+				new DefaultLinearAxis( Axes.CHANNEL ) };
+		ImgPlus< UnsignedShortType > image = new ImgPlus<>( img, "cells", axes );
+		String path = directory.resolve( "cells.zarr" ).toString();
+		SimplifiedIO.saveImage( image, path, SaveOptions.options().chunkSize( 16, 16, 2 ) );
+		assertTrue( Files.isRegularFile( directory.resolve( "cells.zarr/0/1/2/3" ) ) );
+		ImgPlus opened = SimplifiedIO.openImage( path );
+		assertEquals( Backend.ZARR, SimplifiedIO.getBackend( opened ) );
+		assertEquals( "cells", opened.getName() );
+		ImgLib2Assert.assertImageEquals( img, opened );
+		assertEquals( Axes.CHANNEL, opened.axis( 2 ).type() );
+		assertEquals( "\u00b5m", opened.axis( 0 ).unit() );
+		assertEquals( 0.5, opened.axis( 0 ).calibratedValue( 1 ) - opened.axis( 0 ).calibratedValue( 0 ), 1e-12 );
+		assertEquals( 10, opened.axis( 0 ).calibratedValue( 0 ), 1e-12 );
+	}
+
+	@Test
+	public void testCompressedChunks() {
+		Img< FloatType > img = RandomImgs.seed( 8 ).nextImage( new FloatType(), 30, 20, 4 );
+		ImgPlus< FloatType > image = new ImgPlus<>( img, "stack", new AxisType[] { Axes.X, Axes.Y, Axes.Z } );
+		String path = directory.resolve( "stack.zarr" ).toString();
+		SaveOptions options = SaveOptions.options().compression( SaveOptions.Compression.DEFLATE ).chunkSize( 8, 8, 3 );
+		SimplifiedIO.saveImage( image, path, options );
+		// NB: Saving again replaces the previous chunks.
+		SimplifiedIO.saveImage( image, path, options );
+		ImageInfo info = SimplifiedIO.probe( path );
+		assertEquals( "zlib", info.getCompression() );
+		assertArrayEquals( new long[] { 30, 20, 4 }, Intervals.dimensionsAsLongArray( SimplifiedIO.openImage( path ) ) );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImage( path ) );
+	}
+
+	@Test
+	@SuppressWarnings( "rawtypes" )
+	public void testSaveOverOpenedFile() throws IOException {
+		Img< UnsignedShortType > img = RandomImgs.seed( 11 ).nextImage( new UnsignedShortType(), 40, 30, 2 );
+		String path = directory.resolve( "same.zarr" ).toString();
+		SimplifiedIO.saveImage( img, path, SaveOptions.options().chunkSize( 16, 16, 1 ) );
+		ImgPlus opened = SimplifiedIO.openImage( path );
+		SimplifiedIO.saveImage( opened, path, SaveOptions.options().chunkSize( 8, 8, 2 ) );
+		ImgLib2Assert.assertImageEquals( img, SimplifiedIO.openImage( path ) );
+		try (Stream< Path > files = Files.list( directory )) {
+			assertEquals( 1, files.count() );
+		}
+	}
+
+	@Test
+	public void testUnsupported() throws IOException {
+		Img< ARGBType > rgb = RandomImgs.seed( 9 ).nextImage( new ARGBType(), 10, 10 );
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.saveImage( rgb, directory.resolve( "rgb.zarr" ).toString() ) );
+		Path other = Files.createDirectories( directory.resolve( "other.zarr" ) );
+		Files.createFile( other.resolve( "notes.txt" ) );
+		Img< FloatType > img = RandomImgs.seed( 10 ).nextImage( new FloatType(), 10, 10 );
+		assertThrows( SimplifiedIOException.class, () -> SimplifiedIO.saveImage( img, other.toString() ) );
+	}
+}